@@ -10,7 +10,7 @@ import android.os.Bundle;
 import android.os.StrictMode;
 
 import java.io.IOException;
-import java.util.List;
+import java.util.function.BiConsumer;
 
 import com.google.android.things.contrib.driver.ssd1306.BitmapHelper;
 import com.google.android.things.contrib.driver.ssd1306.Ssd1306;
@@ -96,31 +96,27 @@ public class MainActivity extends Activity {
     }
 
     private void onVolumeUpClicked() {
-        try {
-            if (sonosDevice != null) {
-                int volume = sonosDevice.getVolume() + VOLUME_STEP;
-                if (volume > 100) {
-                    volume = 100;
-                }
-                sonosDevice.setVolume(volume);
-            }
-        } catch (IOException | SonosControllerException e) {
-            Log.e(TAG, "Sonos volume up command failed", e);
+        if (sonosDevice != null) {
+            // repeated presses are merged while a request is in flight
+            sonosDevice.getVolumeController().adjust(VOLUME_STEP).whenComplete(logFailure("Sonos volume up command failed"));
         }
     }
 
     private void onVolumeDownClicked() {
-        try {
-            if (sonosDevice != null) {
-                int volume = sonosDevice.getVolume() - VOLUME_STEP;
-                if (volume < 0) {
-                    volume = 0;
+        if (sonosDevice != null) {
+            sonosDevice.getVolumeController().adjust(-VOLUME_STEP).whenComplete(logFailure("Sonos volume down command failed"));
+        }
+    }
+
+    private static BiConsumer<Integer, Throwable> logFailure(final String message) {
+        return new BiConsumer<Integer, Throwable>() {
+            @Override
+            public void accept(Integer volume, Throwable error) {
+                if (error != null) {
+                    Log.e(TAG, message, error);
                 }
-                sonosDevice.setVolume(volume);
             }
-        } catch (IOException | SonosControllerException e) {
-            Log.e(TAG, "Sonos volume down command failed", e);
-        }
+        };
     }
 
     private void onPreset1Clicked() {
@@ -159,37 +155,20 @@ public class MainActivity extends Activity {
     }
 
     private void setupSonosSpeaker() {
-        List<SonosDevice> availableDevices = discoverSonosDevices();
-        for (SonosDevice device : availableDevices) {
-            try {
-                if (device.getZoneName().equals(SONOS_ZONE)) {
-                    sonosDevice = device;
-                    break;
-                }
-            } catch (IOException | SonosControllerException e) {
-                Log.e(TAG, "Failed to setup Sonos speaker", e);
-            }
+        try {
+            // stops as soon as the zone answered instead of querying every speaker
+            sonosDevice = SonosDiscovery.discoverByZoneName(SONOS_ZONE);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to discover Sonos speakers", e);
         }
         if (sonosDevice != null) {
+            Log.d(TAG, "Found Sonos " + SONOS_ZONE + " at " + sonosDevice);
             updateView(SONOS_ZONE, "connected!");
         } else {
             updateView("Connection error", ">| to repeat");
         }
     }
 
-    private List<SonosDevice> discoverSonosDevices() {
-        List<SonosDevice> devices = null;
-        try {
-            devices = SonosDiscovery.discover();
-            for (SonosDevice device : devices) {
-                Log.d(TAG, "Found Sonos " + device.getZoneName() + " with IP " + device.getSpeakerInfo().getIpAddress());
-            }
-        } catch (IOException | SonosControllerException e) {
-            Log.e(TAG, "Failed to discover Sonos speakers", e);
-        }
-        return devices;
-    }
-
     private void setupSSD1306OledDisplay() {
         try {
             screen = new Ssd1306(I2C_BUS);
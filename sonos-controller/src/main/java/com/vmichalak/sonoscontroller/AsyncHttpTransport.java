@@ -0,0 +1,415 @@
+package com.vmichalak.sonoscontroller;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Minimal non-blocking HTTP/1.1 client driving every in-flight request from a single selector thread.
+ * No thread is held while a speaker is processing a request, so one controller thread can drive dozens of speakers
+ * at once. Futures are completed on the selector thread: dependent stages must stay short, or use the *Async
+ * variants of {@link CompletableFuture} for blocking work.
+ * Each request opens its own connection ("Connection: close"): the speakers are on the LAN, where a TCP handshake
+ * costs far less than the SOAP processing. The blocking {@link HttpTransport} keeps connections alive.
+ */
+public class AsyncHttpTransport {
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    private static volatile AsyncHttpTransport defaultTransport;
+
+    private final int connectTimeout;
+    private final int requestTimeout;
+    private final Queue<Exchange> pending = new ConcurrentLinkedQueue<Exchange>();
+    private final Set<Exchange> inFlight = new HashSet<Exchange>();
+    private final Selector selector;
+    private final Thread thread;
+    private volatile boolean closed = false;
+
+    /**
+     * @param connectTimeout TCP connect timeout in milliseconds
+     * @param requestTimeout maximum duration of a whole exchange in milliseconds
+     * @throws IOException if the selector can't be opened
+     */
+    public AsyncHttpTransport(int connectTimeout, int requestTimeout) throws IOException {
+        this.connectTimeout = connectTimeout;
+        this.requestTimeout = requestTimeout;
+        this.selector = Selector.open();
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, "sonos-async-http");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * @return the transport used by {@link AsyncSonosDevice}, created on first use
+     */
+    public static AsyncHttpTransport getDefault() {
+        AsyncHttpTransport transport = defaultTransport;
+        if (transport == null) {
+            synchronized (AsyncHttpTransport.class) {
+                transport = defaultTransport;
+                if (transport == null) {
+                    try { transport = new AsyncHttpTransport(2000, 5000); }
+                    catch (IOException e) { throw new IllegalStateException("Unable to open selector", e); }
+                    defaultTransport = transport;
+                }
+            }
+        }
+        return transport;
+    }
+
+    /**
+     * Replace the transport used by {@link AsyncSonosDevice}. The previous one is closed.
+     * @param transport new transport
+     */
+    public static void setDefault(AsyncHttpTransport transport) {
+        AsyncHttpTransport previous;
+        synchronized (AsyncHttpTransport.class) {
+            previous = defaultTransport;
+            defaultTransport = transport;
+        }
+        if (previous != null && previous != transport) { previous.close(); }
+    }
+
+    /**
+     * Send a POST request.
+     * @param ip speaker IP address
+     * @param port speaker port
+     * @param path request path
+     * @param headers additional request headers
+     * @param body request body
+     * @return future completed with the response, or exceptionally with an IOException
+     */
+    public CompletableFuture<Response> post(String ip, int port, String path, Map<String, String> headers,
+                                            byte[] body) {
+        StringBuilder head = new StringBuilder(256);
+        head.append("POST ").append(path).append(" HTTP/1.1\r\n");
+        head.append("Host: ").append(ip).append(':').append(port).append("\r\n");
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        head.append("Content-Length: ").append(body.length).append("\r\n");
+        head.append("Connection: close\r\n\r\n");
+        byte[] headBytes = head.toString().getBytes(CHARSET);
+        ByteBuffer request = ByteBuffer.allocate(headBytes.length + body.length);
+        request.put(headBytes).put(body).flip();
+
+        Exchange exchange = new Exchange(new InetSocketAddress(ip, port), request);
+        if (exchange.address.isUnresolved()) {
+            exchange.future.completeExceptionally(new IOException("Unable to resolve " + ip));
+            return exchange.future;
+        }
+        if (closed) {
+            exchange.future.completeExceptionally(new IOException("Transport closed"));
+            return exchange.future;
+        }
+        pending.add(exchange);
+        selector.wakeup();
+        if (closed) { failPending(new IOException("Transport closed")); } // the selector thread may be gone
+        return exchange.future;
+    }
+
+    /**
+     * Abort every in-flight request and stop the selector thread.
+     */
+    public void close() {
+        closed = true;
+        selector.wakeup();
+    }
+
+    private void loop() {
+        try {
+            while (!closed) {
+                registerPending();
+                selector.select(nextTimeout());
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+                expire();
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            // selector failure, fail everything below
+        }
+        finally {
+            closed = true;
+            IOException failure = new IOException("Transport closed");
+            for (Exchange exchange : inFlight) { exchange.fail(failure); }
+            inFlight.clear();
+            failPending(failure);
+            try { selector.close(); }
+            catch (IOException e) { /* already closing */ }
+        }
+    }
+
+    private void failPending(IOException failure) {
+        Exchange exchange;
+        while ((exchange = pending.poll()) != null) { exchange.fail(failure); }
+    }
+
+    private void registerPending() {
+        Exchange exchange;
+        while ((exchange = pending.poll()) != null) {
+            long now = System.currentTimeMillis();
+            exchange.connectDeadline = now + connectTimeout;
+            exchange.deadline = now + requestTimeout;
+            try {
+                SocketChannel channel = SocketChannel.open();
+                exchange.channel = channel;
+                channel.configureBlocking(false);
+                if (channel.connect(exchange.address)) {
+                    // connected at once (e.g. loopback): the connect timeout no longer applies
+                    exchange.connectDeadline = Long.MAX_VALUE;
+                    channel.register(selector, SelectionKey.OP_WRITE, exchange);
+                }
+                else {
+                    channel.register(selector, SelectionKey.OP_CONNECT, exchange);
+                }
+                inFlight.add(exchange);
+            }
+            catch (IOException e) {
+                exchange.fail(e);
+            }
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        Exchange exchange = (Exchange) key.attachment();
+        try {
+            if (key.isConnectable()) {
+                exchange.channel.finishConnect();
+                exchange.connectDeadline = Long.MAX_VALUE;
+                key.interestOps(SelectionKey.OP_WRITE);
+            }
+            else if (key.isWritable()) {
+                exchange.channel.write(exchange.request);
+                if (!exchange.request.hasRemaining()) { key.interestOps(SelectionKey.OP_READ); }
+            }
+            else if (key.isReadable()) {
+                read(exchange);
+            }
+        }
+        catch (IOException e) {
+            inFlight.remove(exchange);
+            exchange.fail(e);
+        }
+        catch (RuntimeException e) {
+            // e.g. a cancelled key: this exchange fails, the others go on
+            inFlight.remove(exchange);
+            exchange.fail(new IOException("Request to " + exchange.address + " failed: " + e, e));
+        }
+    }
+
+    private void read(Exchange exchange) throws IOException {
+        ByteBuffer buffer = exchange.readBuffer;
+        int read;
+        while ((read = exchange.channel.read(buffer)) > 0) {
+            if (!buffer.hasRemaining()) {
+                ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+                buffer.flip();
+                bigger.put(buffer);
+                buffer = bigger;
+                exchange.readBuffer = bigger;
+            }
+        }
+        Response response = ResponseParser.tryParse(buffer.array(), buffer.position(), read < 0);
+        if (response != null) {
+            inFlight.remove(exchange);
+            exchange.complete(response);
+        }
+        else if (read < 0) {
+            throw new IOException("Connection closed before the end of the response from " + exchange.address);
+        }
+    }
+
+    private long nextTimeout() {
+        long next = Long.MAX_VALUE;
+        for (Exchange exchange : inFlight) {
+            next = Math.min(next, Math.min(exchange.deadline, exchange.connectDeadline));
+        }
+        if (next == Long.MAX_VALUE) { return 0; }
+        return Math.max(1, next - System.currentTimeMillis());
+    }
+
+    private void expire() {
+        long now = System.currentTimeMillis();
+        Iterator<Exchange> iterator = inFlight.iterator();
+        while (iterator.hasNext()) {
+            Exchange exchange = iterator.next();
+            if (now >= exchange.connectDeadline || now >= exchange.deadline) {
+                iterator.remove();
+                exchange.fail(new SocketTimeoutException("Request to " + exchange.address + " timed out"));
+            }
+        }
+    }
+
+    /**
+     * HTTP response received by the {@link AsyncHttpTransport}.
+     */
+    public static class Response {
+        private final int statusCode;
+        private final byte[] body;
+
+        Response(int statusCode, byte[] body) {
+            this.statusCode = statusCode;
+            this.body = body;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public String getBodyAsString() {
+            return new String(body, CHARSET);
+        }
+    }
+
+    private static class Exchange {
+        private final InetSocketAddress address;
+        private final ByteBuffer request;
+        private final CompletableFuture<Response> future = new CompletableFuture<Response>();
+        private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private SocketChannel channel;
+        private long connectDeadline = Long.MAX_VALUE;
+        private long deadline = Long.MAX_VALUE;
+
+        private Exchange(InetSocketAddress address, ByteBuffer request) {
+            this.address = address;
+            this.request = request;
+        }
+
+        private void complete(Response response) {
+            closeChannel();
+            future.complete(response);
+        }
+
+        private void fail(IOException e) {
+            closeChannel();
+            future.completeExceptionally(e);
+        }
+
+        private void closeChannel() {
+            if (channel == null) { return; }
+            try { channel.close(); }
+            catch (IOException e) { /* nothing to do */ }
+        }
+    }
+
+    /**
+     * Incremental parser for HTTP/1.1 responses, supporting Content-Length, chunked and close-delimited bodies.
+     */
+    static final class ResponseParser {
+        private ResponseParser() { }
+
+        /**
+         * @param data received bytes
+         * @param length number of received bytes
+         * @param eof true if the connection has been closed by the server
+         * @return the response, null if more bytes are needed
+         * @throws IOException if the response is malformed
+         */
+        static Response tryParse(byte[] data, int length, boolean eof) throws IOException {
+            int headerEnd = indexOf(data, 0, length, "\r\n\r\n");
+            if (headerEnd < 0) { return null; }
+            String head = new String(data, 0, headerEnd, CHARSET);
+            String[] lines = head.split("\r\n");
+            String[] status = lines[0].split(" ", 3);
+            if (status.length < 2 || !status[0].startsWith("HTTP/")) {
+                throw new IOException("Invalid HTTP status line: " + lines[0]);
+            }
+            int statusCode = parseInt(status[1], "status code");
+            int contentLength = -1;
+            boolean chunked = false;
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon < 0) { continue; }
+                String name = lines[i].substring(0, colon).trim();
+                String value = lines[i].substring(colon + 1).trim();
+                if (name.equalsIgnoreCase("Content-Length")) { contentLength = parseInt(value, "Content-Length"); }
+                else if (name.equalsIgnoreCase("Transfer-Encoding")) { chunked = value.equalsIgnoreCase("chunked"); }
+            }
+            int bodyStart = headerEnd + 4;
+            if (chunked) {
+                byte[] body = decodeChunked(data, bodyStart, length);
+                return body == null ? null : new Response(statusCode, body);
+            }
+            if (contentLength >= 0) {
+                if (length - bodyStart < contentLength) { return null; }
+                return new Response(statusCode, copy(data, bodyStart, bodyStart + contentLength));
+            }
+            return eof ? new Response(statusCode, copy(data, bodyStart, length)) : null;
+        }
+
+        private static int parseInt(String value, String name) throws IOException {
+            int result;
+            try { result = Integer.parseInt(value); }
+            catch (NumberFormatException e) { throw new IOException("Invalid " + name + ": " + value); }
+            if (result < 0) { throw new IOException("Invalid " + name + ": " + value); }
+            return result;
+        }
+
+        private static byte[] decodeChunked(byte[] data, int start, int end) throws IOException {
+            ByteArrayOutputStream body = new ByteArrayOutputStream(end - start);
+            int index = start;
+            while (true) {
+                int lineEnd = indexOf(data, index, end, "\r\n");
+                if (lineEnd < 0) { return null; }
+                String sizeLine = new String(data, index, lineEnd - index, CHARSET);
+                int semicolon = sizeLine.indexOf(';');
+                if (semicolon >= 0) { sizeLine = sizeLine.substring(0, semicolon); }
+                int size;
+                try { size = Integer.parseInt(sizeLine.trim(), 16); }
+                catch (NumberFormatException e) { throw new IOException("Invalid chunk size: " + sizeLine); }
+                if (size < 0) { throw new IOException("Invalid chunk size: " + sizeLine); }
+                int chunkStart = lineEnd + 2;
+                if (size == 0) { return body.toByteArray(); }
+                // written so that a huge size can't overflow
+                if (size > end - chunkStart - 2) { return null; }
+                body.write(data, chunkStart, size);
+                index = chunkStart + size + 2;
+            }
+        }
+
+        private static int indexOf(byte[] data, int from, int to, String pattern) {
+            outer:
+            for (int i = from; i <= to - pattern.length(); i++) {
+                for (int j = 0; j < pattern.length(); j++) {
+                    if (data[i + j] != pattern.charAt(j)) { continue outer; }
+                }
+                return i;
+            }
+            return -1;
+        }
+
+        private static byte[] copy(byte[] data, int from, int to) {
+            byte[] result = new byte[to - from];
+            System.arraycopy(data, from, result, 0, result.length);
+            return result;
+        }
+    }
+}
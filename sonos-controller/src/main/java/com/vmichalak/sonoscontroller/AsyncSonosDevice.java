@@ -0,0 +1,341 @@
+package com.vmichalak.sonoscontroller;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Non-blocking counterpart of {@link SonosDevice}. Every method sends its command through the
+ * {@link AsyncHttpTransport} and returns immediately; no thread is held while the speaker answers.
+ * Futures fail with an IOException or a {@link com.vmichalak.sonoscontroller.exception.SonosControllerException}
+ * wrapped in a {@link java.util.concurrent.CompletionException}.
+ */
+public class AsyncSonosDevice {
+
+    private static final Function<String, Void> TO_VOID = new Function<String, Void>() {
+        @Override
+        public Void apply(String response) {
+            return null;
+        }
+    };
+
+    private final String ip;
+
+    public AsyncSonosDevice(String ip) {
+        this.ip = ip;
+    }
+
+    public String getIpAddress() {
+        return ip;
+    }
+
+    //<editor-fold desc="AV TRANSPORT">
+
+    /**
+     * Play the currently selected track.
+     */
+    public CompletableFuture<Void> play() {
+        return CommandBuilder.transport("Play").put("InstanceID", "0").put("Speed", "1").executeOnAsync(this.ip)
+                .thenApply(TO_VOID);
+    }
+
+    /**
+     * Play a given stream. Pauses the queue.
+     * @param uri URI of a stream to be played.
+     * @param meta The track metadata to show in the player (DIDL format).
+     */
+    public CompletableFuture<Void> playUri(String uri, String meta) {
+        return CommandBuilder.transport("SetAVTransportURI").put("InstanceID", "0").put("CurrentURI", uri)
+                .put("CurrentURIMetaData", meta).executeOnAsync(this.ip)
+                .thenCompose(new Function<String, CompletableFuture<Void>>() {
+                    @Override
+                    public CompletableFuture<Void> apply(String response) {
+                        return play();
+                    }
+                });
+    }
+
+    /**
+     * Pause the currently playing track.
+     */
+    public CompletableFuture<Void> pause() {
+        return CommandBuilder.transport("Pause").put("InstanceID", "0").put("Speed", "1").executeOnAsync(this.ip)
+                .thenApply(TO_VOID);
+    }
+
+    /**
+     * Get the play state of the device.
+     * @return current PlayState of the device
+     */
+    public CompletableFuture<PlayState> getPlayState() {
+        return CommandBuilder.transport("GetTransportInfo").put("InstanceID", "0")
+                .executeOnAndGetAsync(this.ip, "CurrentTransportState")
+                .thenApply(new Function<String, PlayState>() {
+                    @Override
+                    public PlayState apply(String r) {
+                        return PlayState.valueOf(r);
+                    }
+                });
+    }
+
+    /**
+     * Stop the currently playing track.
+     */
+    public CompletableFuture<Void> stop() {
+        return CommandBuilder.transport("Stop").put("InstanceID", "0").put("Speed", "1").executeOnAsync(this.ip)
+                .thenApply(TO_VOID);
+    }
+
+    /**
+     * Seeks to a given timestamp in the current track, specified in the format HH:MM:SS.
+     * @param time specified in the format HH:MM:SS.
+     */
+    public CompletableFuture<Void> seek(String time) {
+        return CommandBuilder.transport("Seek").put("InstanceID", "0").put("Unit", "REL_TIME").put("Target", time)
+                .executeOnAsync(this.ip).thenApply(TO_VOID);
+    }
+
+    /**
+     * Go to the next track on the queue.
+     */
+    public CompletableFuture<Void> next() {
+        return CommandBuilder.transport("Next").put("InstanceID", "0").put("Speed", "1").executeOnAsync(this.ip)
+                .thenApply(TO_VOID);
+    }
+
+    /**
+     * Go back to the previously played track.
+     */
+    public CompletableFuture<Void> previous() {
+        return CommandBuilder.transport("Previous").put("InstanceID", "0").put("Speed", "1").executeOnAsync(this.ip)
+                .thenApply(TO_VOID);
+    }
+
+    /**
+     * Get the play mode for the queue.
+     * @return current PlayMode of the queue
+     */
+    public CompletableFuture<PlayMode> getPlayMode() {
+        return CommandBuilder.transport("GetTransportSettings").put("InstanceID", "0")
+                .executeOnAndGetAsync(this.ip, "PlayMode")
+                .thenApply(new Function<String, PlayMode>() {
+                    @Override
+                    public PlayMode apply(String r) {
+                        return PlayMode.valueOf(r);
+                    }
+                });
+    }
+
+    /**
+     * Sets the play mode for the queue.
+     * @param playMode
+     */
+    public CompletableFuture<Void> setPlayMode(PlayMode playMode) {
+        return CommandBuilder.transport("SetPlayMode").put("InstanceID", "0").put("NewPlayMode", playMode.toString())
+                .executeOnAsync(this.ip).thenApply(TO_VOID);
+    }
+
+    /**
+     * Remove all tracks from the queue.
+     */
+    public CompletableFuture<Void> clearQueue() {
+        return CommandBuilder.transport("RemoveAllTracksFromQueue").put("InstanceID", "0").executeOnAsync(this.ip)
+                .thenApply(TO_VOID);
+    }
+
+    /**
+     * Join this Sonos speaker to another.
+     * @param masterUID master speaker UID
+     */
+    public CompletableFuture<Void> join(String masterUID) {
+        return CommandBuilder.transport("SetAVTransportURI")
+                .put("InstanceID", "0").put("CurrentURI", "x-rincon:" + masterUID).put("CurrentURIMetaData", "")
+                .executeOnAsync(this.ip).thenApply(TO_VOID);
+    }
+
+    /**
+     * Remove this speaker from a group.
+     */
+    public CompletableFuture<Void> unjoin() {
+        return CommandBuilder.transport("BecomeCoordinatorOfStandaloneGroup")
+                .put("InstanceID", "0").put("Speed", "1").executeOnAsync(this.ip).thenApply(TO_VOID);
+    }
+
+    //</editor-fold>
+
+    //<editor-fold desc="RENDERING">
+
+    /**
+     * Get the Sonos speaker volume.
+     * @return A volume value between 0 and 100
+     */
+    public CompletableFuture<Integer> getVolume() {
+        return CommandBuilder.rendering("GetVolume").put("InstanceID", "0").put("Channel", "Master")
+                .executeOnAndGetAsync(this.ip, "CurrentVolume").thenApply(new Function<String, Integer>() {
+                    @Override
+                    public Integer apply(String r) {
+                        return Integer.parseInt(r);
+                    }
+                });
+    }
+
+    /**
+     * Set the Sonos speaker volume.
+     * @param volume A volume value between 0 and 100
+     */
+    public CompletableFuture<Void> setVolume(int volume) {
+        return CommandBuilder.rendering("SetVolume").put("InstanceID", "0").put("Channel", "Master")
+                .put("DesiredVolume", String.valueOf(volume)).executeOnAsync(this.ip).thenApply(TO_VOID);
+    }
+
+    /**
+     * Return the mute state of the Sonos speaker.
+     * @return True if is muted, false if isn't
+     */
+    public CompletableFuture<Boolean> isMuted() {
+        return CommandBuilder.rendering("GetMute").put("InstanceID", "0").put("Channel", "Master")
+                .executeOnAndGetAsync(this.ip, "CurrentMute").thenApply(new Function<String, Boolean>() {
+                    @Override
+                    public Boolean apply(String r) {
+                        return r.equals("1");
+                    }
+                });
+    }
+
+    /**
+     * Mute or unmute the Sonos speaker.
+     * @param state True to mute, False to unmute
+     */
+    public CompletableFuture<Void> setMute(boolean state) {
+        return CommandBuilder.rendering("SetMute").put("InstanceID", "0").put("Channel", "Master")
+                .put("DesiredMute", state ? "1" : "0").executeOnAsync(this.ip).thenApply(TO_VOID);
+    }
+
+    /**
+     * Get the Sonos speaker bass EQ.
+     * @return value between 10 and -10
+     */
+    public CompletableFuture<Integer> getBass() {
+        return CommandBuilder.rendering("GetBass").put("InstanceID", "0").put("Channel", "Master")
+                .executeOnAndGetAsync(this.ip, "CurrentBass").thenApply(new Function<String, Integer>() {
+                    @Override
+                    public Integer apply(String r) {
+                        return Integer.parseInt(r);
+                    }
+                });
+    }
+
+    /**
+     * Set the Sonos speaker bass EQ.
+     * @param bass Value between 10 and -10
+     */
+    public CompletableFuture<Void> setBass(int bass) {
+        if(bass > 10 || bass < -10) { throw new IllegalArgumentException("Bass value need to be between 10 and -10"); }
+        return CommandBuilder.rendering("SetBass").put("InstanceID", "0").put("DesiredBass", String.valueOf(bass))
+                .executeOnAsync(this.ip).thenApply(TO_VOID);
+    }
+
+    /**
+     * Get the Sonos speaker's loudness compensation.
+     * @return True if is On, False if isn't
+     */
+    public CompletableFuture<Boolean> isLoudnessActivated() {
+        return CommandBuilder.rendering("GetLoudness").put("InstanceID", "0").put("Channel", "Master")
+                .executeOnAndGetAsync(this.ip, "CurrentLoudness").thenApply(new Function<String, Boolean>() {
+                    @Override
+                    public Boolean apply(String r) {
+                        return r.equals("1");
+                    }
+                });
+    }
+
+    /**
+     * Set the Sonos speaker's loudness compensation.
+     * @param loudness True for set On, False for set Off
+     */
+    public CompletableFuture<Void> setLoudness(boolean loudness) {
+        return CommandBuilder.rendering("SetLoudness").put("InstanceID", "0").put("Channel", "Master")
+                .put("DesiredLoudness", loudness ? "1" : "0").executeOnAsync(this.ip).thenApply(TO_VOID);
+    }
+
+    /**
+     * Get the Sonos speaker's treble EQ.
+     * @return value between -10 and 10
+     */
+    public CompletableFuture<Integer> getTreble() {
+        return CommandBuilder.rendering("GetTreble").put("InstanceID", "0").put("Channel", "Master")
+                .executeOnAndGetAsync(this.ip, "CurrentTreble").thenApply(new Function<String, Integer>() {
+                    @Override
+                    public Integer apply(String r) {
+                        return Integer.parseInt(r);
+                    }
+                });
+    }
+
+    /**
+     * Set the Sonos speaker's treble EQ.
+     * @param treble value between -10 and 10
+     */
+    public CompletableFuture<Void> setTreble(int treble) {
+        if(treble > 10 || treble < -10) { throw new IllegalArgumentException("treble value need to be between 10 and -10"); }
+        return CommandBuilder.rendering("SetTreble").put("InstanceID", "0")
+                .put("DesiredTreble", String.valueOf(treble)).executeOnAsync(this.ip).thenApply(TO_VOID);
+    }
+
+    /**
+     * Check if the Night Mode is activated or not.
+     * /!\ WARNING: WORKS ONLY WITH PLAYBAR / PLAYBASE /!\
+     * @return True if activated, False if isn't.
+     */
+    public CompletableFuture<Boolean> isNightModeActivated() {
+        return CommandBuilder.rendering("GetEQ").put("InstanceID", "0").put("EQType", "NightMode")
+                .executeOnAndGetAsync(this.ip, "CurrentValue").thenApply(new Function<String, Boolean>() {
+                    @Override
+                    public Boolean apply(String r) {
+                        return r.equals("1");
+                    }
+                });
+    }
+
+    /**
+     * Set the Night Mode.
+     * /!\ WARNING: WORKS ONLY WITH PLAYBAR / PLAYBASE /!\
+     * @param state
+     */
+    public CompletableFuture<Void> setNightMode(boolean state) {
+        return CommandBuilder.rendering("SetEQ").put("InstanceID", "0").put("EQType", "NightMode")
+                .put("DesiredValue", state ? "1" : "0").executeOnAsync(this.ip).thenApply(TO_VOID);
+    }
+
+    //</editor-fold>
+
+    //<editor-fold desc="DEVICE">
+
+    public CompletableFuture<Void> setZoneName(String zoneName) {
+        return CommandBuilder.device("SetZoneAttributes").put("DesiredZoneName", zoneName).put("DesiredIcon", "")
+                .put("DesiredConfiguration", "").executeOnAsync(this.ip).thenApply(TO_VOID);
+    }
+
+    public CompletableFuture<Boolean> getLedState() {
+        return CommandBuilder.device("GetLEDState").executeOnAndGetAsync(this.ip, "CurrentLEDState")
+                .thenApply(new Function<String, Boolean>() {
+                    @Override
+                    public Boolean apply(String r) {
+                        return r.equals("On");
+                    }
+                });
+    }
+
+    public CompletableFuture<Void> setLedState(boolean state) {
+        return CommandBuilder.device("SetLEDState").put("DesiredLEDState", state ? "On" : "Off")
+                .executeOnAsync(this.ip).thenApply(TO_VOID);
+    }
+
+    //</editor-fold>
+
+    @Override
+    public String toString() {
+        return "AsyncSonosDevice{" +
+                "ip='" + ip + '\'' +
+                '}';
+    }
+}
@@ -4,23 +4,31 @@ import com.vmichalak.sonoscontroller.exception.SonosControllerException;
 import com.vmichalak.sonoscontroller.exception.UPnPSonosControllerException;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ByteArrayEntity;
-import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.util.EntityUtils;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
 
 class CommandBuilder {
-    private final static int    SOAP_PORT                    = 1400;
+    final static int            SOAP_PORT                    = 1400;
     private final static String TRANSPORT_ENDPOINT           = "/MediaRenderer/AVTransport/Control";
     private final static String TRANSPORT_SERVICE            = "urn:schemas-upnp-org:service:AVTransport:1";
     private final static String RENDERING_ENDPOINT           = "/MediaRenderer/RenderingControl/Control";
     private final static String RENDERING_SERVICE            = "urn:schemas-upnp-org:service:RenderingControl:1";
+    private final static String GROUP_RENDERING_ENDPOINT     = "/MediaRenderer/GroupRenderingControl/Control";
+    private final static String GROUP_RENDERING_SERVICE      = "urn:schemas-upnp-org:service:GroupRenderingControl:1";
     private final static String DEVICE_ENDPOINT              = "/DeviceProperties/Control";
     private final static String DEVICE_SERVICE               = "urn:schemas-upnp-org:service:DeviceProperties:1";
     private final static String CONTENT_DIRECTORY_ENDPOINT   = "/MediaServer/ContentDirectory/Control";
@@ -28,6 +36,10 @@ class CommandBuilder {
     private final static String ZONE_GROUP_TOPOLOGY_ENDPOINT = "/ZoneGroupTopology/Control";
     private final static String ZONE_GROUP_TOPOLOGY_SERVICE  = "urn:upnp-org:serviceId:ZoneGroupTopology";
 
+    final static String TRANSPORT_EVENT_ENDPOINT           = "/MediaRenderer/AVTransport/Event";
+    final static String RENDERING_EVENT_ENDPOINT           = "/MediaRenderer/RenderingControl/Event";
+    final static String ZONE_GROUP_TOPOLOGY_EVENT_ENDPOINT = "/ZoneGroupTopology/Event";
+
     private final static HashMap<Integer, String> ERROR_DESCRIPTION_MAP = new HashMap<Integer, String>();
 
     static {
@@ -52,12 +64,10 @@ class CommandBuilder {
         ERROR_DESCRIPTION_MAP.put(612, "No Such Session");
     }
 
-    private static HttpClient httpClient;
-
     private final String endpoint;
     private final String service;
     private final String action;
-    private final HashMap<String, String> bodyEntries = new HashMap<String, String>();
+    private final LinkedHashMap<String, String> bodyEntries = new LinkedHashMap<String, String>();
 
     public CommandBuilder(String endpoint, String service, String action) {
         this.endpoint = endpoint;
@@ -73,6 +83,10 @@ class CommandBuilder {
         return new CommandBuilder(RENDERING_ENDPOINT, RENDERING_SERVICE, action);
     }
 
+    public static CommandBuilder groupRendering(String action) {
+        return new CommandBuilder(GROUP_RENDERING_ENDPOINT, GROUP_RENDERING_SERVICE, action);
+    }
+
     public static CommandBuilder device(String action) {
         return new CommandBuilder(DEVICE_ENDPOINT, DEVICE_SERVICE, action);
     }
@@ -88,89 +102,208 @@ class CommandBuilder {
     public static String downloadSpeakerInfo(String ip) throws IOException, SonosControllerException {
         String uri = "http://" + ip + ":" + SOAP_PORT + "/status/zp";
         HttpGet request = new HttpGet(uri);
-        HttpResponse response = getHttpClient().execute(request);
+        HttpResponse response = HttpTransport.getDefault().execute(request);
         String responseString = EntityUtils.toString(response.getEntity());
-        handleError(ip, responseString);
+        handleError(ip, response.getStatusLine().getStatusCode(), responseString);
         return responseString;
     }
 
+    /**
+     * Add an argument. Arguments are sent in the order they are added; the value is escaped when encoded.
+     */
     public CommandBuilder put(String key, String value) {
-        key = escapeSpecialCharacters(key);
-        value = escapeSpecialCharacters(value);
         this.bodyEntries.put(key, value);
         return this;
     }
 
     public String executeOn(String ip) throws IOException, SonosControllerException {
-        String uri = "http://" + ip + ":" + SOAP_PORT + this.endpoint;
-        HttpPost request = new HttpPost(uri);
-        request.setHeader("Content-Type", "text/xml");
-        request.setHeader("SOAPACTION", this.service + "#" + this.action);
-        String content = "<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\""
-                + " s:encodingStyle=\"http://schemas.xmlsoap.org/soap/encoding/\"><s:Body>"
-                + "<u:" + this.action + " xmlns:u=\"" + this.service + "\">"
-                + this.getBody()
-                + "</u:" + this.action + ">"
-                + "</s:Body></s:Envelope>";
-        HttpEntity entity = new ByteArrayEntity(content.getBytes("UTF-8"));
-        request.setEntity(entity);
-        HttpResponse response = getHttpClient().execute(request);
+        HttpResponse response = this.send(ip);
         String responseString = EntityUtils.toString(response.getEntity());
-        this.handleError(ip, responseString);
+        handleError(ip, response.getStatusLine().getStatusCode(), responseString);
         return responseString;
     }
 
-    protected static void handleError(String ip, String response) throws SonosControllerException {
-        if(!response.contains("errorCode")) { return; }
-        int errorCode = Integer.parseInt(ParserHelper.findOne("<errorCode>([0-9]*)</errorCode>", response));
-        String desc = ERROR_DESCRIPTION_MAP.get(errorCode);
-        throw new UPnPSonosControllerException(
-                "UPnP Error " + errorCode +" (" + desc + ") received from " + ip,
-                errorCode, desc, response);
+    /**
+     * Send the command and read a single value of the response.
+     * @param ip speaker IP address
+     * @param element name of the response argument, e.g. "CurrentVolume"
+     * @return unescaped value, null if the response doesn't contain it
+     * @throws IOException
+     * @throws SonosControllerException
+     */
+    public String executeOnAndGet(String ip, String element) throws IOException, SonosControllerException {
+        return this.executeOnAndGetAll(ip, element).get(element);
+    }
+
+    /**
+     * Read a single value of the response from the cache, or send the command and cache the value.
+     * @param ip speaker IP address
+     * @param element name of the response argument, e.g. "CurrentVolume"
+     * @param cache state cache of the speaker, null to always send the command
+     * @return unescaped value, null if the response doesn't contain it
+     * @throws IOException
+     * @throws SonosControllerException
+     */
+    String executeOnAndGet(String ip, String element, StateCache cache) throws IOException, SonosControllerException {
+        if (cache == null) { return this.executeOnAndGet(ip, element); }
+        String value = cache.get(element);
+        if (value != null) { return value; }
+        value = this.executeOnAndGet(ip, element);
+        if (value != null) { cache.put(element, value); }
+        return value;
     }
 
-    protected String getBody() {
-        StringBuilder sb = new StringBuilder();
-        for (Map.Entry entry : bodyEntries.entrySet()) {
-            sb.append("<").append(entry.getKey()).append(">").append(entry.getValue()).append("</").append(entry.getKey()).append(">");
+    /**
+     * Send the command and read some values of the response. The response is parsed only until every value is read.
+     * @param ip speaker IP address
+     * @param elements names of the response arguments
+     * @return unescaped values by name, absent ones are left out
+     * @throws IOException
+     * @throws SonosControllerException
+     */
+    public Map<String, String> executeOnAndGetAll(String ip, String... elements)
+            throws IOException, SonosControllerException {
+        HttpResponse response = this.send(ip);
+        HttpEntity entity = response.getEntity();
+        int statusCode = response.getStatusLine().getStatusCode();
+        if (statusCode != HttpStatus.SC_OK) {
+            handleError(ip, statusCode, EntityUtils.toString(entity));
+        }
+        InputStream in = entity.getContent();
+        try {
+            return SoapResponseReader.readValues(in, elements);
+        }
+        finally {
+            // drain the rest of the response so the connection goes back to the pool
+            EntityUtils.consume(entity);
         }
-        return sb.toString();
     }
 
-    private static HttpClient getHttpClient() {
-        if(httpClient == null) { httpClient = HttpClientBuilder.create().build(); }
-        return httpClient;
+    /**
+     * Send the command without blocking the calling thread.
+     * @param ip speaker IP address
+     * @return future completed with the response, or exceptionally with an IOException or a SonosControllerException
+     */
+    public CompletableFuture<String> executeOnAsync(final String ip) {
+        return this.sendAsync(ip).thenApply(new Function<AsyncHttpTransport.Response, String>() {
+            @Override
+            public String apply(AsyncHttpTransport.Response response) {
+                String responseString = response.getBodyAsString();
+                try { handleError(ip, response.getStatusCode(), responseString); }
+                catch (SonosControllerException e) { throw new CompletionException(e); }
+                return responseString;
+            }
+        });
     }
 
-    private String escapeSpecialCharacters(String value) {
-        if (value == null) {
-            return null;
-        }
+    /**
+     * Send the command without blocking the calling thread and read a single value of the response.
+     * @param ip speaker IP address
+     * @param element name of the response argument, e.g. "CurrentVolume"
+     * @return future completed with the unescaped value, null if the response doesn't contain it
+     */
+    public CompletableFuture<String> executeOnAndGetAsync(final String ip, final String element) {
+        return this.sendAsync(ip).thenApply(new Function<AsyncHttpTransport.Response, String>() {
+            @Override
+            public String apply(AsyncHttpTransport.Response response) {
+                try {
+                    if (response.getStatusCode() != HttpStatus.SC_OK) {
+                        handleError(ip, response.getStatusCode(), response.getBodyAsString());
+                    }
+                    return SoapResponseReader.readValue(new ByteArrayInputStream(response.getBody()), element);
+                }
+                catch (IOException | SonosControllerException e) {
+                    throw new CompletionException(e);
+                }
+            }
+        });
+    }
 
-        StringBuilder sb = new StringBuilder(value.length());
-        for(int i = 0; i < value.length(); i++) {
-            char c = value.charAt(i);
-            switch(c) {
-                case '&':
-                    sb.append("&amp;");
-                    break;
-                case '<':
-                    sb.append("&lt;");
-                    break;
-                case '>':
-                    sb.append("&gt;");
-                    break;
-                case '"':
-                    sb.append("&quot;");
-                    break;
-                case '\'':
-                    sb.append("&apos;");
-                    break;
-                default:
-                    sb.append(c);
-                    break;
+    /**
+     * Send the command without blocking the calling thread and read some values of the response.
+     * @param ip speaker IP address
+     * @param elements names of the response arguments
+     * @return future completed with the unescaped values by name, absent ones are left out
+     */
+    public CompletableFuture<Map<String, String>> executeOnAndGetAllAsync(final String ip, final String... elements) {
+        return this.sendAsync(ip).thenApply(new Function<AsyncHttpTransport.Response, Map<String, String>>() {
+            @Override
+            public Map<String, String> apply(AsyncHttpTransport.Response response) {
+                try {
+                    if (response.getStatusCode() != HttpStatus.SC_OK) {
+                        handleError(ip, response.getStatusCode(), response.getBodyAsString());
+                    }
+                    return SoapResponseReader.readValues(new ByteArrayInputStream(response.getBody()), elements);
+                }
+                catch (IOException | SonosControllerException e) {
+                    throw new CompletionException(e);
+                }
             }
+        });
+    }
+
+    /**
+     * Wait for an asynchronous command, rethrowing its error as thrown by the blocking commands.
+     * @throws IOException
+     * @throws SonosControllerException
+     */
+    static <T> T await(CompletableFuture<T> future) throws IOException, SonosControllerException {
+        try {
+            return future.join();
         }
-        return sb.toString();
+        catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) { throw (IOException) e.getCause(); }
+            if (e.getCause() instanceof SonosControllerException) { throw (SonosControllerException) e.getCause(); }
+            throw e;
+        }
+        catch (CancellationException e) {
+            throw new IOException("Command cancelled");
+        }
+    }
+
+    private HttpResponse send(String ip) throws IOException {
+        String uri = "http://" + ip + ":" + SOAP_PORT + this.endpoint;
+        HttpPost request = new HttpPost(uri);
+        request.setHeader("Content-Type", "text/xml");
+        request.setHeader("SOAPACTION", this.service + "#" + this.action);
+        HttpEntity entity = new ByteArrayEntity(this.getEnvelope());
+        request.setEntity(entity);
+        return HttpTransport.getDefault().execute(request);
+    }
+
+    private CompletableFuture<AsyncHttpTransport.Response> sendAsync(String ip) {
+        HashMap<String, String> headers = new HashMap<String, String>();
+        headers.put("Content-Type", "text/xml");
+        headers.put("SOAPACTION", this.service + "#" + this.action);
+        return AsyncHttpTransport.getDefault().post(ip, SOAP_PORT, this.endpoint, headers, this.getEnvelope());
+    }
+
+    byte[] getEnvelope() {
+        return PreparedCommand.of(this.service, this.action).encode(this.bodyEntries);
+    }
+
+    /**
+     * UPnP errors are reported as a SOAP fault in a HTTP 500 response.
+     */
+    protected static void handleError(String ip, int statusCode, String response) throws SonosControllerException {
+        if (statusCode >= 200 && statusCode < 300) { return; }
+        Map<String, String> fault = null;
+        if (statusCode == HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+            try { fault = SoapResponseReader.readValues(response, "Fault", "errorCode", "errorDescription"); }
+            catch (IOException e) { /* not a SOAP response */ }
+        }
+        if (fault == null || !fault.containsKey("Fault") || !fault.containsKey("errorCode")) {
+            throw new SonosControllerException("HTTP " + statusCode + " received from " + ip);
+        }
+        int errorCode;
+        try { errorCode = Integer.parseInt(fault.get("errorCode").trim()); }
+        catch (NumberFormatException e) {
+            throw new SonosControllerException("Invalid UPnP error " + fault.get("errorCode") + " received from " + ip);
+        }
+        String desc = ERROR_DESCRIPTION_MAP.get(errorCode);
+        if (desc == null) { desc = fault.get("errorDescription"); }
+        throw new UPnPSonosControllerException(
+                "UPnP Error " + errorCode +" (" + desc + ") received from " + ip,
+                errorCode, desc, response);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,90 @@
+package com.vmichalak.sonoscontroller;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+
+/**
+ * Read the items of a DIDL-Lite document one at a time, without building the whole list.
+ */
+final class DidlReader {
+    private static final XmlPullParserFactory FACTORY;
+
+    static {
+        try {
+            FACTORY = XmlPullParserFactory.newInstance();
+            FACTORY.setNamespaceAware(true);
+        }
+        catch (XmlPullParserException e) {
+            throw new IllegalStateException("No XML pull parser available", e);
+        }
+    }
+
+    private final XmlPullParser parser;
+    private final HashMap<String, String> fields = new HashMap<String, String>();
+    private final StringBuilder text = new StringBuilder();
+
+    /**
+     * @param didl DIDL-Lite document, e.g. the Result of a Browse
+     * @throws IOException if the document can't be read
+     */
+    DidlReader(String didl) throws IOException {
+        try {
+            this.parser = FACTORY.newPullParser();
+            this.parser.setInput(new StringReader(didl));
+        }
+        catch (XmlPullParserException e) {
+            throw new IOException("Invalid DIDL-Lite: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the next item or container, null at the end of the document
+     * @throws IOException if the document isn't valid XML
+     */
+    SonosMediaItem next() throws IOException {
+        try {
+            if (this.parser.getEventType() == XmlPullParser.END_DOCUMENT) { return null; }
+            String id = null;
+            String parentId = null;
+            boolean inEntry = false;
+            int event = this.parser.next();
+            // <DIDL-Lite> is depth 1, <item> and <container> are depth 2, their fields are depth 3
+            while (event != XmlPullParser.END_DOCUMENT) {
+                if (event == XmlPullParser.START_TAG && this.parser.getDepth() == 2) {
+                    id = this.parser.getAttributeValue(null, "id");
+                    parentId = this.parser.getAttributeValue(null, "parentID");
+                    inEntry = true;
+                    this.fields.clear();
+                }
+                else if (event == XmlPullParser.START_TAG && this.parser.getDepth() == 3) {
+                    this.text.setLength(0);
+                }
+                else if (event == XmlPullParser.TEXT && inEntry && this.parser.getDepth() == 3) {
+                    this.text.append(this.parser.getText());
+                }
+                else if (event == XmlPullParser.END_TAG && this.parser.getDepth() == 3 && inEntry) {
+                    // the first <res> is the best one
+                    if (!this.fields.containsKey(this.parser.getName())) {
+                        this.fields.put(this.parser.getName(), this.text.toString());
+                    }
+                }
+                else if (event == XmlPullParser.END_TAG && this.parser.getDepth() == 2 && inEntry) {
+                    return new SonosMediaItem(id, parentId, "container".equals(this.parser.getName()),
+                            this.fields.get("title"), this.fields.get("creator"), this.fields.get("album"),
+                            this.fields.get("albumArtURI"), this.fields.get("class"), this.fields.get("res"),
+                            this.fields.get("resMD"));
+                }
+                event = this.parser.next();
+            }
+            return null;
+        }
+        catch (XmlPullParserException e) {
+            throw new IOException("Invalid DIDL-Lite: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.vmichalak.sonoscontroller;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decode the body of GENA NOTIFY requests and the documents carried by their variables.
+ */
+final class EventParser {
+    private static final XmlPullParserFactory FACTORY;
+
+    static {
+        try {
+            FACTORY = XmlPullParserFactory.newInstance();
+            FACTORY.setNamespaceAware(true);
+        }
+        catch (XmlPullParserException e) {
+            throw new IllegalStateException("No XML pull parser available", e);
+        }
+    }
+
+    // Hide the implicit public constructor.
+    private EventParser() { }
+
+    /**
+     * @param body &lt;e:propertyset&gt; document
+     * @return unescaped text of each property by name, e.g. "LastChange" or "ZoneGroupState"
+     * @throws IOException if the body isn't valid XML
+     */
+    static Map<String, String> parsePropertySet(byte[] body) throws IOException {
+        HashMap<String, String> properties = new HashMap<String, String>();
+        try {
+            XmlPullParser parser = FACTORY.newPullParser();
+            parser.setInput(new ByteArrayInputStream(body), null);
+            int event = parser.getEventType();
+            String name = null;
+            StringBuilder text = new StringBuilder();
+            // <propertyset> is depth 1, <property> is depth 2, the variables are depth 3
+            while (event != XmlPullParser.END_DOCUMENT) {
+                if (event == XmlPullParser.START_TAG && parser.getDepth() == 3) {
+                    name = parser.getName();
+                    text.setLength(0);
+                }
+                else if (event == XmlPullParser.TEXT && name != null) {
+                    text.append(parser.getText());
+                }
+                else if (event == XmlPullParser.END_TAG && parser.getDepth() == 3) {
+                    properties.put(name, text.toString());
+                    name = null;
+                }
+                event = parser.next();
+            }
+        }
+        catch (XmlPullParserException e) {
+            throw new IOException("Invalid event: " + e.getMessage());
+        }
+        return properties;
+    }
+
+    /**
+     * Read the state variables of instance 0 from a LastChange document, e.g.
+     * &lt;Event&gt;&lt;InstanceID val="0"&gt;&lt;TransportState val="PLAYING"/&gt;&lt;/InstanceID&gt;&lt;/Event&gt;.
+     * Variables with a channel are kept for the Master channel only.
+     * @param lastChange LastChange document
+     * @return value of each variable by name
+     * @throws IOException if the document isn't valid XML
+     */
+    static Map<String, String> parseLastChange(String lastChange) throws IOException {
+        HashMap<String, String> variables = new HashMap<String, String>();
+        try {
+            XmlPullParser parser = FACTORY.newPullParser();
+            parser.setInput(new StringReader(lastChange));
+            int event = parser.getEventType();
+            boolean inInstance = false;
+            while (event != XmlPullParser.END_DOCUMENT) {
+                if (event == XmlPullParser.START_TAG) {
+                    if ("InstanceID".equals(parser.getName())) {
+                        inInstance = "0".equals(parser.getAttributeValue(null, "val"));
+                    }
+                    else if (inInstance) {
+                        String channel = parser.getAttributeValue(null, "channel");
+                        String value = parser.getAttributeValue(null, "val");
+                        if (value != null && (channel == null || "Master".equals(channel))) {
+                            variables.put(parser.getName(), value);
+                        }
+                    }
+                }
+                else if (event == XmlPullParser.END_TAG && "InstanceID".equals(parser.getName())) {
+                    inInstance = false;
+                }
+                event = parser.next();
+            }
+        }
+        catch (XmlPullParserException e) {
+            throw new IOException("Invalid LastChange: " + e.getMessage());
+        }
+        return variables;
+    }
+
+    /**
+     * Read the groups of a ZoneGroupState document, e.g.
+     * &lt;ZoneGroups&gt;&lt;ZoneGroup Coordinator="RINCON_X" ID="RINCON_X:1"&gt;&lt;ZoneGroupMember UUID="RINCON_X"
+     * Location="http://192.168.1.10:1400/xml/device_description.xml" ZoneName="Kitchen"/&gt;...
+     * Satellites of a home theater are listed under their main speaker, not as members of their own.
+     * @param zoneGroupState ZoneGroupState document, with or without the &lt;ZoneGroupState&gt; root
+     * @return household topology
+     * @throws IOException if the document isn't valid XML
+     */
+    static SonosTopology parseZoneGroupState(String zoneGroupState) throws IOException {
+        ArrayList<SonosZoneGroup> groups = new ArrayList<SonosZoneGroup>();
+        try {
+            XmlPullParser parser = FACTORY.newPullParser();
+            parser.setInput(new StringReader(zoneGroupState));
+            int event = parser.getEventType();
+            String groupId = null;
+            String coordinatorUID = null;
+            List<SonosZoneMember> members = null;
+            SonosZoneMember member = null;
+            while (event != XmlPullParser.END_DOCUMENT) {
+                if (event == XmlPullParser.START_TAG && "ZoneGroup".equals(parser.getName())) {
+                    groupId = parser.getAttributeValue(null, "ID");
+                    coordinatorUID = parser.getAttributeValue(null, "Coordinator");
+                    members = new ArrayList<SonosZoneMember>();
+                }
+                else if (event == XmlPullParser.START_TAG && "ZoneGroupMember".equals(parser.getName())
+                        && members != null) {
+                    member = readMember(parser);
+                    members.add(member);
+                }
+                else if (event == XmlPullParser.START_TAG && "Satellite".equals(parser.getName())
+                        && member != null) {
+                    member.addSatellite(readMember(parser));
+                }
+                else if (event == XmlPullParser.END_TAG && "ZoneGroup".equals(parser.getName())
+                        && members != null) {
+                    groups.add(new SonosZoneGroup(groupId, coordinatorUID, members));
+                    members = null;
+                    member = null;
+                }
+                event = parser.next();
+            }
+        }
+        catch (XmlPullParserException e) {
+            throw new IOException("Invalid ZoneGroupState: " + e.getMessage());
+        }
+        return new SonosTopology(groups);
+    }
+
+    private static SonosZoneMember readMember(XmlPullParser parser) {
+        return new SonosZoneMember(parser.getAttributeValue(null, "UUID"),
+                hostOf(parser.getAttributeValue(null, "Location")), parser.getAttributeValue(null, "ZoneName"),
+                "1".equals(parser.getAttributeValue(null, "Invisible")));
+    }
+
+    private static String hostOf(String location) {
+        if (location == null) { return null; }
+        try { return URI.create(location).getHost(); }
+        catch (IllegalArgumentException e) { return null; }
+    }
+}
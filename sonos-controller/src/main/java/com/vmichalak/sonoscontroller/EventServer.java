@@ -0,0 +1,150 @@
+package com.vmichalak.sonoscontroller;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Embedded HTTP server receiving the GENA NOTIFY requests sent by the speakers.
+ * Requests are small and handled one after the other on a single thread.
+ */
+final class EventServer {
+    private static final Charset HEADER_CHARSET = Charset.forName("ISO-8859-1");
+    private static final int READ_TIMEOUT = 2000;
+    private static final int MAX_BODY_SIZE = 1024 * 1024;
+
+    interface Handler {
+        /**
+         * @param path request path, identifying the subscription
+         * @param headers request headers, names in upper case
+         * @param body request body
+         * @return true if the path belongs to a known subscription
+         */
+        boolean onNotify(String path, Map<String, String> headers, byte[] body);
+    }
+
+    private final int port;
+    private final Handler handler;
+    private volatile ServerSocket serverSocket;
+    private Thread thread;
+
+    /**
+     * @param port listening port, 0 for any free port
+     * @param handler notified for each NOTIFY request
+     */
+    EventServer(int port, Handler handler) {
+        this.port = port;
+        this.handler = handler;
+    }
+
+    synchronized void start() throws IOException {
+        if (this.serverSocket != null) { return; }
+        final ServerSocket socket = new ServerSocket(this.port);
+        this.serverSocket = socket;
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!socket.isClosed()) {
+                    try { handle(socket.accept()); }
+                    catch (IOException e) { /* socket closed by stop(), or a broken request */ }
+                    catch (RuntimeException e) { /* failing handler, keep serving the other events */ }
+                }
+            }
+        }, "sonos-event-server");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    synchronized void stop() {
+        if (this.serverSocket == null) { return; }
+        try { this.serverSocket.close(); }
+        catch (IOException e) { /* already closed */ }
+        this.serverSocket = null;
+        this.thread = null;
+    }
+
+    boolean isRunning() {
+        return this.serverSocket != null;
+    }
+
+    /**
+     * @return the listening port, -1 if the server isn't running
+     */
+    int getPort() {
+        ServerSocket socket = this.serverSocket;
+        return socket == null ? -1 : socket.getLocalPort();
+    }
+
+    private void handle(Socket socket) throws IOException {
+        try {
+            socket.setSoTimeout(READ_TIMEOUT);
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            String requestLine = readLine(in);
+            if (requestLine == null) { return; }
+            String[] request = requestLine.split(" ");
+            HashMap<String, String> headers = new HashMap<String, String>();
+            String line;
+            while ((line = readLine(in)) != null && !line.isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon < 0) { continue; }
+                headers.put(line.substring(0, colon).trim().toUpperCase(Locale.US), line.substring(colon + 1).trim());
+            }
+
+            int status;
+            if (request.length < 2 || !"NOTIFY".equals(request[0])) {
+                status = 405;
+            }
+            else {
+                byte[] body = readBody(in, headers.get("CONTENT-LENGTH"));
+                try { status = this.handler.onNotify(request[1], headers, body) ? 200 : 412; }
+                catch (RuntimeException e) { status = 500; }
+            }
+            OutputStream out = socket.getOutputStream();
+            out.write(("HTTP/1.1 " + status + (status == 200 ? " OK" : " Error") + "\r\n"
+                    + "Content-Length: 0\r\nConnection: close\r\n\r\n").getBytes(HEADER_CHARSET));
+            out.flush();
+        }
+        catch (SocketException e) {
+            // the speaker closed the connection
+        }
+        finally {
+            socket.close();
+        }
+    }
+
+    private static byte[] readBody(InputStream in, String contentLength) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int remaining;
+        try { remaining = contentLength == null ? MAX_BODY_SIZE : Integer.parseInt(contentLength); }
+        catch (NumberFormatException e) { throw new IOException("Invalid Content-Length: " + contentLength); }
+        if (remaining > MAX_BODY_SIZE) { throw new IOException("NOTIFY body too large: " + remaining); }
+        while (remaining > 0) {
+            int read = in.read(buffer, 0, Math.min(buffer.length, remaining));
+            if (read < 0) { break; }
+            body.write(buffer, 0, read);
+            remaining -= read;
+        }
+        return body.toByteArray();
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = in.read()) >= 0) {
+            if (b == '\n') { break; }
+            if (b != '\r') { line.write(b); }
+        }
+        if (b < 0 && line.size() == 0) { return null; }
+        return new String(line.toByteArray(), HEADER_CHARSET);
+    }
+}
@@ -0,0 +1,156 @@
+package com.vmichalak.sonoscontroller;
+
+import com.vmichalak.sonoscontroller.exception.SonosControllerException;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.URI;
+
+/**
+ * GENA subscription to the events of one service of a speaker.
+ */
+final class EventSubscription {
+    private final SonosDevice device;
+    private final String eventEndpoint;
+    private final String callbackPath;
+    private volatile String sid;
+    private volatile int timeout;
+
+    /**
+     * @param device subscribed speaker
+     * @param eventEndpoint event URL path of the service, e.g. "/MediaRenderer/AVTransport/Event"
+     * @param callbackPath path of the NOTIFY requests for this subscription
+     */
+    EventSubscription(SonosDevice device, String eventEndpoint, String callbackPath) {
+        this.device = device;
+        this.eventEndpoint = eventEndpoint;
+        this.callbackPath = callbackPath;
+    }
+
+    SonosDevice getDevice() {
+        return device;
+    }
+
+    String getEventEndpoint() {
+        return eventEndpoint;
+    }
+
+    String getCallbackPath() {
+        return callbackPath;
+    }
+
+    /**
+     * @return subscription duration granted by the speaker, in seconds
+     */
+    int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Start a new subscription, replacing the previous one if any.
+     * @param callbackPort port of the {@link EventServer}
+     * @param requestedTimeout subscription duration requested, in seconds
+     * @throws IOException
+     * @throws SonosControllerException
+     */
+    void subscribe(int callbackPort, int requestedTimeout) throws IOException, SonosControllerException {
+        String callback = "<http://" + localAddressFor(device.getIpAddress()) + ":" + callbackPort
+                + callbackPath + ">";
+        EventRequest request = new EventRequest("SUBSCRIBE", this.uri());
+        request.setHeader("CALLBACK", callback);
+        request.setHeader("NT", "upnp:event");
+        request.setHeader("TIMEOUT", "Second-" + requestedTimeout);
+        HttpResponse response = this.execute(request);
+        Header sidHeader = response.getFirstHeader("SID");
+        if (sidHeader == null) {
+            throw new SonosControllerException("No SID received from " + device.getIpAddress());
+        }
+        this.sid = sidHeader.getValue();
+        this.timeout = parseTimeout(response.getFirstHeader("TIMEOUT"), requestedTimeout);
+    }
+
+    /**
+     * Extend the current subscription.
+     * @param requestedTimeout subscription duration requested, in seconds
+     * @throws IOException
+     * @throws SonosControllerException if the speaker doesn't know the subscription anymore (e.g. it rebooted)
+     */
+    void renew(int requestedTimeout) throws IOException, SonosControllerException {
+        if (this.sid == null) { throw new SonosControllerException("Not subscribed"); }
+        EventRequest request = new EventRequest("SUBSCRIBE", this.uri());
+        request.setHeader("SID", this.sid);
+        request.setHeader("TIMEOUT", "Second-" + requestedTimeout);
+        HttpResponse response = this.execute(request);
+        this.timeout = parseTimeout(response.getFirstHeader("TIMEOUT"), requestedTimeout);
+    }
+
+    /**
+     * Cancel the subscription. Failures are ignored, the subscription expires anyway.
+     */
+    void unsubscribe() {
+        String currentSid = this.sid;
+        this.sid = null;
+        if (currentSid == null) { return; }
+        EventRequest request = new EventRequest("UNSUBSCRIBE", this.uri());
+        request.setHeader("SID", currentSid);
+        try { this.execute(request); }
+        catch (IOException | SonosControllerException e) { /* expires by itself */ }
+    }
+
+    private String uri() {
+        return "http://" + device.getIpAddress() + ":" + CommandBuilder.SOAP_PORT + eventEndpoint;
+    }
+
+    private HttpResponse execute(EventRequest request) throws IOException, SonosControllerException {
+        HttpResponse response = HttpTransport.getDefault().execute(request);
+        EntityUtils.consume(response.getEntity());
+        int statusCode = response.getStatusLine().getStatusCode();
+        if (statusCode != 200) {
+            throw new SonosControllerException("HTTP " + statusCode + " received from " + device.getIpAddress()
+                    + " on " + request.getMethod() + " " + eventEndpoint);
+        }
+        return response;
+    }
+
+    private static int parseTimeout(Header header, int defaultTimeout) {
+        if (header == null) { return defaultTimeout; }
+        String value = header.getValue().trim();
+        if (!value.regionMatches(true, 0, "Second-", 0, 7)) { return defaultTimeout; }
+        try { return Integer.parseInt(value.substring(7)); }
+        catch (NumberFormatException e) { return defaultTimeout; } // "infinite"
+    }
+
+    /**
+     * @return the local address the speaker can reach us on
+     */
+    private static String localAddressFor(String ip) throws IOException {
+        DatagramSocket socket = new DatagramSocket();
+        try {
+            // connecting an UDP socket sends nothing, it only selects the route
+            socket.connect(InetAddress.getByName(ip), CommandBuilder.SOAP_PORT);
+            return socket.getLocalAddress().getHostAddress();
+        }
+        finally {
+            socket.close();
+        }
+    }
+
+    private static final class EventRequest extends HttpRequestBase {
+        private final String method;
+
+        private EventRequest(String method, String uri) {
+            this.method = method;
+            this.setURI(URI.create(uri));
+        }
+
+        @Override
+        public String getMethod() {
+            return method;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.vmichalak.sonoscontroller;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread-safe HTTP transport used to talk to the SONOS speakers.
+ * Each speaker gets its own pool of keep-alive connections, every request has explicit connect / socket / pool
+ * timeouts, and idle connections are evicted in background so a speaker dropping off the network never blocks a
+ * caller forever.
+ */
+public class HttpTransport {
+    private static volatile HttpTransport defaultTransport;
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final ScheduledExecutorService evictor;
+    private final int connectTimeout;
+    private final int requestTimeout;
+    private final long idleTimeout;
+
+    private HttpTransport(Builder builder) {
+        this.connectTimeout = builder.connectTimeout;
+        this.requestTimeout = builder.requestTimeout;
+        this.idleTimeout = builder.idleTimeout;
+
+        this.connectionManager = new PoolingHttpClientConnectionManager();
+        this.connectionManager.setMaxTotal(builder.maxConnectionsTotal);
+        this.connectionManager.setDefaultMaxPerRoute(builder.maxConnectionsPerSpeaker);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(builder.connectTimeout)
+                .setSocketTimeout(builder.socketTimeout)
+                .setConnectionRequestTimeout(builder.requestTimeout)
+                .build();
+        this.httpClient = HttpClientBuilder.create()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .build();
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "sonos-http-evictor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.evictor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                connectionManager.closeExpiredConnections();
+                connectionManager.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+            }
+        }, builder.evictionInterval, builder.evictionInterval, TimeUnit.MILLISECONDS);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return the transport used by every {@link SonosDevice}, created with the default settings on first use
+     */
+    public static HttpTransport getDefault() {
+        HttpTransport transport = defaultTransport;
+        if (transport == null) {
+            synchronized (HttpTransport.class) {
+                transport = defaultTransport;
+                if (transport == null) {
+                    transport = builder().build();
+                    defaultTransport = transport;
+                }
+            }
+        }
+        return transport;
+    }
+
+    /**
+     * Replace the transport used by every {@link SonosDevice}. The previous one is closed.
+     * @param transport new transport
+     */
+    public static void setDefault(HttpTransport transport) {
+        HttpTransport previous;
+        synchronized (HttpTransport.class) {
+            previous = defaultTransport;
+            defaultTransport = transport;
+        }
+        if (previous != null && previous != transport) { previous.close(); }
+    }
+
+    /**
+     * Execute a request. The caller must consume the response entity to give the connection back to the pool.
+     * @param request request to execute
+     * @return response
+     * @throws IOException
+     */
+    public HttpResponse execute(HttpUriRequest request) throws IOException {
+        return httpClient.execute(request);
+    }
+
+    /**
+     * Open a keep-alive connection to each speaker, so the first command doesn't pay the TCP handshake.
+     * Unreachable speakers are ignored.
+     * @param ips IP addresses of the speakers
+     */
+    public void prewarm(String... ips) {
+        for (String ip : ips) {
+            HttpRoute route = new HttpRoute(new HttpHost(ip, CommandBuilder.SOAP_PORT));
+            ConnectionRequest request = connectionManager.requestConnection(route, null);
+            HttpClientConnection connection = null;
+            try {
+                connection = request.get(requestTimeout, TimeUnit.MILLISECONDS);
+                if (!connection.isOpen()) {
+                    HttpClientContext context = HttpClientContext.create();
+                    connectionManager.connect(connection, route, connectTimeout, context);
+                    connectionManager.routeComplete(connection, route, context);
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            catch (IOException | ExecutionException e) {
+                // speaker unreachable, it will be connected on demand
+            }
+            finally {
+                if (connection != null) {
+                    connectionManager.releaseConnection(connection, null, idleTimeout, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+    }
+
+    /**
+     * Close every pooled connection and stop the eviction thread.
+     */
+    public void close() {
+        evictor.shutdownNow();
+        try { httpClient.close(); }
+        catch (IOException e) { /* nothing left to release */ }
+        connectionManager.shutdown();
+    }
+
+    public static class Builder {
+        private int maxConnectionsPerSpeaker = 2;
+        private int maxConnectionsTotal = 32;
+        private int connectTimeout = 2000;
+        private int socketTimeout = 5000;
+        private int requestTimeout = 5000;
+        private long idleTimeout = 30000;
+        private long evictionInterval = 10000;
+
+        private Builder() { }
+
+        /**
+         * @param maxConnectionsPerSpeaker maximum number of connections kept for one speaker
+         */
+        public Builder maxConnectionsPerSpeaker(int maxConnectionsPerSpeaker) {
+            this.maxConnectionsPerSpeaker = maxConnectionsPerSpeaker;
+            return this;
+        }
+
+        /**
+         * @param maxConnectionsTotal maximum number of connections for all the speakers
+         */
+        public Builder maxConnectionsTotal(int maxConnectionsTotal) {
+            this.maxConnectionsTotal = maxConnectionsTotal;
+            return this;
+        }
+
+        /**
+         * @param connectTimeout TCP connect timeout in milliseconds
+         */
+        public Builder connectTimeout(int connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        /**
+         * @param socketTimeout maximum time without data while reading a response, in milliseconds
+         */
+        public Builder socketTimeout(int socketTimeout) {
+            this.socketTimeout = socketTimeout;
+            return this;
+        }
+
+        /**
+         * @param requestTimeout maximum time waiting for a free pooled connection, in milliseconds
+         */
+        public Builder requestTimeout(int requestTimeout) {
+            this.requestTimeout = requestTimeout;
+            return this;
+        }
+
+        /**
+         * @param idleTimeout keep-alive connections unused for longer are closed, in milliseconds
+         */
+        public Builder idleTimeout(long idleTimeout) {
+            this.idleTimeout = idleTimeout;
+            return this;
+        }
+
+        /**
+         * @param evictionInterval delay between two idle connection evictions, in milliseconds
+         */
+        public Builder evictionInterval(long evictionInterval) {
+            this.evictionInterval = evictionInterval;
+            return this;
+        }
+
+        public HttpTransport build() {
+            return new HttpTransport(this);
+        }
+    }
+}
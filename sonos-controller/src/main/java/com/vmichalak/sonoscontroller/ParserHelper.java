@@ -1,24 +1,95 @@
 package com.vmichalak.sonoscontroller;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+/**
+ * Text extraction helpers. Every method is thread-safe.
+ */
 class ParserHelper {
+    private static final ConcurrentHashMap<String, Pattern> PATTERNS = new ConcurrentHashMap<String, Pattern>();
 
     // Hide the implicit public constructor.
     private ParserHelper() { }
 
     /**
      * Return the first find occurrence of a regex match.
-     * @param regex pattern regex
+     * @param regex pattern regex, compiled once and cached
      * @param content data
      * @return null if it doesn't found pattern
      */
     public static String findOne(String regex, String content) {
-        Pattern pattern = Pattern.compile(regex);
-        Matcher matcher = pattern.matcher(content);
+        Matcher matcher = compile(regex).matcher(content);
         boolean haveResult = matcher.find();
         if(!haveResult) { return null; }
         return matcher.group(1);
     }
+
+    /**
+     * Read the text of several elements in a single scan of an XML document. The scan stops as soon as every
+     * element is found.
+     * @param content XML document
+     * @param tags names of the elements
+     * @return unescaped text of the first element with each name, absent elements are left out
+     */
+    public static Map<String, String> findAll(String content, String... tags) {
+        HashMap<String, String> values = new HashMap<String, String>(tags.length * 2);
+        int index = content.indexOf('<');
+        while (index >= 0 && values.size() < tags.length) {
+            String tag = matchTag(content, index + 1, tags);
+            if (tag == null || values.containsKey(tag)) {
+                index = content.indexOf('<', index + 1);
+                continue;
+            }
+            int start = content.indexOf('>', index + 1 + tag.length());
+            if (start < 0) { break; }
+            if (content.charAt(start - 1) == '/') {
+                values.put(tag, "");
+                index = content.indexOf('<', start);
+                continue;
+            }
+            int end = content.indexOf("</" + tag + ">", start + 1);
+            if (end < 0) {
+                // unclosed element, the other tags may still follow
+                index = content.indexOf('<', start);
+                continue;
+            }
+            values.put(tag, unescape(content.substring(start + 1, end)));
+            // nested elements are not looked for, tags contain text only
+            index = content.indexOf('<', end + 2 + tag.length());
+        }
+        return values;
+    }
+
+    private static Pattern compile(String regex) {
+        Pattern pattern = PATTERNS.get(regex);
+        if (pattern == null) {
+            pattern = Pattern.compile(regex);
+            Pattern previous = PATTERNS.putIfAbsent(regex, pattern);
+            if (previous != null) { pattern = previous; }
+        }
+        return pattern;
+    }
+
+    /**
+     * @return the tag whose name starts at the given index, null if none
+     */
+    private static String matchTag(String content, int index, String[] tags) {
+        for (String tag : tags) {
+            int end = index + tag.length();
+            if (end >= content.length() || !content.startsWith(tag, index)) { continue; }
+            char next = content.charAt(end);
+            if (next == '>' || next == '/' || Character.isWhitespace(next)) { return tag; }
+        }
+        return null;
+    }
+
+    private static String unescape(String value) {
+        if (value.indexOf('&') < 0) { return value; }
+        return value.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"").replace("&apos;", "'")
+                .replace("&amp;", "&");
+    }
 }
@@ -0,0 +1,159 @@
+package com.vmichalak.sonoscontroller;
+
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SOAP envelope of one service action, encoded to UTF-8 once and reused for every call.
+ * Only the argument values are encoded per call: they are escaped straight into a per-thread buffer, without any
+ * intermediate String.
+ */
+final class PreparedCommand {
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+    private static final ConcurrentHashMap<String, PreparedCommand> COMMANDS =
+            new ConcurrentHashMap<String, PreparedCommand>();
+    private static final ConcurrentHashMap<String, byte[][]> ARGUMENT_TAGS = new ConcurrentHashMap<String, byte[][]>();
+    private static final ThreadLocal<Buffer> BUFFER = new ThreadLocal<Buffer>() {
+        @Override
+        protected Buffer initialValue() {
+            return new Buffer();
+        }
+    };
+
+    private final byte[] prefix;
+    private final byte[] suffix;
+
+    private PreparedCommand(String service, String action) {
+        this.prefix = ("<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\""
+                + " s:encodingStyle=\"http://schemas.xmlsoap.org/soap/encoding/\"><s:Body>"
+                + "<u:" + action + " xmlns:u=\"" + service + "\">").getBytes(CHARSET);
+        this.suffix = ("</u:" + action + "></s:Body></s:Envelope>").getBytes(CHARSET);
+    }
+
+    /**
+     * @param service service type, e.g. "urn:schemas-upnp-org:service:AVTransport:1"
+     * @param action action name, e.g. "Play"
+     * @return the shared prepared envelope of the action
+     */
+    static PreparedCommand of(String service, String action) {
+        String key = service + "#" + action;
+        PreparedCommand command = COMMANDS.get(key);
+        if (command == null) {
+            command = new PreparedCommand(service, action);
+            PreparedCommand previous = COMMANDS.putIfAbsent(key, command);
+            if (previous != null) { command = previous; }
+        }
+        return command;
+    }
+
+    /**
+     * @param arguments argument values by name, unescaped, in the order expected by the action
+     * @return the complete envelope
+     */
+    byte[] encode(Map<String, String> arguments) {
+        Buffer buffer = BUFFER.get();
+        buffer.length = 0;
+        buffer.write(prefix);
+        for (Map.Entry<String, String> argument : arguments.entrySet()) {
+            byte[][] tags = argumentTags(argument.getKey());
+            buffer.write(tags[0]);
+            if (argument.getValue() != null) { buffer.writeEscaped(argument.getValue()); }
+            buffer.write(tags[1]);
+        }
+        buffer.write(suffix);
+        byte[] result = buffer.toByteArray();
+        if (buffer.data.length > MAX_RETAINED_BUFFER) { BUFFER.remove(); }
+        return result;
+    }
+
+    private static byte[][] argumentTags(String name) {
+        byte[][] tags = ARGUMENT_TAGS.get(name);
+        if (tags == null) {
+            tags = new byte[][] {
+                    ("<" + name + ">").getBytes(CHARSET),
+                    ("</" + name + ">").getBytes(CHARSET)
+            };
+            byte[][] previous = ARGUMENT_TAGS.putIfAbsent(name, tags);
+            if (previous != null) { tags = previous; }
+        }
+        return tags;
+    }
+
+    private static final class Buffer {
+        private static final byte[] AMP  = "&amp;".getBytes(CHARSET);
+        private static final byte[] LT   = "&lt;".getBytes(CHARSET);
+        private static final byte[] GT   = "&gt;".getBytes(CHARSET);
+        private static final byte[] QUOT = "&quot;".getBytes(CHARSET);
+        private static final byte[] APOS = "&apos;".getBytes(CHARSET);
+
+        private byte[] data = new byte[1024];
+        private int length = 0;
+
+        private void write(byte[] bytes) {
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, data, length, bytes.length);
+            length += bytes.length;
+        }
+
+        private void write(int b) {
+            data[length++] = (byte) b;
+        }
+
+        /**
+         * Escape the XML special characters and encode to UTF-8 in a single pass.
+         */
+        private void writeEscaped(String value) {
+            // worst case: 6 bytes per char ("&quot;"), 4 bytes per surrogate pair
+            ensureCapacity(value.length() * 6);
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    switch (c) {
+                        case '&': write(AMP); break;
+                        case '<': write(LT); break;
+                        case '>': write(GT); break;
+                        case '"': write(QUOT); break;
+                        case '\'': write(APOS); break;
+                        default: write(c); break;
+                    }
+                }
+                else if (c < 0x800) {
+                    write(0xC0 | (c >> 6));
+                    write(0x80 | (c & 0x3F));
+                }
+                else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    write(0xF0 | (codePoint >> 18));
+                    write(0x80 | ((codePoint >> 12) & 0x3F));
+                    write(0x80 | ((codePoint >> 6) & 0x3F));
+                    write(0x80 | (codePoint & 0x3F));
+                }
+                else if (Character.isSurrogate(c)) {
+                    write('?');
+                }
+                else {
+                    write(0xE0 | (c >> 12));
+                    write(0x80 | ((c >> 6) & 0x3F));
+                    write(0x80 | (c & 0x3F));
+                }
+            }
+        }
+
+        private void ensureCapacity(int extra) {
+            if (length + extra <= data.length) { return; }
+            byte[] bigger = new byte[Math.max(data.length * 2, length + extra)];
+            System.arraycopy(data, 0, bigger, 0, length);
+            data = bigger;
+        }
+
+        private byte[] toByteArray() {
+            byte[] result = new byte[length];
+            System.arraycopy(data, 0, result, 0, length);
+            return result;
+        }
+    }
+}
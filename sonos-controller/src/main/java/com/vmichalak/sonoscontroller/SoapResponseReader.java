@@ -0,0 +1,113 @@
+package com.vmichalak.sonoscontroller;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Pull-parse SOAP responses for the value of a few elements.
+ * Parsing stops as soon as every requested element has been read, and the values are returned unescaped.
+ */
+final class SoapResponseReader {
+    private static final XmlPullParserFactory FACTORY;
+
+    static {
+        try {
+            FACTORY = XmlPullParserFactory.newInstance();
+            FACTORY.setNamespaceAware(true);
+        }
+        catch (XmlPullParserException e) {
+            throw new IllegalStateException("No XML pull parser available", e);
+        }
+    }
+
+    // Hide the implicit public constructor.
+    private SoapResponseReader() { }
+
+    /**
+     * @param in response body, its encoding is read from the XML declaration
+     * @param element local name of the element, without namespace prefix
+     * @return text of the first element with this name, null if absent
+     * @throws IOException if the response isn't valid XML
+     */
+    static String readValue(InputStream in, String element) throws IOException {
+        return readValues(in, element).get(element);
+    }
+
+    /**
+     * @param in response body, its encoding is read from the XML declaration
+     * @param elements local names of the elements, without namespace prefix
+     * @return text of the first element with each name, absent elements are left out
+     * @throws IOException if the response isn't valid XML
+     */
+    static Map<String, String> readValues(InputStream in, String... elements) throws IOException {
+        try {
+            XmlPullParser parser = FACTORY.newPullParser();
+            parser.setInput(in, null);
+            return read(parser, elements);
+        }
+        catch (XmlPullParserException e) {
+            throw new IOException("Invalid SOAP response: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param response response body
+     * @param elements local names of the elements, without namespace prefix
+     * @return text of the first element with each name, see {@link #readValues(InputStream, String...)}
+     * @throws IOException if the response isn't valid XML
+     */
+    static Map<String, String> readValues(String response, String... elements) throws IOException {
+        try {
+            XmlPullParser parser = FACTORY.newPullParser();
+            parser.setInput(new StringReader(response));
+            return read(parser, elements);
+        }
+        catch (XmlPullParserException e) {
+            throw new IOException("Invalid SOAP response: " + e.getMessage());
+        }
+    }
+
+    private static Map<String, String> read(XmlPullParser parser, String[] elements)
+            throws XmlPullParserException, IOException {
+        HashMap<String, String> values = new HashMap<String, String>();
+        String current = null;
+        StringBuilder text = new StringBuilder();
+        int event = parser.getEventType();
+        while (event != XmlPullParser.END_DOCUMENT) {
+            if (event == XmlPullParser.START_TAG) {
+                String name = parser.getName();
+                if (!values.containsKey(name) && isRequested(name, elements)) {
+                    // the enclosing requested element only contains other elements
+                    if (current != null) { values.put(current, ""); }
+                    current = name;
+                    text.setLength(0);
+                }
+            }
+            else if (event == XmlPullParser.TEXT && current != null) {
+                text.append(parser.getText());
+            }
+            else if (event == XmlPullParser.END_TAG && parser.getName().equals(current)) {
+                values.put(current, text.toString());
+                current = null;
+                // don't parse past the last requested element
+                if (values.size() == elements.length) { break; }
+            }
+            event = parser.next();
+        }
+        return values;
+    }
+
+    private static boolean isRequested(String name, String[] elements) {
+        for (String element : elements) {
+            if (element.equals(name)) { return true; }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,128 @@
+package com.vmichalak.sonoscontroller;
+
+import com.vmichalak.sonoscontroller.exception.SonosControllerException;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Lazy iteration over the children of a content directory object (ContentDirectory Browse).
+ * Children are requested page by page; the next page is already on its way while the current one is read, and only
+ * one page is held in memory, whatever the size of the library. Nothing is sent before the first {@link #hasNext()}.
+ */
+public class SonosBrowseCursor {
+    private static final String FILTER = "dc:title,dc:creator,upnp:album,upnp:albumArtURI,res,r:resMD";
+
+    private final String ip;
+    private final String objectId;
+    private final int pageSize;
+
+    private boolean started = false;
+    private int nextIndex = 0;
+    private int totalMatches = -1;
+    private String updateId;
+    private CompletableFuture<String> pendingPage;
+    private DidlReader page;
+    private SonosMediaItem nextItem;
+
+    /**
+     * @param ip speaker IP address
+     * @param objectId object whose children are listed, e.g. "FV:2" or "A:TRACKS"
+     * @param pageSize number of children requested at once
+     */
+    SonosBrowseCursor(String ip, String objectId, int pageSize) {
+        this.ip = ip;
+        this.objectId = objectId;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * @return true if another child is available, fetching the next page if needed
+     * @throws IOException
+     * @throws SonosControllerException
+     */
+    public boolean hasNext() throws IOException, SonosControllerException {
+        if (!this.started) {
+            this.started = true;
+            this.pendingPage = this.requestPage(0);
+        }
+        while (this.nextItem == null) {
+            if (this.page != null) {
+                this.nextItem = this.page.next();
+                if (this.nextItem != null) { break; }
+                this.page = null;
+            }
+            if (this.pendingPage == null) { return false; }
+            this.readPage();
+        }
+        return true;
+    }
+
+    /**
+     * @return the next child, null if there is none
+     * @throws IOException
+     * @throws SonosControllerException
+     */
+    public SonosMediaItem next() throws IOException, SonosControllerException {
+        if (!this.hasNext()) { return null; }
+        SonosMediaItem item = this.nextItem;
+        this.nextItem = null;
+        return item;
+    }
+
+    /**
+     * @return number of children announced by the speaker, -1 before the first page
+     */
+    public int getTotalMatches() {
+        return totalMatches;
+    }
+
+    /**
+     * @return UpdateID of the object when the last page was read, null before the first page
+     */
+    public String getUpdateId() {
+        return updateId;
+    }
+
+    /**
+     * Stop the iteration, the prefetched page is dropped.
+     */
+    public void close() {
+        if (this.pendingPage != null) { this.pendingPage.cancel(false); }
+        this.pendingPage = null;
+        this.page = null;
+        this.nextItem = null;
+    }
+
+    private CompletableFuture<String> requestPage(int startingIndex) {
+        return CommandBuilder.contentDirectory("Browse").put("ObjectID", this.objectId)
+                .put("BrowseFlag", "BrowseDirectChildren").put("Filter", FILTER)
+                .put("StartingIndex", String.valueOf(startingIndex))
+                .put("RequestedCount", String.valueOf(this.pageSize)).put("SortCriteria", "")
+                .executeOnAsync(this.ip);
+    }
+
+    private void readPage() throws IOException, SonosControllerException {
+        String response = CommandBuilder.await(this.pendingPage);
+        this.pendingPage = null;
+        Map<String, String> values = SoapResponseReader.readValues(response, "Result", "NumberReturned",
+                "TotalMatches", "UpdateID");
+        int returned;
+        try {
+            returned = Integer.parseInt(values.get("NumberReturned"));
+            this.totalMatches = Integer.parseInt(values.get("TotalMatches"));
+        }
+        catch (NumberFormatException e) {
+            throw new SonosControllerException("Invalid Browse response received from " + this.ip);
+        }
+        this.updateId = values.get("UpdateID");
+        this.nextIndex += returned;
+        if (returned > 0 && this.nextIndex < this.totalMatches) {
+            // prefetch while the caller reads this page
+            this.pendingPage = this.requestPage(this.nextIndex);
+        }
+        String result = values.get("Result");
+        this.page = result == null || result.isEmpty() ? null : new DidlReader(result);
+    }
+}
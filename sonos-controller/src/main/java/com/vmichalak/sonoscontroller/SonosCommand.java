@@ -0,0 +1,14 @@
+package com.vmichalak.sonoscontroller;
+
+import com.vmichalak.sonoscontroller.exception.SonosControllerException;
+
+import java.io.IOException;
+
+/**
+ * Command run on a speaker, e.g. on each speaker by {@link SonosHousehold#forEach(java.util.Collection, SonosCommand)}
+ * or on the current address of a speaker by {@link SonosDeviceHandle#execute(SonosCommand)}.
+ * @param <T> result of the command, {@link Void} if none
+ */
+public interface SonosCommand<T> {
+    T execute(SonosDevice device) throws IOException, SonosControllerException;
+}
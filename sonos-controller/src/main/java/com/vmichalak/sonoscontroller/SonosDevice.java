@@ -1,17 +1,45 @@
 package com.vmichalak.sonoscontroller;
 
+import com.vmichalak.protocol.ssdp.Device;
 import com.vmichalak.sonoscontroller.exception.SonosControllerException;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public class SonosDevice {
+    private static final long DEFAULT_SPEAKER_INFO_TTL = 60000;
+    private static final int  DEFAULT_BROWSE_PAGE_SIZE = 100;
+    // limit of the speakers for AddMultipleURIsToQueue
+    private static final int  MAX_URIS_PER_BATCH       = 16;
 
     private final String ip;
+    private final String bootId;
+    // identity of the speaker, it never changes once known
+    private volatile String localUID;
+    private volatile String macAddress;
+    private volatile long speakerInfoTtl = DEFAULT_SPEAKER_INFO_TTL;
+    private volatile CachedSpeakerInfo cachedSpeakerInfo;
+    private volatile StateCache stateCache;
+    private VolumeController volumeController;
+    private volatile SonosTopologyManager topologyManager;
 
     public SonosDevice(String ip) {
+        this(ip, null, null);
+    }
+
+    /**
+     * @param ip speaker IP address
+     * @param localUID speaker UID, if already known from its SSDP advertisement
+     * @param bootId BOOTID.UPNP.ORG of its SSDP advertisement, if known
+     */
+    SonosDevice(String ip, String localUID, String bootId) {
         this.ip = ip;
+        this.localUID = localUID;
+        this.bootId = bootId;
     }
 
     //<editor-fold desc="AV TRANSPORT">
@@ -23,6 +51,7 @@ public class SonosDevice {
      */
     public void play() throws IOException, SonosControllerException {
         CommandBuilder.transport("Play").put("InstanceID", "0").put("Speed", "1").executeOn(this.ip);
+        this.cacheWrite("CurrentTransportState", PlayState.PLAYING.name());
     }
 
     /**
@@ -45,6 +74,7 @@ public class SonosDevice {
      */
     public void pause() throws IOException, SonosControllerException {
         CommandBuilder.transport("Pause").put("InstanceID", "0").put("Speed", "1").executeOn(this.ip);
+        this.cacheWrite("CurrentTransportState", PlayState.PAUSED_PLAYBACK.name());
     }
 
     /**
@@ -55,8 +85,8 @@ public class SonosDevice {
      */
     public PlayState getPlayState() throws IOException, SonosControllerException {
         String r = CommandBuilder.transport("GetTransportInfo").put("InstanceID", "0").put("CurrentTransportState", "")
-                .put("CurrentTransportStatus", "").executeOn(this.ip);
-        return PlayState.valueOf(ParserHelper.findOne("<CurrentTransportState>(.*)</CurrentTransportState>", r));
+                .put("CurrentTransportStatus", "").executeOnAndGet(this.ip, "CurrentTransportState", this.stateCache);
+        return PlayState.valueOf(r);
     }
 
     /**
@@ -66,6 +96,7 @@ public class SonosDevice {
      */
     public void stop() throws IOException, SonosControllerException {
         CommandBuilder.transport("Stop").put("InstanceID", "0").put("Speed", "1").executeOn(this.ip);
+        this.cacheWrite("CurrentTransportState", PlayState.STOPPED.name());
     }
 
     /**
@@ -104,8 +135,9 @@ public class SonosDevice {
      * @throws SonosControllerException
      */
     public PlayMode getPlayMode() throws IOException, SonosControllerException {
-        String r = CommandBuilder.transport("GetTransportSettings").put("InstanceID", "0").executeOn(this.ip);
-        return PlayMode.valueOf(ParserHelper.findOne("<PlayMode>(.*)</PlayMode>", r));
+        String r = CommandBuilder.transport("GetTransportSettings").put("InstanceID", "0")
+                .executeOnAndGet(this.ip, "PlayMode", this.stateCache);
+        return PlayMode.valueOf(r);
     }
 
     /**
@@ -117,6 +149,7 @@ public class SonosDevice {
     public void setPlayMode(PlayMode playMode) throws IOException, SonosControllerException {
         CommandBuilder.transport("SetPlayMode").put("InstanceID", "0").put("NewPlayMode", playMode.toString())
                 .executeOn(this.ip);
+        this.cacheWrite("PlayMode", playMode.name());
     }
 
     /**
@@ -128,6 +161,98 @@ public class SonosDevice {
         CommandBuilder.transport("RemoveAllTracksFromQueue").put("InstanceID", "0").executeOn(this.ip);
     }
 
+    /**
+     * Add tracks at the end of the queue, sent by batches of 16 (AddMultipleURIsToQueue).
+     * Batches are sent one after the other over the same kept-alive connection, to keep the tracks in order.
+     * If a batch fails, the tracks of the previous batches stay in the queue.
+     * @param uris URIs of the tracks
+     * @param metadata DIDL metadata of each track, null if none
+     * @param listener notified after each batch, may be null
+     * @return progress after the last batch, null if there was no track to add
+     * @throws IOException
+     * @throws SonosControllerException
+     */
+    public SonosQueueProgress addToQueue(List<String> uris, List<String> metadata, SonosQueueListener listener)
+            throws IOException, SonosControllerException {
+        if (metadata != null && metadata.size() != uris.size()) {
+            throw new IllegalArgumentException("One metadata per URI is needed");
+        }
+        int batchCount = (uris.size() + MAX_URIS_PER_BATCH - 1) / MAX_URIS_PER_BATCH;
+        long start = System.nanoTime();
+        int firstTrackNumber = 0;
+        int tracksAdded = 0;
+        SonosQueueProgress progress = null;
+        for (int batch = 0; batch < batchCount; batch++) {
+            int from = batch * MAX_URIS_PER_BATCH;
+            int to = Math.min(from + MAX_URIS_PER_BATCH, uris.size());
+            StringBuilder enqueuedURIs = new StringBuilder();
+            StringBuilder enqueuedMetaData = new StringBuilder();
+            for (int i = from; i < to; i++) {
+                if (i > from) {
+                    enqueuedURIs.append(' ');
+                    enqueuedMetaData.append(' ');
+                }
+                // the URIs are space separated
+                enqueuedURIs.append(uris.get(i).replace(" ", "%20"));
+                if (metadata != null && metadata.get(i) != null) { enqueuedMetaData.append(metadata.get(i)); }
+            }
+            Map<String, String> r = CommandBuilder.transport("AddMultipleURIsToQueue").put("InstanceID", "0")
+                    .put("UpdateID", "0").put("NumberOfURIs", String.valueOf(to - from))
+                    .put("EnqueuedURIs", enqueuedURIs.toString())
+                    .put("EnqueuedURIsMetaData", enqueuedMetaData.toString())
+                    .put("ContainerURI", "").put("ContainerMetaData", "")
+                    .put("DesiredFirstTrackNumberEnqueued", "0").put("EnqueueAsNext", "0")
+                    .executeOnAndGetAll(this.ip, "FirstTrackNumberEnqueued", "NumTracksAdded", "NewQueueLength");
+            try {
+                if (batch == 0) { firstTrackNumber = Integer.parseInt(r.get("FirstTrackNumberEnqueued")); }
+                tracksAdded += Integer.parseInt(r.get("NumTracksAdded"));
+                progress = new SonosQueueProgress(batch + 1, batchCount, tracksAdded, uris.size(), firstTrackNumber,
+                        Integer.parseInt(r.get("NewQueueLength")),
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+            catch (NumberFormatException e) {
+                throw new SonosControllerException("Invalid AddMultipleURIsToQueue response received from " + ip);
+            }
+            if (listener != null) { listener.onBatchAdded(progress); }
+        }
+        return progress;
+    }
+
+    /**
+     * Add browsed items (tracks, favorites...) at the end of the queue, by batches.
+     * @param items items to add, usually read from {@link #browse(String)} or a {@link SonosLibraryIndex}
+     * @param listener notified after each batch, may be null
+     * @return progress after the last batch, null if there was no item to add
+     * @throws IOException
+     * @throws SonosControllerException
+     */
+    public SonosQueueProgress addItemsToQueue(List<SonosMediaItem> items, SonosQueueListener listener)
+            throws IOException, SonosControllerException {
+        ArrayList<String> uris = new ArrayList<String>(items.size());
+        ArrayList<String> metadata = new ArrayList<String>(items.size());
+        for (SonosMediaItem item : items) {
+            if (item.getUri() == null) { continue; }
+            uris.add(item.getUri());
+            metadata.add(item.getMetadata());
+        }
+        return this.addToQueue(uris, metadata, listener);
+    }
+
+    /**
+     * Replace the queue by the given tracks, added by batches.
+     * @param uris URIs of the tracks
+     * @param metadata DIDL metadata of each track, null if none
+     * @param listener notified after each batch, may be null
+     * @return progress after the last batch, null if there was no track to add
+     * @throws IOException
+     * @throws SonosControllerException
+     */
+    public SonosQueueProgress replaceQueue(List<String> uris, List<String> metadata, SonosQueueListener listener)
+            throws IOException, SonosControllerException {
+        this.clearQueue();
+        return this.addToQueue(uris, metadata, listener);
+    }
+
     /**
      * Return if the Sonos is joined with another one.
      * @return True if is joined, false if is isn't
@@ -135,6 +260,8 @@ public class SonosDevice {
      * @throws SonosControllerException
      */
     public boolean isJoined() throws IOException, SonosControllerException {
+        SonosTopology topology = this.getKnownTopology();
+        if (topology != null) { return topology.isJoined(this.ip); }
         return this.getZoneGroupState().getZonePlayerUIDInGroup().size() > 1;
     }
 
@@ -145,7 +272,32 @@ public class SonosDevice {
      * @throws SonosControllerException
      */
     public List<SonosDevice> joinedWith() throws IOException, SonosControllerException {
-        return this.getZoneGroupState().getSonosDevicesInGroup();
+        SonosZoneGroup group = this.getCurrentTopology().getGroupByIpAddress(this.ip);
+        if (group == null) { return new ArrayList<SonosDevice>(); }
+        return group.getSonosDevices();
+    }
+
+    /**
+     * Get the group of this speaker, to control all its members at once.
+     * @return group of this speaker, a group of one if it isn't joined
+     * @throws IOException
+     * @throws SonosControllerException if the coordinator of the group can't be found
+     */
+    public SonosGroup getGroup() throws IOException, SonosControllerException {
+        SonosZoneGroup group = this.getCurrentTopology().getGroupByIpAddress(this.ip);
+        if (group == null) { throw new SonosControllerException(this.ip + " not found in its own topology"); }
+        SonosDevice coordinator = null;
+        ArrayList<SonosDevice> members = new ArrayList<SonosDevice>();
+        for (SonosZoneMember member : group.getVisibleMembers()) {
+            SonosDevice device = this.ip.equals(member.getIpAddress()) ? this : member.toSonosDevice();
+            members.add(device);
+            if (member.getUID().equals(group.getCoordinatorUID())) { coordinator = device; }
+        }
+        if (coordinator == null) {
+            throw new SonosControllerException("Coordinator " + group.getCoordinatorUID() + " of " + group.getName()
+                    + " not found");
+        }
+        return new SonosGroup(group.getName(), coordinator, members);
     }
 
     /**
@@ -155,7 +307,7 @@ public class SonosDevice {
      * @throws SonosControllerException
      */
     public void join(SonosDevice master) throws IOException, SonosControllerException {
-        this.join(master.getSpeakerInfo().getLocalUID());
+        this.join(master.getLocalUID());
     }
 
     /**
@@ -168,6 +320,8 @@ public class SonosDevice {
         CommandBuilder.transport("SetAVTransportURI")
                 .put("InstanceID", "0").put("CurrentURI", "x-rincon:" + masterUID).put("CurrentURIMetaData", "")
                 .executeOn(this.ip);
+        // the play state now follows the new source
+        this.cacheInvalidate("CurrentTransportState");
     }
 
     /**
@@ -178,6 +332,7 @@ public class SonosDevice {
     public void unjoin() throws IOException, SonosControllerException {
         CommandBuilder.transport("BecomeCoordinatorOfStandaloneGroup")
                 .put("InstanceID", "0").put("Speed", "1").executeOn(this.ip);
+        this.cacheInvalidate("CurrentTransportState");
     }
 
     /**
@@ -186,9 +341,10 @@ public class SonosDevice {
      * @throws SonosControllerException
      */
     public void switchToLineIn() throws IOException, SonosControllerException {
-        String uid = this.getSpeakerInfo().getLocalUID();
+        String uid = this.getLocalUID();
         CommandBuilder.transport("SetAVTransportURI").put("InstanceID", "0")
                 .put("CurrentURI", "x-rincon-stream:" + uid).put("CurrentURIMetaData", "").executeOn(this.ip);
+        this.cacheInvalidate("CurrentTransportState");
     }
 
     //</editor-fold>
@@ -203,8 +359,8 @@ public class SonosDevice {
      */
     public int getVolume() throws IOException, SonosControllerException {
         String r = CommandBuilder.rendering("GetVolume").put("InstanceID", "0").put("Channel", "Master")
-                .executeOn(this.ip);
-        return Integer.parseInt(ParserHelper.findOne("<CurrentVolume>([0-9]*)</CurrentVolume>", r));
+                .executeOnAndGet(this.ip, "CurrentVolume", this.stateCache);
+        return Integer.parseInt(r);
     }
 
     /**
@@ -216,6 +372,7 @@ public class SonosDevice {
     public void setVolume(int volume) throws IOException, SonosControllerException {
         CommandBuilder.rendering("SetVolume").put("InstanceID", "0").put("Channel", "Master")
                 .put("DesiredVolume", String.valueOf(volume)).executeOn(this.ip);
+        this.cacheWrite("CurrentVolume", String.valueOf(volume));
     }
 
     /**
@@ -226,8 +383,8 @@ public class SonosDevice {
      */
     public boolean isMuted() throws IOException, SonosControllerException {
         String r = CommandBuilder.rendering("GetMute").put("InstanceID", "0").put("Channel", "Master")
-                .executeOn(this.ip);
-        return ParserHelper.findOne("<CurrentMute>([01])</CurrentMute>", r).equals("1") ? true : false;
+                .executeOnAndGet(this.ip, "CurrentMute", this.stateCache);
+        return r.equals("1");
     }
 
     /**
@@ -239,6 +396,7 @@ public class SonosDevice {
     public void setMute(boolean state) throws IOException, SonosControllerException {
         CommandBuilder.rendering("SetMute").put("InstanceID", "0").put("Channel", "Master")
                 .put("DesiredMute", state ? "1" : "0").executeOn(this.ip);
+        this.cacheWrite("CurrentMute", state ? "1" : "0");
     }
 
     /**
@@ -258,8 +416,8 @@ public class SonosDevice {
      */
     public int getBass() throws IOException, SonosControllerException {
         String r = CommandBuilder.rendering("GetBass").put("InstanceID", "0").put("Channel", "Master")
-                .executeOn(this.ip);
-        return Integer.parseInt(ParserHelper.findOne("<CurrentBass>(.*)</CurrentBass>", r));
+                .executeOnAndGet(this.ip, "CurrentBass", this.stateCache);
+        return Integer.parseInt(r);
     }
 
     /**
@@ -272,6 +430,7 @@ public class SonosDevice {
         if(bass > 10 || bass < -10) { throw new IllegalArgumentException("Bass value need to be between 10 and -10"); }
         CommandBuilder.rendering("SetBass").put("InstanceID", "0").put("DesiredBass", String.valueOf(bass))
                 .executeOn(this.ip);
+        this.cacheWrite("CurrentBass", String.valueOf(bass));
     }
     
     /**
@@ -282,8 +441,8 @@ public class SonosDevice {
      */
     public boolean isLoudnessActivated() throws IOException, SonosControllerException {
         String r = CommandBuilder.rendering("GetLoudness").put("InstanceID", "0").put("Channel", "Master")
-                .executeOn(this.ip);
-        return ParserHelper.findOne("<CurrentLoudness>(.*)</CurrentLoudness>", r).equals("1") ? true : false;
+                .executeOnAndGet(this.ip, "CurrentLoudness", this.stateCache);
+        return r.equals("1");
     }
 
     /**
@@ -295,6 +454,7 @@ public class SonosDevice {
     public void setLoudness(boolean loudness) throws IOException, SonosControllerException {
         CommandBuilder.rendering("SetLoudness").put("InstanceID", "0").put("Channel", "Master")
                 .put("DesiredLoudness", loudness ? "1" : "0").executeOn(this.ip);
+        this.cacheWrite("CurrentLoudness", loudness ? "1" : "0");
     }
 
     /**
@@ -305,8 +465,8 @@ public class SonosDevice {
      */
     public int getTreble() throws IOException, SonosControllerException {
         String r = CommandBuilder.rendering("GetTreble").put("InstanceID", "0").put("Channel", "Master")
-                .executeOn(this.ip);
-        return Integer.parseInt(ParserHelper.findOne("<CurrentTreble>(.*)</CurrentTreble>", r));
+                .executeOnAndGet(this.ip, "CurrentTreble", this.stateCache);
+        return Integer.parseInt(r);
     }
 
     /**
@@ -319,6 +479,7 @@ public class SonosDevice {
         if(treble > 10 || treble < -10) { throw new IllegalArgumentException("treble value need to be between 10 and -10"); }
         CommandBuilder.rendering("SetTreble").put("InstanceID", "0").put("DesiredTreble", String.valueOf(treble))
                 .executeOn(this.ip);
+        this.cacheWrite("CurrentTreble", String.valueOf(treble));
     }
 
     /**
@@ -330,8 +491,8 @@ public class SonosDevice {
      */
     public boolean isNightModeActivated() throws IOException, SonosControllerException {
         String s = CommandBuilder.rendering("GetEQ").put("InstanceID", "0").put("EQType", "NightMode")
-                .executeOn(this.ip);
-        return ParserHelper.findOne("<CurrentValue>(.*)</CurrentValue>", s).equals("1") ? true : false;
+                .executeOnAndGet(this.ip, "CurrentValue", this.stateCache);
+        return s.equals("1");
     }
 
     /**
@@ -344,6 +505,7 @@ public class SonosDevice {
     public void setNightMode(boolean state) throws IOException, SonosControllerException {
         CommandBuilder.rendering("SetEQ").put("InstanceID", "0").put("EQType", "NightMode")
                 .put("DesiredValue", state ? "1" : "0").executeOn(this.ip);
+        this.cacheWrite("CurrentValue", state ? "1" : "0");
     }
 
     /**
@@ -366,15 +528,17 @@ public class SonosDevice {
     public void setZoneName(String zoneName) throws IOException, SonosControllerException {
         CommandBuilder.device("SetZoneAttributes").put("DesiredZoneName", zoneName).put("DesiredIcon", "")
                 .put("DesiredConfiguration", "").executeOn(this.ip);
+        this.invalidateSpeakerInfo();
     }
 
     public boolean getLedState() throws IOException, SonosControllerException {
-        String r = CommandBuilder.device("GetLEDState").executeOn(this.ip);
-        return ParserHelper.findOne("<CurrentLEDState>(.*)</CurrentLEDState>", r).equals("On") ? true : false;
+        String r = CommandBuilder.device("GetLEDState").executeOnAndGet(this.ip, "CurrentLEDState", this.stateCache);
+        return r.equals("On");
     }
 
     public void setLedState(boolean state) throws IOException, SonosControllerException {
         CommandBuilder.device("SetLEDState").put("DesiredLEDState", state ? "On" : "Off").executeOn(this.ip);
+        this.cacheWrite("CurrentLEDState", state ? "On" : "Off");
     }
 
     public void switchLedState() throws IOException, SonosControllerException {
@@ -385,73 +549,243 @@ public class SonosDevice {
 
     //<editor-fold desc="CONTENT DIRECTORY">
 
+    /**
+     * Browse the children of a content directory object, page by page.
+     * @param objectId object whose children are listed, e.g. "FV:2" (favorites), "Q:0" (queue), "SQ:" (playlists),
+     *                 "A:TRACKS", "A:ALBUM", "A:ARTIST" (music library) or the ID of a container
+     * @return lazy cursor over the children
+     */
+    public SonosBrowseCursor browse(String objectId) {
+        return this.browse(objectId, DEFAULT_BROWSE_PAGE_SIZE);
+    }
+
+    /**
+     * Browse the children of a content directory object, page by page.
+     * @param objectId object whose children are listed
+     * @param pageSize number of children requested at once
+     * @return lazy cursor over the children
+     */
+    public SonosBrowseCursor browse(String objectId, int pageSize) {
+        return new SonosBrowseCursor(this.ip, objectId, pageSize);
+    }
+
+    public SonosBrowseCursor browseFavorites() {
+        return this.browse("FV:2");
+    }
+
+    public SonosBrowseCursor browseQueue() {
+        return this.browse("Q:0");
+    }
+
+    public SonosBrowseCursor browsePlaylists() {
+        return this.browse("SQ:");
+    }
+
+    public SonosBrowseCursor browseTracks() {
+        return this.browse("A:TRACKS");
+    }
+
+    public SonosBrowseCursor browseAlbums() {
+        return this.browse("A:ALBUM");
+    }
+
+    public SonosBrowseCursor browseArtists() {
+        return this.browse("A:ARTIST");
+    }
+
     //</editor-fold>
 
     //<editor-fold desc="ZONE GROUP TOPOLOGY">
 
     public SonosZoneInfo getZoneGroupState() throws IOException, SonosControllerException {
-        String r = CommandBuilder.zoneGroupTopology("GetZoneGroupAttributes").executeOn(this.ip);
-        String name = ParserHelper.findOne("<CurrentZoneGroupName>(.*)</CurrentZoneGroupName>", r);
-        String id = ParserHelper.findOne("<CurrentZoneGroupID>(.*)</CurrentZoneGroupID>", r);
-        String devices = ParserHelper.findOne("<CurrentZonePlayerUUIDsInGroup>(.*)</CurrentZonePlayerUUIDsInGroup>", r);
+        Map<String, String> r = CommandBuilder.zoneGroupTopology("GetZoneGroupAttributes")
+                .executeOnAndGetAll(this.ip, "CurrentZoneGroupName", "CurrentZoneGroupID",
+                        "CurrentZonePlayerUUIDsInGroup");
+        String name = r.get("CurrentZoneGroupName");
+        String id = r.get("CurrentZoneGroupID");
+        String devices = r.get("CurrentZonePlayerUUIDsInGroup");
         List<String> deviceList = Arrays.asList(devices.split(","));
-        return new SonosZoneInfo(name, id, deviceList);
+        return new SonosZoneInfo(name, id, deviceList, this.ip);
+    }
+
+    /**
+     * Get the groups and speakers of the whole household in one call.
+     * @return household topology, with the IP address of every speaker
+     * @throws IOException
+     * @throws SonosControllerException
+     */
+    public SonosTopology getTopology() throws IOException, SonosControllerException {
+        String zoneGroupState = CommandBuilder.zoneGroupTopology("GetZoneGroupState")
+                .executeOnAndGet(this.ip, "ZoneGroupState");
+        if (zoneGroupState == null) { throw new SonosControllerException("No ZoneGroupState received from " + ip); }
+        return EventParser.parseZoneGroupState(zoneGroupState);
+    }
+
+    /**
+     * Answer {@link #isJoined()}, {@link #joinedWith()} and {@link #getGroup()} from the topology kept in memory by
+     * a topology manager instead of asking the speaker.
+     * @param topologyManager topology manager of the household, null to ask the speaker again
+     */
+    public void useTopology(SonosTopologyManager topologyManager) {
+        this.topologyManager = topologyManager;
+    }
+
+    /**
+     * @return the topology kept by the topology manager, null if none or not loaded yet
+     */
+    private SonosTopology getKnownTopology() {
+        SonosTopologyManager manager = this.topologyManager;
+        return manager == null ? null : manager.getTopology();
+    }
+
+    private SonosTopology getCurrentTopology() throws IOException, SonosControllerException {
+        SonosTopology topology = this.getKnownTopology();
+        return topology != null ? topology : this.getTopology();
     }
 
     //</editor-fold>
 
     /**
      * Get information about the Sonos speaker.
+     * The information is cached for {@link #setSpeakerInfoTtl(long) a while}, and refreshed earlier if the speaker
+     * rebooted (new SSDP BOOTID) or the zone was renamed through {@link #setZoneName(String)}.
      * @return Information about the Sonos speaker, such as the UID, MAC Address, and Zone Name.
      * @throws IOException
      * @throws SonosControllerException
      */
     public SonosSpeakerInfo getSpeakerInfo() throws IOException, SonosControllerException {
-        String responseString = CommandBuilder.downloadSpeakerInfo(this.ip);
-
-        String zoneName                 = ParserHelper.findOne("<ZoneName>(.*)</ZoneName>", responseString);
-        String zoneIcon                 = ParserHelper.findOne("<ZoneIcon>(.*)</ZoneIcon>", responseString);
-        String configuration            = ParserHelper.findOne("<Configuration>(.*)</Configuration>", responseString);
-        String localUID                 = ParserHelper.findOne("<LocalUID>(.*)</LocalUID>", responseString);
-        String serialNumber             = ParserHelper.findOne("<SerialNumber>(.*)</SerialNumber>", responseString);
-        String softwareVersion          = ParserHelper.findOne("<SoftwareVersion>(.*)</SoftwareVersion>",
-                                        responseString);
-        String softwareDate             = ParserHelper.findOne("<SoftwareDate>(.*)</SoftwareDate>", responseString);
-        String softwareScm              = ParserHelper.findOne("<SoftwareScm>(.*)</SoftwareScm>", responseString);
-        String minCompatibleVersion     = ParserHelper.findOne("<MinCompatibleVersion>(.*)</MinCompatibleVersion>",
-                                        responseString);
-        String legacyCompatibleVersion  = ParserHelper.findOne("<LegacyCompatibleVersion>(.*)</LegacyCompatibleVersion>"
-                                        , responseString);
-        String hardwareVersion          = ParserHelper.findOne("<HardwareVersion>(.*)</HardwareVersion>",
-                                        responseString);
-        String dspVersion               = ParserHelper.findOne("<DspVersion>(.*)</DspVersion>", responseString);
-        String hwFlags                  = ParserHelper.findOne("<HwFlags>(.*)</HwFlags>", responseString);
-        String hwFeatures               = ParserHelper.findOne("<HwFeatures>(.*)</HwFeatures>", responseString);
-        String variant                  = ParserHelper.findOne("<Variant>(.*)</Variant>", responseString);
-        String generalFlags             = ParserHelper.findOne("<GeneralFlags>(.*)</GeneralFlags>", responseString);
-        String ipAddress                = ParserHelper.findOne("<IPAddress>(.*)</IPAddress>", responseString);
-        String macAddress               = ParserHelper.findOne("<MACAddress>(.*)</MACAddress>", responseString);
-        String copyright                = ParserHelper.findOne("<Copyright>(.*)</Copyright>", responseString);
-        String extraInfo                = ParserHelper.findOne("<ExtraInfo>(.*)</ExtraInfo>", responseString);
-        String htAudioInCode            = ParserHelper.findOne("<HTAudioInCode>(.*)</HTAudioInCode>", responseString);
-        String idxTrk                   = ParserHelper.findOne("<IdxTrk>(.*)</IdxTrk>", responseString);
-        String mdp2Ver                  = ParserHelper.findOne("<MDP2Ver>(.*)</MDP2Ver>", responseString);
-        String mdp3Ver                  = ParserHelper.findOne("<MDP3Ver>(.*)</MDP3Ver>", responseString);
-        String relBuild                 = ParserHelper.findOne("<RelBuild>(.*)</RelBuild>", responseString);
-        String whitelistBuild           = ParserHelper.findOne("<WhitelistBuild>(.*)</WhitelistBuild>", responseString);
-        String prodUnit                 = ParserHelper.findOne("<ProdUnit>(.*)</ProdUnit>", responseString);
-        String fuseCfg                  = ParserHelper.findOne("<FuseCfg>(.*)</FuseCfg>", responseString);
-        String revokeFuse               = ParserHelper.findOne("<RevokeFuse>(.*)</RevokeFuse>", responseString);
-        String authFlags                = ParserHelper.findOne("<AuthFlags>(.*)</AuthFlags>", responseString);
-        String swFeatures               = ParserHelper.findOne("<SwFeatures>(.*)</SwFeatures>", responseString);
-        String regState                 = ParserHelper.findOne("<RegState>(.*)</RegState>", responseString);
-        String customerID               = ParserHelper.findOne("<CustomerID>(.*)</CustomerID>", responseString);
-
-        return new SonosSpeakerInfo(zoneName, zoneIcon, configuration, localUID, serialNumber, softwareVersion,
-                softwareDate, softwareScm, minCompatibleVersion, legacyCompatibleVersion, hardwareVersion, dspVersion,
-                hwFlags, hwFeatures, variant, generalFlags, ipAddress, macAddress, copyright, extraInfo, htAudioInCode,
-                idxTrk, mdp2Ver, mdp3Ver, relBuild, whitelistBuild, prodUnit, fuseCfg, revokeFuse, authFlags,
-                swFeatures, regState, customerID);
+        String currentBootId = this.getCurrentBootId();
+        CachedSpeakerInfo cached = this.cachedSpeakerInfo;
+        if (cached != null && cached.isValid(currentBootId)) { return cached.info; }
+
+        SonosSpeakerInfo info = new SonosSpeakerInfo(CommandBuilder.downloadSpeakerInfo(this.ip));
+        if (this.localUID == null) { this.localUID = info.getLocalUID(); }
+        if (this.macAddress == null) { this.macAddress = info.getMacAddress(); }
+        if (this.speakerInfoTtl > 0) {
+            this.cachedSpeakerInfo = new CachedSpeakerInfo(info, currentBootId,
+                    System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.speakerInfoTtl));
+        }
+        return info;
+    }
+
+    /**
+     * @return UID of the speaker, e.g. "RINCON_000E58A0123401400", read once for the speaker's lifetime
+     * @throws IOException
+     * @throws SonosControllerException
+     */
+    public String getLocalUID() throws IOException, SonosControllerException {
+        if (this.localUID == null) { this.getSpeakerInfo(); }
+        return this.localUID;
+    }
+
+    /**
+     * @return UID of the speaker if already known, without asking the speaker
+     */
+    String getKnownLocalUID() {
+        return this.localUID;
+    }
+
+    /**
+     * @return MAC address of the speaker, read once for the speaker's lifetime
+     * @throws IOException
+     * @throws SonosControllerException
+     */
+    public String getMacAddress() throws IOException, SonosControllerException {
+        if (this.macAddress == null) { this.getSpeakerInfo(); }
+        return this.macAddress;
+    }
+
+    /**
+     * @param ttl how long {@link #getSpeakerInfo()} is cached, in milliseconds. 0 disables the cache.
+     */
+    public void setSpeakerInfoTtl(long ttl) {
+        this.speakerInfoTtl = ttl;
+        if (ttl <= 0) { this.cachedSpeakerInfo = null; }
+    }
+
+    /**
+     * Drop the cached speaker information, the next {@link #getSpeakerInfo()} downloads it again.
+     */
+    public void invalidateSpeakerInfo() {
+        this.cachedSpeakerInfo = null;
+    }
+
+    /**
+     * @return BOOTID last advertised by the speaker, null if unknown
+     */
+    private String getCurrentBootId() {
+        if (this.localUID == null) { return this.bootId; }
+        Device advertised = SonosDiscovery.getRegistry().findByUUID(this.localUID, null);
+        return advertised != null ? advertised.getBootId() : this.bootId;
+    }
+
+    /**
+     * Serve the rendering and transport reads (volume, mute, EQ, play state, play mode, LED) from a short-lived
+     * cache. Successful setters update the cache, so a read following a write costs no round trip.
+     * Use it only when this object is the main controller of the speaker, changes made by other controllers are
+     * seen after the TTL only.
+     * @param ttl how long a value is cached, in milliseconds
+     */
+    public void enableStateCache(long ttl) {
+        this.stateCache = new StateCache(ttl);
+    }
+
+    public void disableStateCache() {
+        this.stateCache = null;
+    }
+
+    /**
+     * @return hit and miss counters of the state cache, null if it isn't enabled
+     */
+    public StateCacheStats getStateCacheStats() {
+        StateCache cache = this.stateCache;
+        return cache == null ? null : cache.getStats();
+    }
+
+    void cacheWrite(String element, String value) {
+        StateCache cache = this.stateCache;
+        if (cache != null) { cache.put(element, value); }
+    }
+
+    void cacheInvalidate(String element) {
+        StateCache cache = this.stateCache;
+        if (cache != null) { cache.invalidate(element); }
+    }
+
+    public String getIpAddress() {
+        return this.ip;
+    }
+
+    /**
+     * @return the volume controller of this speaker, merging the volume changes asked in quick succession
+     */
+    public synchronized VolumeController getVolumeController() {
+        if (this.volumeController == null) { this.volumeController = new VolumeController(this); }
+        return this.volumeController;
+    }
+
+    /**
+     * @return a non-blocking view of this speaker
+     */
+    public AsyncSonosDevice async() {
+        return new AsyncSonosDevice(this.ip);
+    }
+
+    private static final class CachedSpeakerInfo {
+        private final SonosSpeakerInfo info;
+        private final String bootId;
+        private final long expiresAt;
+
+        private CachedSpeakerInfo(SonosSpeakerInfo info, String bootId, long expiresAt) {
+            this.info = info;
+            this.bootId = bootId;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isValid(String currentBootId) {
+            if (System.nanoTime() - this.expiresAt >= 0) { return false; }
+            return this.bootId == null || currentBootId == null || this.bootId.equals(currentBootId);
+        }
     }
 
     @Override
@@ -0,0 +1,216 @@
+package com.vmichalak.sonoscontroller;
+
+import com.vmichalak.sonoscontroller.exception.SonosControllerException;
+
+import org.apache.http.conn.ConnectTimeoutException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+
+/**
+ * A speaker designated by its UID instead of its IP address, which stays valid when the speaker gets a new address.
+ * Commands go to the address known by the {@link SonosDeviceResolver}. When the speaker can't be reached there, it
+ * is searched again and the command is sent once more to its new address: a speaker which moved costs one search
+ * and one retry.
+ * Commands which can't be applied twice ({@link #executeOnce(SonosCommand)}) are retried only if the first attempt
+ * couldn't even connect.
+ */
+public class SonosDeviceHandle {
+    private final String uid;
+    private final SonosDeviceResolver resolver;
+
+    SonosDeviceHandle(String uid, SonosDeviceResolver resolver) {
+        this.uid = uid;
+        this.resolver = resolver;
+    }
+
+    public String getUID() {
+        return uid;
+    }
+
+    /**
+     * @return the speaker at its last known address
+     * @throws IOException if the speaker can't be found
+     */
+    public SonosDevice getDevice() throws IOException {
+        return this.resolver.resolve(this.uid);
+    }
+
+    /**
+     * Run an idempotent command (reads, absolute settings...). If the speaker can't be reached, it is searched again
+     * and the command is retried once.
+     * @param command command, may run twice
+     * @return result of the command
+     * @throws IOException
+     * @throws SonosControllerException
+     */
+    public <T> T execute(SonosCommand<T> command) throws IOException, SonosControllerException {
+        return this.run(command, true);
+    }
+
+    /**
+     * Run a command which must not be applied twice (next track, relative volume...). If the speaker can't be
+     * reached, it is searched again; the command is retried only if it wasn't sent.
+     * @param command command
+     * @return result of the command
+     * @throws IOException
+     * @throws SonosControllerException
+     */
+    public <T> T executeOnce(SonosCommand<T> command) throws IOException, SonosControllerException {
+        return this.run(command, false);
+    }
+
+    //<editor-fold desc="COMMANDS">
+
+    public void play() throws IOException, SonosControllerException {
+        this.execute(new SonosCommand<Void>() {
+            @Override
+            public Void execute(SonosDevice device) throws IOException, SonosControllerException {
+                device.play();
+                return null;
+            }
+        });
+    }
+
+    public void pause() throws IOException, SonosControllerException {
+        this.execute(new SonosCommand<Void>() {
+            @Override
+            public Void execute(SonosDevice device) throws IOException, SonosControllerException {
+                device.pause();
+                return null;
+            }
+        });
+    }
+
+    public void stop() throws IOException, SonosControllerException {
+        this.execute(new SonosCommand<Void>() {
+            @Override
+            public Void execute(SonosDevice device) throws IOException, SonosControllerException {
+                device.stop();
+                return null;
+            }
+        });
+    }
+
+    public void next() throws IOException, SonosControllerException {
+        this.executeOnce(new SonosCommand<Void>() {
+            @Override
+            public Void execute(SonosDevice device) throws IOException, SonosControllerException {
+                device.next();
+                return null;
+            }
+        });
+    }
+
+    public void previous() throws IOException, SonosControllerException {
+        this.executeOnce(new SonosCommand<Void>() {
+            @Override
+            public Void execute(SonosDevice device) throws IOException, SonosControllerException {
+                device.previous();
+                return null;
+            }
+        });
+    }
+
+    public PlayState getPlayState() throws IOException, SonosControllerException {
+        return this.execute(new SonosCommand<PlayState>() {
+            @Override
+            public PlayState execute(SonosDevice device) throws IOException, SonosControllerException {
+                return device.getPlayState();
+            }
+        });
+    }
+
+    public int getVolume() throws IOException, SonosControllerException {
+        return this.execute(new SonosCommand<Integer>() {
+            @Override
+            public Integer execute(SonosDevice device) throws IOException, SonosControllerException {
+                return device.getVolume();
+            }
+        });
+    }
+
+    /**
+     * @param volume A volume value between 0 and 100
+     * @throws IOException
+     * @throws SonosControllerException
+     */
+    public void setVolume(final int volume) throws IOException, SonosControllerException {
+        this.execute(new SonosCommand<Void>() {
+            @Override
+            public Void execute(SonosDevice device) throws IOException, SonosControllerException {
+                device.setVolume(volume);
+                return null;
+            }
+        });
+    }
+
+    public boolean isMuted() throws IOException, SonosControllerException {
+        return this.execute(new SonosCommand<Boolean>() {
+            @Override
+            public Boolean execute(SonosDevice device) throws IOException, SonosControllerException {
+                return device.isMuted();
+            }
+        });
+    }
+
+    /**
+     * @param state True to mute, False to unmute
+     * @throws IOException
+     * @throws SonosControllerException
+     */
+    public void setMute(final boolean state) throws IOException, SonosControllerException {
+        this.execute(new SonosCommand<Void>() {
+            @Override
+            public Void execute(SonosDevice device) throws IOException, SonosControllerException {
+                device.setMute(state);
+                return null;
+            }
+        });
+    }
+
+    //</editor-fold>
+
+    private <T> T run(SonosCommand<T> command, boolean idempotent) throws IOException, SonosControllerException {
+        SonosDevice device = this.resolver.resolve(this.uid);
+        try {
+            return command.execute(device);
+        }
+        catch (IOException e) {
+            if (!isUnreachable(e)) { throw e; }
+            SonosDevice relocated;
+            try { relocated = this.resolver.relocate(this.uid, device); }
+            catch (IOException notFound) { throw e; }
+            if (!idempotent && !isNotSent(e)) { throw e; }
+            return command.execute(relocated);
+        }
+    }
+
+    /**
+     * @return true if the speaker didn't answer at all, as opposed to an invalid answer
+     */
+    static boolean isUnreachable(IOException e) {
+        return e instanceof SocketException || e instanceof InterruptedIOException || isNotSent(e);
+    }
+
+    /**
+     * @return true if the connection couldn't be opened (refused, or timed out: the usual failure after the speaker
+     * moved), so the request surely didn't reach the speaker. Read timeouts may happen after the request was sent,
+     * they don't count.
+     */
+    static boolean isNotSent(IOException e) {
+        return e instanceof ConnectException || e instanceof ConnectTimeoutException
+                || e instanceof NoRouteToHostException || e instanceof UnknownHostException;
+    }
+
+    @Override
+    public String toString() {
+        return "SonosDeviceHandle{" +
+                "uid='" + uid + '\'' +
+                '}';
+    }
+}
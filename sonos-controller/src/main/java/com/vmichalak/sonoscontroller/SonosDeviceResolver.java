@@ -0,0 +1,103 @@
+package com.vmichalak.sonoscontroller;
+
+import com.vmichalak.sonoscontroller.exception.SonosControllerException;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Current address of each speaker, by UID. Unknown speakers are looked up in the SSDP registry, then with a targeted
+ * "uuid:" search. A speaker which stopped answering (e.g. after a new DHCP lease) is searched again the same way, so
+ * finding it costs a single search instead of a full discovery.
+ * {@link #getHandle(String)} gives handles which follow their speaker through address changes.
+ */
+public class SonosDeviceResolver {
+    // a speaker which wasn't found isn't searched again before that, in milliseconds
+    private static final long SEARCH_BACKOFF = 10000;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * Remember the address of a speaker, e.g. found by {@link SonosDiscovery#discover()}.
+     * @param device speaker
+     * @throws IOException if the UID of the speaker isn't known yet and can't be read
+     * @throws SonosControllerException if the UID of the speaker isn't known yet and can't be read
+     */
+    public void add(SonosDevice device) throws IOException, SonosControllerException {
+        this.entry(device.getLocalUID()).device = device;
+    }
+
+    /**
+     * @param uid speaker UID, e.g. "RINCON_000E58A0123401400"
+     * @return the speaker at its last known address, searched if unknown
+     * @throws IOException if the speaker can't be found
+     */
+    public SonosDevice resolve(String uid) throws IOException {
+        Entry entry = this.entry(uid);
+        SonosDevice device = entry.device;
+        if (device != null) { return device; }
+        synchronized (entry) {
+            if (entry.device == null) { entry.device = this.search(uid, entry, true); }
+            return entry.device;
+        }
+    }
+
+    /**
+     * @param uid speaker UID
+     * @return handle sending its commands to the current address of the speaker
+     */
+    public SonosDeviceHandle getHandle(String uid) {
+        return new SonosDeviceHandle(uid, this);
+    }
+
+    /**
+     * Search again a speaker which stopped answering at its known address. Callers failing together on the same
+     * address share a single search.
+     * @param uid speaker UID
+     * @param stale speaker at the address which failed
+     * @return the speaker at its current address
+     * @throws IOException if the speaker didn't answer the search
+     */
+    SonosDevice relocate(String uid, SonosDevice stale) throws IOException {
+        Entry entry = this.entry(uid);
+        synchronized (entry) {
+            if (entry.device != null && entry.device != stale) { return entry.device; } // already relocated
+            SonosDevice found = this.search(uid, entry, false);
+            // same address: keep the instance, and its caches
+            if (stale == null || !stale.getIpAddress().equals(found.getIpAddress())) { entry.device = found; }
+            return entry.device;
+        }
+    }
+
+    private SonosDevice search(String uid, Entry entry, boolean fromRegistry) throws IOException {
+        long now = System.nanoTime();
+        long sinceFailure = now - entry.lastFailedSearch;
+        if (entry.lastFailedSearch != 0 && sinceFailure < TimeUnit.MILLISECONDS.toNanos(SEARCH_BACKOFF)) {
+            throw new IOException("Speaker " + uid + " not found");
+        }
+        SonosDevice found = fromRegistry ? SonosDiscovery.discoverByUID(uid) : SonosDiscovery.searchByUID(uid);
+        if (found == null) {
+            entry.lastFailedSearch = now;
+            throw new IOException("Speaker " + uid + " not found");
+        }
+        entry.lastFailedSearch = 0;
+        return found;
+    }
+
+    private Entry entry(String uid) {
+        Entry entry = this.entries.get(uid);
+        if (entry != null) { return entry; }
+        Entry created = new Entry();
+        entry = this.entries.putIfAbsent(uid, created);
+        return entry != null ? entry : created;
+    }
+
+    /**
+     * Address of a speaker. Searches are done holding the entry.
+     */
+    private static final class Entry {
+        private volatile SonosDevice device;
+        private long lastFailedSearch = 0;
+    }
+}
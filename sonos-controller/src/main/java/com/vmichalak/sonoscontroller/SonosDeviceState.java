@@ -0,0 +1,236 @@
+package com.vmichalak.sonoscontroller;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Local mirror of the state of a speaker, kept up to date by the events of {@link SonosEventManager}.
+ * Reading it costs no network round trip. Each value is null until the speaker sent it for the first time.
+ */
+public class SonosDeviceState {
+    private final SonosDevice device;
+
+    private volatile PlayState playState;
+    private volatile PlayMode playMode;
+    private volatile String transportUri;
+    private volatile String trackUri;
+    private volatile String trackMetaData;
+    private volatile String trackDuration;
+    private volatile Integer volume;
+    private volatile Boolean muted;
+    private volatile Integer bass;
+    private volatile Integer treble;
+    private volatile Boolean loudness;
+    private volatile Boolean nightMode;
+    private volatile String zoneGroupState;
+    private volatile long lastUpdate;
+
+    SonosDeviceState(SonosDevice device) {
+        this.device = device;
+    }
+
+    public SonosDevice getDevice() {
+        return device;
+    }
+
+    public PlayState getPlayState() {
+        return playState;
+    }
+
+    public PlayMode getPlayMode() {
+        return playMode;
+    }
+
+    public String getTransportUri() {
+        return transportUri;
+    }
+
+    public String getTrackUri() {
+        return trackUri;
+    }
+
+    public String getTrackMetaData() {
+        return trackMetaData;
+    }
+
+    /**
+     * @return duration of the current track in the format H:MM:SS
+     */
+    public String getTrackDuration() {
+        return trackDuration;
+    }
+
+    public Integer getVolume() {
+        return volume;
+    }
+
+    public Boolean isMuted() {
+        return muted;
+    }
+
+    public Integer getBass() {
+        return bass;
+    }
+
+    public Integer getTreble() {
+        return treble;
+    }
+
+    public Boolean isLoudnessActivated() {
+        return loudness;
+    }
+
+    public Boolean isNightModeActivated() {
+        return nightMode;
+    }
+
+    /**
+     * @return ZoneGroupState document of the household
+     */
+    public String getZoneGroupState() {
+        return zoneGroupState;
+    }
+
+    /**
+     * @return time of the last event received, in milliseconds since epoch, 0 if none yet
+     */
+    public long getLastUpdate() {
+        return lastUpdate;
+    }
+
+    /**
+     * Apply the variables of an AVTransport or RenderingControl LastChange event. Every variable is applied before the
+     * listeners are notified, so a failing listener can neither leave the state half updated nor hide the event from
+     * the other listeners.
+     */
+    synchronized void update(Map<String, String> variables, List<SonosEventListener> listeners) {
+        this.lastUpdate = System.currentTimeMillis();
+        EnumSet<Change> changes = EnumSet.noneOf(Change.class);
+        String value;
+        if ((value = variables.get("TransportState")) != null) {
+            PlayState newPlayState = parseEnum(PlayState.class, value);
+            if (newPlayState != null && newPlayState != this.playState) {
+                this.playState = newPlayState;
+                changes.add(Change.PLAY_STATE);
+            }
+        }
+        if ((value = variables.get("CurrentPlayMode")) != null) {
+            PlayMode newPlayMode = parseEnum(PlayMode.class, value);
+            if (newPlayMode != null && newPlayMode != this.playMode) {
+                this.playMode = newPlayMode;
+                changes.add(Change.PLAY_MODE);
+            }
+        }
+        if ((value = variables.get("AVTransportURI")) != null) { this.transportUri = value; }
+        if ((value = variables.get("CurrentTrackDuration")) != null) { this.trackDuration = value; }
+        String newTrackUri = variables.get("CurrentTrackURI");
+        String newTrackMetaData = variables.get("CurrentTrackMetaData");
+        if ((newTrackUri != null && !newTrackUri.equals(this.trackUri))
+                || (newTrackMetaData != null && !newTrackMetaData.equals(this.trackMetaData))) {
+            if (newTrackUri != null) { this.trackUri = newTrackUri; }
+            if (newTrackMetaData != null) { this.trackMetaData = newTrackMetaData; }
+            changes.add(Change.TRACK);
+        }
+        Integer newVolume = parseInt(variables.get("Volume"));
+        if (newVolume != null && !newVolume.equals(this.volume)) {
+            this.volume = newVolume;
+            changes.add(Change.VOLUME);
+        }
+        Boolean newMuted = parseBoolean(variables.get("Mute"));
+        if (newMuted != null && !newMuted.equals(this.muted)) {
+            this.muted = newMuted;
+            changes.add(Change.MUTE);
+        }
+        Integer newBass = parseInt(variables.get("Bass"));
+        if (newBass != null && !newBass.equals(this.bass)) {
+            this.bass = newBass;
+            changes.add(Change.BASS);
+        }
+        Integer newTreble = parseInt(variables.get("Treble"));
+        if (newTreble != null && !newTreble.equals(this.treble)) {
+            this.treble = newTreble;
+            changes.add(Change.TREBLE);
+        }
+        Boolean newLoudness = parseBoolean(variables.get("Loudness"));
+        if (newLoudness != null && !newLoudness.equals(this.loudness)) {
+            this.loudness = newLoudness;
+            changes.add(Change.LOUDNESS);
+        }
+        Boolean newNightMode = parseBoolean(variables.get("NightMode"));
+        if (newNightMode != null && !newNightMode.equals(this.nightMode)) {
+            this.nightMode = newNightMode;
+            changes.add(Change.NIGHT_MODE);
+        }
+        this.notifyListeners(changes, listeners);
+    }
+
+    /**
+     * Apply the ZoneGroupState variable of a ZoneGroupTopology event.
+     */
+    synchronized void updateZoneGroupState(String newZoneGroupState, List<SonosEventListener> listeners) {
+        this.lastUpdate = System.currentTimeMillis();
+        if (newZoneGroupState == null || newZoneGroupState.equals(this.zoneGroupState)) { return; }
+        this.zoneGroupState = newZoneGroupState;
+        this.notifyListeners(EnumSet.of(Change.ZONE_GROUP_STATE), listeners);
+    }
+
+    private void notifyListeners(EnumSet<Change> changes, List<SonosEventListener> listeners) {
+        for (Change change : changes) {
+            for (SonosEventListener listener : listeners) {
+                try { this.notifyListener(change, listener); }
+                catch (RuntimeException e) { /* keep notifying the other listeners */ }
+            }
+        }
+    }
+
+    private void notifyListener(Change change, SonosEventListener listener) {
+        switch (change) {
+            case PLAY_STATE: listener.onPlayStateChanged(device, this.playState); break;
+            case PLAY_MODE: listener.onPlayModeChanged(device, this.playMode); break;
+            case TRACK: listener.onTrackChanged(device, this.trackUri, this.trackMetaData); break;
+            case VOLUME: listener.onVolumeChanged(device, this.volume); break;
+            case MUTE: listener.onMuteChanged(device, this.muted); break;
+            case BASS: listener.onBassChanged(device, this.bass); break;
+            case TREBLE: listener.onTrebleChanged(device, this.treble); break;
+            case LOUDNESS: listener.onLoudnessChanged(device, this.loudness); break;
+            case NIGHT_MODE: listener.onNightModeChanged(device, this.nightMode); break;
+            case ZONE_GROUP_STATE: listener.onZoneGroupStateChanged(device, this.zoneGroupState); break;
+        }
+    }
+
+    private static <T extends Enum<T>> T parseEnum(Class<T> type, String value) {
+        try { return Enum.valueOf(type, value); }
+        catch (IllegalArgumentException e) { return null; }
+    }
+
+    private static Integer parseInt(String value) {
+        if (value == null) { return null; }
+        try { return Integer.valueOf(value); }
+        catch (NumberFormatException e) { return null; }
+    }
+
+    private static Boolean parseBoolean(String value) {
+        if (value == null) { return null; }
+        return "1".equals(value);
+    }
+
+    /**
+     * State values which can change in an event, in the order their listeners are notified.
+     */
+    private enum Change {
+        PLAY_STATE, PLAY_MODE, TRACK, VOLUME, MUTE, BASS, TREBLE, LOUDNESS, NIGHT_MODE, ZONE_GROUP_STATE
+    }
+
+    @Override
+    public String toString() {
+        return "SonosDeviceState{" +
+                "device=" + device +
+                ", playState=" + playState +
+                ", playMode=" + playMode +
+                ", trackUri='" + trackUri + '\'' +
+                ", volume=" + volume +
+                ", muted=" + muted +
+                '}';
+    }
+}
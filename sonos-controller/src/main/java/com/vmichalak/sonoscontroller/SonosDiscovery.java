@@ -1,27 +1,138 @@
 package com.vmichalak.sonoscontroller;
 
 import com.vmichalak.protocol.ssdp.Device;
-import com.vmichalak.protocol.ssdp.SSDPClient;
+import com.vmichalak.protocol.ssdp.DeviceRegistry;
+import com.vmichalak.protocol.ssdp.DiscoveryListener;
+import com.vmichalak.protocol.ssdp.SSDPNotifyListener;
+import com.vmichalak.protocol.ssdp.SSDPSearch;
+import com.vmichalak.protocol.ssdp.SearchCondition;
+import com.vmichalak.sonoscontroller.exception.SonosControllerException;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class SonosDiscovery {
+    private static final String ZONE_PLAYER_SERVICE = "urn:schemas-upnp-org:device:ZonePlayer:1";
+    private static final int    DISCOVERY_TIMEOUT   = 1000;
+
+    private static final DeviceRegistry      REGISTRY        = new DeviceRegistry();
+    private static final SSDPNotifyListener  NOTIFY_LISTENER = new SSDPNotifyListener(REGISTRY);
+
+    // the registry lists every speaker once a full M-SEARCH completed, or once every speaker had to advertise again
+    private static volatile long    listeningSince;
+    private static volatile boolean registrySearched = false;
 
     // Hide the implicit public constructor.
     private SonosDiscovery() { }
 
+    /**
+     * Start listening passively for SSDP advertisements. While listening, the registry of known speakers is kept
+     * up to date and, once a full discovery filled it, discoveries are answered from memory instead of sending a
+     * M-SEARCH.
+     * @throws IOException
+     */
+    public static synchronized void startListening() throws IOException {
+        if (NOTIFY_LISTENER.isRunning()) { return; }
+        NOTIFY_LISTENER.start();
+        listeningSince = System.nanoTime();
+        registrySearched = false;
+    }
+
+    /**
+     * Stop listening for SSDP advertisements. Discoveries use M-SEARCH again.
+     */
+    public static synchronized void stopListening() {
+        NOTIFY_LISTENER.stop();
+        registrySearched = false;
+    }
+
+    public static boolean isListening() {
+        return NOTIFY_LISTENER.isRunning();
+    }
+
+    /**
+     * @return registry of the SSDP advertisements seen by the passive listener and by M-SEARCH
+     */
+    public static DeviceRegistry getRegistry() {
+        return REGISTRY;
+    }
+
     /**
      * Discover all SONOS speakers on network using SSDP (Simple Service Discovery Protocol).
      * @return List of SONOS speakers
      * @throws IOException
      */
     public static List<SonosDevice> discover() throws IOException {
-        List<Device> source = SSDPClient.discover(1000, "urn:schemas-upnp-org:device:ZonePlayer:1");
-        ArrayList<SonosDevice> output = new ArrayList<SonosDevice>();
-        for (Device device : source) { output.add(new SonosDevice(device.getIPAddress())); }
-        return output;
+        return discover(0);
+    }
+
+    /**
+     * Discover SONOS speakers on network using SSDP (Simple Service Discovery Protocol).
+     * Returns as soon as the expected number of speakers answered instead of waiting for the full timeout.
+     * @param expectedCount number of speakers expected, 0 to wait for the full timeout
+     * @return List of SONOS speakers
+     * @throws IOException
+     */
+    public static List<SonosDevice> discover(int expectedCount) throws IOException {
+        return discover(expectedCount, null);
+    }
+
+    /**
+     * Discover SONOS speakers on network using SSDP (Simple Service Discovery Protocol).
+     * Returns as soon as the condition is satisfied instead of waiting for the full timeout.
+     * Each speaker is reported once, even if it answered several times.
+     * @param condition evaluated after each new speaker
+     * @return List of SONOS speakers found until the condition was satisfied
+     * @throws IOException
+     */
+    public static List<SonosDevice> discover(SonosDiscoveryCondition condition) throws IOException {
+        return discover(0, condition);
+    }
+
+    /**
+     * Discover the SONOS speaker of a zone. The discovery stops at the first speaker which answers, whose topology
+     * gives the address of every zone: a single HTTP request, whatever the number of speakers.
+     * @param zoneName name of the zone, e.g. "Kitchen"
+     * @return SONOS speaker, null if the zone wasn't found
+     * @throws IOException
+     */
+    public static SonosDevice discoverByZoneName(String zoneName) throws IOException {
+        SonosDevice any = discoverOne();
+        if (any == null) { return null; }
+        SonosTopology topology;
+        try { topology = any.getTopology(); }
+        catch (SonosControllerException e) { throw new IOException("Unable to read the topology: " + e.getMessage()); }
+        SonosZoneGroup group = topology.getGroupByZoneName(zoneName);
+        if (group == null) { return null; }
+        for (SonosZoneMember member : group.getVisibleMembers()) {
+            if (zoneName.equals(member.getZoneName())) { return member.toSonosDevice(); }
+        }
+        return null;
+    }
+
+    /**
+     * Discover SONOS speakers in background. Each speaker is handed to the listener as soon as it answers.
+     * @param listener notified for each SONOS speaker found
+     * @return the running search, which can be cancelled or awaited
+     */
+    public static SSDPSearch discover(final SonosDiscoveryListener listener) {
+        DiscoveryListener ssdpListener = new DiscoveryListener() {
+            @Override
+            public void onDeviceDiscovered(Device device) {
+                listener.onSonosDeviceDiscovered(toSonosDevice(device));
+            }
+
+            @Override
+            public void onDiscoveryFinished() {
+                listener.onDiscoveryFinished();
+            }
+        };
+        return new SSDPSearch(DISCOVERY_TIMEOUT, ZONE_PLAYER_SERVICE).deduplicateByUUID().registry(REGISTRY)
+                .listener(ssdpListener).start();
     }
 
     /**
@@ -30,9 +141,8 @@ public class SonosDiscovery {
      * @throws IOException
      */
     public static SonosDevice discoverOne() throws IOException {
-        Device source = SSDPClient.discoverOne(1000, "urn:schemas-upnp-org:device:ZonePlayer:1");
-        if(source == null) { return null; }
-        return new SonosDevice(source.getIPAddress());
+        List<SonosDevice> devices = discover(1);
+        return devices.isEmpty() ? null : devices.get(0);
     }
 
     /**
@@ -42,9 +152,102 @@ public class SonosDiscovery {
      * @throws IOException
      */
     public static SonosDevice discoverByUID(String uid) throws IOException {
-        Device source = SSDPClient.discoverOne(1000, "uuid:" + uid);
+        Device source = REGISTRY.findByUUID(uid, null);
+        if(source != null) { return toSonosDevice(source); }
+        return searchByUID(uid);
+    }
+
+    /**
+     * Search a SONOS speaker by UID with a targeted "uuid:" M-SEARCH, ignoring the registry. Used when the known
+     * address of the speaker stopped answering, e.g. after a new DHCP lease. Advertisements of the speaker with
+     * another address are dropped from the registry.
+     * @param uid Sonos Speaker UID
+     * @return SONOS speaker, null if it didn't answer
+     * @throws IOException
+     */
+    public static SonosDevice searchByUID(String uid) throws IOException {
+        Device source = searchOne("uuid:" + uid);
         if(source == null) { return null; }
-        return new SonosDevice(source.getIPAddress());
+        for (Device device : REGISTRY.getDevices(null)) {
+            if (uid.equals(device.getUUID()) && !source.getIPAddress().equals(device.getIPAddress())) {
+                REGISTRY.remove(device.getUSN());
+            }
+        }
+        return toSonosDevice(source);
+    }
+
+    private static List<SonosDevice> discover(int expectedCount, final SonosDiscoveryCondition condition)
+            throws IOException {
+        if (isRegistryComplete()) {
+            List<SonosDevice> cached = discoverFromRegistry(expectedCount, condition);
+            if (cached != null) { return cached; }
+        }
+        final ArrayList<SonosDevice> output = new ArrayList<SonosDevice>();
+        SSDPSearch search = new SSDPSearch(DISCOVERY_TIMEOUT, ZONE_PLAYER_SERVICE).expect(expectedCount)
+                .deduplicateByUUID().registry(REGISTRY).listener(new DiscoveryListener() {
+                    @Override
+                    public void onDeviceDiscovered(Device device) {
+                        output.add(toSonosDevice(device));
+                    }
+
+                    @Override
+                    public void onDiscoveryFinished() { }
+                });
+        if (condition != null) {
+            search.until(new SearchCondition() {
+                @Override
+                public boolean isSatisfied(Device device, List<Device> devices) {
+                    SonosDevice last = output.get(output.size() - 1);
+                    return condition.isSatisfied(last, Collections.unmodifiableList(output));
+                }
+            });
+        }
+        search.run();
+        // a search which waited the full timeout found every speaker, the listener keeps the registry up to date
+        if (expectedCount == 0 && condition == null && isListening()) { registrySearched = true; }
+        return output;
+    }
+
+    /**
+     * @return true if the registry may answer a discovery: listening, and either filled by a full M-SEARCH or
+     * listening for longer than the advertisement max-age. Until then, it only knows the speakers which happened to
+     * advertise.
+     */
+    private static boolean isRegistryComplete() {
+        if (!isListening()) { return false; }
+        if (registrySearched) { return true; }
+        return System.nanoTime() - listeningSince >= TimeUnit.SECONDS.toNanos(DeviceRegistry.DEFAULT_MAX_AGE);
+    }
+
+    /**
+     * @return the speakers known by the registry, or null if the registry can't answer (cold, expired, or the
+     * condition isn't satisfied by the known speakers)
+     */
+    private static List<SonosDevice> discoverFromRegistry(int expectedCount, SonosDiscoveryCondition condition) {
+        LinkedHashMap<String, Device> source = new LinkedHashMap<String, Device>();
+        for (Device device : REGISTRY.getDevices(ZONE_PLAYER_SERVICE)) {
+            String key = device.getUUID() != null ? device.getUUID() : device.getUSN();
+            if (!source.containsKey(key)) { source.put(key, device); }
+        }
+        if (source.isEmpty() || source.size() < expectedCount) { return null; }
+        ArrayList<SonosDevice> output = new ArrayList<SonosDevice>();
+        for (Device device : source.values()) {
+            SonosDevice sonosDevice = toSonosDevice(device);
+            output.add(sonosDevice);
+            if (condition != null && condition.isSatisfied(sonosDevice, Collections.unmodifiableList(output))) {
+                return output;
+            }
+        }
+        return condition == null ? output : null;
+    }
+
+    private static SonosDevice toSonosDevice(Device device) {
+        return new SonosDevice(device.getIPAddress(), device.getUUID(), device.getBootId());
+    }
+
+    private static Device searchOne(String serviceType) throws IOException {
+        List<Device> devices = new SSDPSearch(DISCOVERY_TIMEOUT, serviceType).expect(1).registry(REGISTRY).run();
+        return devices.isEmpty() ? null : devices.get(0);
     }
 
-}
\ No newline at end of file
+}
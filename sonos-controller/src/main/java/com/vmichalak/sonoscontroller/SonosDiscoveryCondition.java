@@ -0,0 +1,15 @@
+package com.vmichalak.sonoscontroller;
+
+import java.util.List;
+
+/**
+ * Condition ending a SONOS discovery early, e.g. "found zone Kitchen" or "found N players".
+ */
+public interface SonosDiscoveryCondition {
+    /**
+     * @param device speaker just discovered
+     * @param devices all the speakers discovered so far, including the new one
+     * @return true to stop the discovery
+     */
+    boolean isSatisfied(SonosDevice device, List<SonosDevice> devices);
+}
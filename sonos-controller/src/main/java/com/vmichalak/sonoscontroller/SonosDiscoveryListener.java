@@ -0,0 +1,17 @@
+package com.vmichalak.sonoscontroller;
+
+/**
+ * Callback notified by {@link SonosDiscovery} while a discovery is running.
+ */
+public interface SonosDiscoveryListener {
+    /**
+     * Called as soon as a SONOS speaker answered.
+     * @param device SONOS speaker
+     */
+    void onSonosDeviceDiscovered(SonosDevice device);
+
+    /**
+     * Called once when the discovery is over.
+     */
+    void onDiscoveryFinished();
+}
@@ -0,0 +1,39 @@
+package com.vmichalak.sonoscontroller;
+
+/**
+ * {@link SonosEventListener} ignoring every event, to override only the interesting ones.
+ */
+public abstract class SonosEventAdapter implements SonosEventListener {
+    @Override
+    public void onPlayStateChanged(SonosDevice device, PlayState playState) { }
+
+    @Override
+    public void onPlayModeChanged(SonosDevice device, PlayMode playMode) { }
+
+    @Override
+    public void onTrackChanged(SonosDevice device, String uri, String metadata) { }
+
+    @Override
+    public void onVolumeChanged(SonosDevice device, int volume) { }
+
+    @Override
+    public void onMuteChanged(SonosDevice device, boolean muted) { }
+
+    @Override
+    public void onBassChanged(SonosDevice device, int bass) { }
+
+    @Override
+    public void onTrebleChanged(SonosDevice device, int treble) { }
+
+    @Override
+    public void onLoudnessChanged(SonosDevice device, boolean loudness) { }
+
+    @Override
+    public void onNightModeChanged(SonosDevice device, boolean nightMode) { }
+
+    @Override
+    public void onZoneGroupStateChanged(SonosDevice device, String zoneGroupState) { }
+
+    @Override
+    public void onSubscriptionFailed(SonosDevice device, Exception cause) { }
+}
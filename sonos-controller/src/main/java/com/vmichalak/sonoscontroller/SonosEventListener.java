@@ -0,0 +1,41 @@
+package com.vmichalak.sonoscontroller;
+
+/**
+ * Callback notified by {@link SonosEventManager} when the state of a subscribed speaker changes.
+ * Callbacks run on the event server thread and must return quickly. Extend {@link SonosEventAdapter} to implement
+ * only some of them.
+ */
+public interface SonosEventListener {
+    void onPlayStateChanged(SonosDevice device, PlayState playState);
+
+    void onPlayModeChanged(SonosDevice device, PlayMode playMode);
+
+    /**
+     * @param uri URI of the current track
+     * @param metadata metadata of the current track (DIDL format)
+     */
+    void onTrackChanged(SonosDevice device, String uri, String metadata);
+
+    void onVolumeChanged(SonosDevice device, int volume);
+
+    void onMuteChanged(SonosDevice device, boolean muted);
+
+    void onBassChanged(SonosDevice device, int bass);
+
+    void onTrebleChanged(SonosDevice device, int treble);
+
+    void onLoudnessChanged(SonosDevice device, boolean loudness);
+
+    void onNightModeChanged(SonosDevice device, boolean nightMode);
+
+    /**
+     * @param zoneGroupState ZoneGroupState document of the household
+     */
+    void onZoneGroupStateChanged(SonosDevice device, String zoneGroupState);
+
+    /**
+     * Called when a subscription couldn't be renewed. It is retried in background, the state of the speaker may be
+     * stale meanwhile.
+     */
+    void onSubscriptionFailed(SonosDevice device, Exception cause);
+}
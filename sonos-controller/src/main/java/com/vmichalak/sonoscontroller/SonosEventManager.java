@@ -0,0 +1,217 @@
+package com.vmichalak.sonoscontroller;
+
+import com.vmichalak.sonoscontroller.exception.SonosControllerException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Subscribe to the UPnP events (GENA) of the speakers instead of polling them.
+ * For each subscribed speaker, the AVTransport, RenderingControl and ZoneGroupTopology events are received by an
+ * embedded HTTP server and mirrored into a {@link SonosDeviceState}. Subscriptions are renewed in background until
+ * {@link #unsubscribe(SonosDevice)} or {@link #stop()}.
+ */
+public class SonosEventManager {
+    private static final int DEFAULT_SUBSCRIPTION_TIMEOUT = 1800;
+    private static final int RETRY_DELAY                  = 30;
+    private static final String[] EVENT_ENDPOINTS = {
+            CommandBuilder.TRANSPORT_EVENT_ENDPOINT,
+            CommandBuilder.RENDERING_EVENT_ENDPOINT,
+            CommandBuilder.ZONE_GROUP_TOPOLOGY_EVENT_ENDPOINT
+    };
+
+    private final int subscriptionTimeout;
+    private final EventServer server;
+    private final AtomicInteger nextSubscriptionId = new AtomicInteger();
+    private final ConcurrentHashMap<String, EventSubscription> subscriptionsByPath =
+            new ConcurrentHashMap<String, EventSubscription>();
+    private final ConcurrentHashMap<String, List<EventSubscription>> subscriptionsByDevice =
+            new ConcurrentHashMap<String, List<EventSubscription>>();
+    private final ConcurrentHashMap<String, SonosDeviceState> states = new ConcurrentHashMap<String, SonosDeviceState>();
+    private final CopyOnWriteArrayList<SonosEventListener> listeners = new CopyOnWriteArrayList<SonosEventListener>();
+    private ScheduledExecutorService scheduler;
+
+    public SonosEventManager() {
+        this(0, DEFAULT_SUBSCRIPTION_TIMEOUT);
+    }
+
+    /**
+     * @param port port of the embedded event server, 0 for any free port
+     * @param subscriptionTimeout subscription duration requested to the speakers, in seconds
+     */
+    public SonosEventManager(int port, int subscriptionTimeout) {
+        this.subscriptionTimeout = subscriptionTimeout;
+        this.server = new EventServer(port, new EventServer.Handler() {
+            @Override
+            public boolean onNotify(String path, Map<String, String> headers, byte[] body) {
+                return handleNotify(path, body);
+            }
+        });
+    }
+
+    /**
+     * Start the embedded event server. Called by {@link #subscribe(SonosDevice)} if needed.
+     * @throws IOException if the server port can't be opened
+     */
+    public synchronized void start() throws IOException {
+        if (this.server.isRunning()) { return; }
+        this.server.start();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "sonos-event-renewal");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Cancel every subscription and stop the event server.
+     */
+    public synchronized void stop() {
+        if (!this.server.isRunning()) { return; }
+        this.scheduler.shutdownNow();
+        for (EventSubscription subscription : this.subscriptionsByPath.values()) { subscription.unsubscribe(); }
+        this.subscriptionsByPath.clear();
+        this.subscriptionsByDevice.clear();
+        this.states.clear();
+        this.server.stop();
+    }
+
+    public boolean isRunning() {
+        return this.server.isRunning();
+    }
+
+    /**
+     * Subscribe to the events of a speaker. The returned state is filled as soon as the speaker sends its initial
+     * events, right after the subscription.
+     * @param device speaker
+     * @return live state of the speaker
+     * @throws IOException
+     * @throws SonosControllerException
+     */
+    public SonosDeviceState subscribe(SonosDevice device) throws IOException, SonosControllerException {
+        this.start();
+        SonosDeviceState state = new SonosDeviceState(device);
+        SonosDeviceState existing = this.states.putIfAbsent(device.getIpAddress(), state);
+        if (existing != null) { return existing; }
+
+        ArrayList<EventSubscription> subscriptions = new ArrayList<EventSubscription>();
+        try {
+            for (String endpoint : EVENT_ENDPOINTS) {
+                String path = "/events/" + this.nextSubscriptionId.incrementAndGet();
+                EventSubscription subscription = new EventSubscription(device, endpoint, path);
+                // the initial event may arrive before the SUBSCRIBE response
+                this.subscriptionsByPath.put(path, subscription);
+                subscriptions.add(subscription);
+                subscription.subscribe(this.server.getPort(), this.subscriptionTimeout);
+                this.scheduleRenewal(subscription, subscription.getTimeout() / 2);
+            }
+        }
+        catch (IOException | SonosControllerException e) {
+            for (EventSubscription subscription : subscriptions) {
+                this.subscriptionsByPath.remove(subscription.getCallbackPath());
+                subscription.unsubscribe();
+            }
+            this.states.remove(device.getIpAddress(), state);
+            throw e;
+        }
+        this.subscriptionsByDevice.put(device.getIpAddress(), subscriptions);
+        return state;
+    }
+
+    /**
+     * Cancel the subscriptions of a speaker.
+     * @param device speaker
+     */
+    public void unsubscribe(SonosDevice device) {
+        List<EventSubscription> subscriptions = this.subscriptionsByDevice.remove(device.getIpAddress());
+        this.states.remove(device.getIpAddress());
+        if (subscriptions == null) { return; }
+        for (EventSubscription subscription : subscriptions) {
+            this.subscriptionsByPath.remove(subscription.getCallbackPath());
+            subscription.unsubscribe();
+        }
+    }
+
+    /**
+     * @param device speaker
+     * @return live state of the speaker, null if it isn't subscribed
+     */
+    public SonosDeviceState getState(SonosDevice device) {
+        return this.states.get(device.getIpAddress());
+    }
+
+    public void addListener(SonosEventListener listener) {
+        this.listeners.add(listener);
+    }
+
+    public void removeListener(SonosEventListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    private boolean handleNotify(String path, byte[] body) {
+        EventSubscription subscription = this.subscriptionsByPath.get(path);
+        if (subscription == null) { return false; }
+        SonosDeviceState state = this.states.get(subscription.getDevice().getIpAddress());
+        if (state == null) { return false; }
+        try {
+            Map<String, String> properties = EventParser.parsePropertySet(body);
+            String lastChange = properties.get("LastChange");
+            if (lastChange != null) { state.update(EventParser.parseLastChange(lastChange), this.listeners); }
+            String zoneGroupState = properties.get("ZoneGroupState");
+            if (zoneGroupState != null) { state.updateZoneGroupState(zoneGroupState, this.listeners); }
+        }
+        catch (IOException e) {
+            // malformed event, the next one carries the full state again
+        }
+        catch (RuntimeException e) {
+            // unexpected failure: the event is lost, the subscription is kept
+        }
+        return true;
+    }
+
+    private void scheduleRenewal(final EventSubscription subscription, int delay) {
+        ScheduledExecutorService currentScheduler = this.scheduler;
+        if (currentScheduler == null || currentScheduler.isShutdown()) { return; }
+        currentScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                renew(subscription);
+            }
+        }, Math.max(1, delay), TimeUnit.SECONDS);
+    }
+
+    private void renew(EventSubscription subscription) {
+        if (!this.subscriptionsByPath.containsKey(subscription.getCallbackPath())) { return; }
+        try {
+            subscription.renew(this.subscriptionTimeout);
+            this.scheduleRenewal(subscription, subscription.getTimeout() / 2);
+            return;
+        }
+        catch (IOException | SonosControllerException e) {
+            // the speaker may have rebooted and forgotten the subscription, subscribe again
+        }
+        try {
+            subscription.subscribe(this.server.getPort(), this.subscriptionTimeout);
+            this.scheduleRenewal(subscription, subscription.getTimeout() / 2);
+        }
+        catch (IOException | SonosControllerException e) {
+            this.scheduleRenewal(subscription, RETRY_DELAY);
+            for (SonosEventListener listener : this.listeners) {
+                try { listener.onSubscriptionFailed(subscription.getDevice(), e); }
+                catch (RuntimeException listenerError) { /* the retry is already scheduled */ }
+            }
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.vmichalak.sonoscontroller;
+
+import com.vmichalak.sonoscontroller.exception.SonosControllerException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * A zone group: speakers playing the same source, driven by their coordinator.
+ * Transport commands and the group volume and mute (GroupRenderingControl) are sent once to the coordinator.
+ * Per-speaker settings (EQ, loudness, night mode) are sent to every member in parallel, so a group command takes one
+ * round trip whatever the number of members. Members are resolved once, when the group is created with
+ * {@link SonosDevice#getGroup()}.
+ */
+public class SonosGroup {
+    private final String name;
+    private final SonosDevice coordinator;
+    private final List<SonosDevice> members;
+
+    SonosGroup(String name, SonosDevice coordinator, List<SonosDevice> members) {
+        this.name = name;
+        this.coordinator = coordinator;
+        this.members = members;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public SonosDevice getCoordinator() {
+        return coordinator;
+    }
+
+    public List<SonosDevice> getMembers() {
+        return Collections.unmodifiableList(members);
+    }
+
+    //<editor-fold desc="AV TRANSPORT">
+
+    public void play() throws IOException, SonosControllerException {
+        this.coordinator.play();
+    }
+
+    public void pause() throws IOException, SonosControllerException {
+        this.coordinator.pause();
+    }
+
+    public void stop() throws IOException, SonosControllerException {
+        this.coordinator.stop();
+    }
+
+    public void next() throws IOException, SonosControllerException {
+        this.coordinator.next();
+    }
+
+    public void previous() throws IOException, SonosControllerException {
+        this.coordinator.previous();
+    }
+
+    public PlayState getPlayState() throws IOException, SonosControllerException {
+        return this.coordinator.getPlayState();
+    }
+
+    //</editor-fold>
+
+    //<editor-fold desc="GROUP RENDERING">
+
+    /**
+     * Get the group volume, the average volume of the members.
+     * @return A volume value between 0 and 100
+     * @throws IOException
+     * @throws SonosControllerException
+     */
+    public int getVolume() throws IOException, SonosControllerException {
+        String value = CommandBuilder.groupRendering("GetGroupVolume").put("InstanceID", "0")
+                .executeOnAndGet(this.coordinator.getIpAddress(), "CurrentVolume");
+        return Integer.parseInt(value);
+    }
+
+    /**
+     * Set the group volume. The members keep their volume ratio, as recorded by the last
+     * {@link #snapshotVolume()}.
+     * @param volume A volume value between 0 and 100
+     * @throws IOException
+     * @throws SonosControllerException
+     */
+    public void setVolume(int volume) throws IOException, SonosControllerException {
+        CommandBuilder.groupRendering("SetGroupVolume").put("InstanceID", "0")
+                .put("DesiredVolume", String.valueOf(volume)).executeOn(this.coordinator.getIpAddress());
+        this.invalidateMembers("CurrentVolume");
+    }
+
+    /**
+     * Change the group volume relatively to its current value.
+     * @param adjustment volume step, negative to lower the volume
+     * @return the new group volume
+     * @throws IOException
+     * @throws SonosControllerException
+     */
+    public int setRelativeVolume(int adjustment) throws IOException, SonosControllerException {
+        String value = CommandBuilder.groupRendering("SetRelativeGroupVolume").put("InstanceID", "0")
+                .put("Adjustment", String.valueOf(adjustment))
+                .executeOnAndGet(this.coordinator.getIpAddress(), "NewVolume");
+        this.invalidateMembers("CurrentVolume");
+        return Integer.parseInt(value);
+    }
+
+    /**
+     * Record the current volume ratio between the members, used by the following group volume changes.
+     * Needed only after the volume of a member was changed on its own.
+     * @throws IOException
+     * @throws SonosControllerException
+     */
+    public void snapshotVolume() throws IOException, SonosControllerException {
+        CommandBuilder.groupRendering("SnapshotGroupVolume").put("InstanceID", "0")
+                .executeOn(this.coordinator.getIpAddress());
+    }
+
+    /**
+     * @return True if the whole group is muted
+     * @throws IOException
+     * @throws SonosControllerException
+     */
+    public boolean isMuted() throws IOException, SonosControllerException {
+        return CommandBuilder.groupRendering("GetGroupMute").put("InstanceID", "0")
+                .executeOnAndGet(this.coordinator.getIpAddress(), "CurrentMute").equals("1");
+    }
+
+    /**
+     * Mute or unmute every member.
+     * @param state True to mute, False to unmute
+     * @throws IOException
+     * @throws SonosControllerException
+     */
+    public void setMute(boolean state) throws IOException, SonosControllerException {
+        CommandBuilder.groupRendering("SetGroupMute").put("InstanceID", "0").put("DesiredMute", state ? "1" : "0")
+                .executeOn(this.coordinator.getIpAddress());
+        this.invalidateMembers("CurrentMute");
+    }
+
+    //</editor-fold>
+
+    //<editor-fold desc="MEMBERS RENDERING">
+
+    /**
+     * Set the bass EQ of every member.
+     * @param bass Value between 10 and -10
+     * @return members which applied the value and failures
+     */
+    public SonosGroupResult setBass(final int bass) {
+        if(bass > 10 || bass < -10) { throw new IllegalArgumentException("Bass value need to be between 10 and -10"); }
+        return this.forEachMember("CurrentBass", String.valueOf(bass), new MemberCommand() {
+            @Override
+            public CompletableFuture<Void> send(AsyncSonosDevice member) {
+                return member.setBass(bass);
+            }
+        });
+    }
+
+    /**
+     * Set the treble EQ of every member.
+     * @param treble value between -10 and 10
+     * @return members which applied the value and failures
+     */
+    public SonosGroupResult setTreble(final int treble) {
+        if(treble > 10 || treble < -10) {
+            throw new IllegalArgumentException("treble value need to be between 10 and -10");
+        }
+        return this.forEachMember("CurrentTreble", String.valueOf(treble), new MemberCommand() {
+            @Override
+            public CompletableFuture<Void> send(AsyncSonosDevice member) {
+                return member.setTreble(treble);
+            }
+        });
+    }
+
+    /**
+     * Set the loudness compensation of every member.
+     * @param loudness True for set On, False for set Off
+     * @return members which applied the value and failures
+     */
+    public SonosGroupResult setLoudness(final boolean loudness) {
+        return this.forEachMember("CurrentLoudness", loudness ? "1" : "0", new MemberCommand() {
+            @Override
+            public CompletableFuture<Void> send(AsyncSonosDevice member) {
+                return member.setLoudness(loudness);
+            }
+        });
+    }
+
+    /**
+     * Set the Night Mode of every member.
+     * /!\ WARNING: WORKS ONLY WITH PLAYBAR / PLAYBASE, other members report a failure /!\
+     * @param state
+     * @return members which applied the value and failures
+     */
+    public SonosGroupResult setNightMode(final boolean state) {
+        return this.forEachMember("CurrentValue", state ? "1" : "0", new MemberCommand() {
+            @Override
+            public CompletableFuture<Void> send(AsyncSonosDevice member) {
+                return member.setNightMode(state);
+            }
+        });
+    }
+
+    //</editor-fold>
+
+    /**
+     * Send a command to every member at once and wait for all the answers.
+     * @param element state cache entry updated on the members which applied the command
+     * @param value new value of the entry
+     */
+    private SonosGroupResult forEachMember(String element, String value, MemberCommand command) {
+        LinkedHashMap<SonosDevice, CompletableFuture<Void>> pending =
+                new LinkedHashMap<SonosDevice, CompletableFuture<Void>>();
+        for (SonosDevice member : this.members) {
+            pending.put(member, command.send(member.async()));
+        }
+        LinkedHashMap<SonosDevice, Throwable> failures = new LinkedHashMap<SonosDevice, Throwable>();
+        for (Map.Entry<SonosDevice, CompletableFuture<Void>> entry : pending.entrySet()) {
+            try {
+                entry.getValue().join();
+                entry.getKey().cacheWrite(element, value);
+            }
+            catch (CompletionException | CancellationException e) {
+                failures.put(entry.getKey(), e.getCause() != null ? e.getCause() : e);
+            }
+        }
+        return new SonosGroupResult(new ArrayList<SonosDevice>(this.members), failures);
+    }
+
+    private void invalidateMembers(String element) {
+        for (SonosDevice member : this.members) { member.cacheInvalidate(element); }
+    }
+
+    private interface MemberCommand {
+        CompletableFuture<Void> send(AsyncSonosDevice member);
+    }
+
+    @Override
+    public String toString() {
+        return "SonosGroup{" +
+                "name='" + name + '\'' +
+                ", coordinator=" + coordinator +
+                ", members=" + members +
+                '}';
+    }
+}
@@ -0,0 +1,53 @@
+package com.vmichalak.sonoscontroller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome of a command sent to every member of a {@link SonosGroup}. Members are independent: a failure on one
+ * speaker doesn't prevent the others from applying the command.
+ */
+public final class SonosGroupResult {
+    private final List<SonosDevice> members;
+    private final Map<SonosDevice, Throwable> failures;
+
+    SonosGroupResult(List<SonosDevice> members, Map<SonosDevice, Throwable> failures) {
+        this.members = members;
+        this.failures = failures;
+    }
+
+    /**
+     * @return true if every member applied the command
+     */
+    public boolean isSuccess() {
+        return failures.isEmpty();
+    }
+
+    /**
+     * @return the members which applied the command
+     */
+    public List<SonosDevice> getSucceeded() {
+        ArrayList<SonosDevice> succeeded = new ArrayList<SonosDevice>();
+        for (SonosDevice member : members) {
+            if (!failures.containsKey(member)) { succeeded.add(member); }
+        }
+        return succeeded;
+    }
+
+    /**
+     * @return the error of each member which didn't apply the command (IOException or SonosControllerException)
+     */
+    public Map<SonosDevice, Throwable> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    @Override
+    public String toString() {
+        return "SonosGroupResult{" +
+                "succeeded=" + getSucceeded() +
+                ", failures=" + failures +
+                '}';
+    }
+}
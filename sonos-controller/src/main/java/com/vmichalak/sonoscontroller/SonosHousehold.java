@@ -0,0 +1,549 @@
+package com.vmichalak.sonoscontroller;
+
+import com.vmichalak.sonoscontroller.exception.SonosControllerException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Entry point to control every speaker of a household: discovers the speakers, keeps one {@link SonosDevice} per
+ * speaker and the topology, and runs bulk commands on all of them at once.
+ * Bulk commands run concurrently on a bounded pool of threads and wait at most until a deadline, so a bulk command
+ * takes as long as the slowest speaker (or the deadline), not the sum of all of them.
+ */
+public class SonosHousehold {
+    private static final int  DEFAULT_PARALLELISM = 8;
+    private static final long DEFAULT_DEADLINE    = 3000;
+    // positions closer than that aren't sought again on restore, in milliseconds
+    private static final long SEEK_TOLERANCE      = 2000;
+
+    private final long deadline;
+    private final ExecutorService executor;
+    private final ConcurrentHashMap<String, SonosDevice> devices = new ConcurrentHashMap<String, SonosDevice>();
+    private volatile SonosTopologyManager topologyManager;
+
+    public SonosHousehold() {
+        this(DEFAULT_PARALLELISM, DEFAULT_DEADLINE);
+    }
+
+    /**
+     * @param parallelism maximum number of speakers contacted at once
+     * @param deadline maximum duration of a bulk command, in milliseconds
+     */
+    public SonosHousehold(int parallelism, long deadline) {
+        this.deadline = deadline;
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "sonos-household-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Discover the speakers and read the topology. Speakers listed by the topology which didn't answer the
+     * discovery are added as well.
+     * @return the speakers of the household
+     * @throws IOException
+     * @throws SonosControllerException
+     */
+    public List<SonosDevice> discover() throws IOException, SonosControllerException {
+        List<SonosDevice> discovered = SonosDiscovery.discover();
+        if (discovered.isEmpty()) { return this.getDevices(); }
+        for (SonosDevice device : discovered) { this.add(device); }
+        SonosTopologyManager manager = this.topologyManager;
+        if (manager == null) {
+            manager = new SonosTopologyManager(discovered.get(0));
+            this.topologyManager = manager;
+        }
+        SonosTopology topology = manager.refresh();
+        for (SonosZoneGroup group : topology.getGroups()) {
+            for (SonosZoneMember member : group.getVisibleMembers()) {
+                if (!this.devices.containsKey(member.getUID())) { this.add(member.toSonosDevice()); }
+            }
+        }
+        for (SonosDevice device : this.devices.values()) { device.useTopology(manager); }
+        return this.getDevices();
+    }
+
+    /**
+     * Add a speaker found by other means.
+     * @param device speaker
+     */
+    public void add(SonosDevice device) {
+        String key = device.getKnownLocalUID() != null ? device.getKnownLocalUID() : device.getIpAddress();
+        this.devices.putIfAbsent(key, device);
+        SonosTopologyManager manager = this.topologyManager;
+        if (manager != null) { this.devices.get(key).useTopology(manager); }
+    }
+
+    public List<SonosDevice> getDevices() {
+        return new ArrayList<SonosDevice>(this.devices.values());
+    }
+
+    /**
+     * @param uid speaker UID
+     * @return the speaker, null if unknown
+     */
+    public SonosDevice getDevice(String uid) {
+        return this.devices.get(uid);
+    }
+
+    /**
+     * @param zoneName name of a zone, e.g. "Kitchen"
+     * @return a speaker of the zone, null if unknown or the topology isn't read yet
+     */
+    public SonosDevice getDeviceByZoneName(String zoneName) {
+        SonosTopology topology = this.getTopology();
+        SonosZoneGroup group = topology == null ? null : topology.getGroupByZoneName(zoneName);
+        if (group == null) { return null; }
+        for (SonosZoneMember member : group.getVisibleMembers()) {
+            if (zoneName.equals(member.getZoneName())) { return this.devices.get(member.getUID()); }
+        }
+        return null;
+    }
+
+    /**
+     * @return the topology manager, null before {@link #discover()}
+     */
+    public SonosTopologyManager getTopologyManager() {
+        return topologyManager;
+    }
+
+    /**
+     * @return the last known topology, null before {@link #discover()}
+     */
+    public SonosTopology getTopology() {
+        SonosTopologyManager manager = this.topologyManager;
+        return manager == null ? null : manager.getTopology();
+    }
+
+    /**
+     * @return the coordinator of each group, every speaker if the topology isn't known
+     */
+    public List<SonosDevice> getCoordinators() {
+        SonosTopology topology = this.getTopology();
+        if (topology == null) { return this.getDevices(); }
+        ArrayList<SonosDevice> coordinators = new ArrayList<SonosDevice>();
+        for (SonosZoneGroup group : topology.getGroups()) {
+            SonosDevice coordinator = this.devices.get(group.getCoordinatorUID());
+            if (coordinator != null) { coordinators.add(coordinator); }
+        }
+        return coordinators;
+    }
+
+    //<editor-fold desc="BULK COMMANDS">
+
+    /**
+     * Pause every group. Only the coordinators are asked, the other members follow.
+     */
+    public SonosHouseholdResult<Void> pauseAll() {
+        return this.forEach(this.getCoordinators(), new SonosCommand<Void>() {
+            @Override
+            public Void execute(SonosDevice device) throws IOException, SonosControllerException {
+                device.pause();
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Stop every group. Only the coordinators are asked, the other members follow.
+     */
+    public SonosHouseholdResult<Void> stopAll() {
+        return this.forEach(this.getCoordinators(), new SonosCommand<Void>() {
+            @Override
+            public Void execute(SonosDevice device) throws IOException, SonosControllerException {
+                device.stop();
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Set the volume of every speaker.
+     * @param volume A volume value between 0 and 100
+     */
+    public SonosHouseholdResult<Void> setAllVolumes(final int volume) {
+        return this.forEach(this.getDevices(), new SonosCommand<Void>() {
+            @Override
+            public Void execute(SonosDevice device) throws IOException, SonosControllerException {
+                device.setVolume(volume);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @return volume of every speaker
+     */
+    public SonosHouseholdResult<Integer> getVolumes() {
+        return this.forEach(this.getDevices(), new SonosCommand<Integer>() {
+            @Override
+            public Integer execute(SonosDevice device) throws IOException, SonosControllerException {
+                return device.getVolume();
+            }
+        });
+    }
+
+    /**
+     * @return play state of every speaker
+     */
+    public SonosHouseholdResult<PlayState> getPlayStates() {
+        return this.forEach(this.getDevices(), new SonosCommand<PlayState>() {
+            @Override
+            public PlayState execute(SonosDevice device) throws IOException, SonosControllerException {
+                return device.getPlayState();
+            }
+        });
+    }
+
+    /**
+     * Run a command on every speaker.
+     * @param command command to run
+     * @return result or error of each speaker
+     */
+    public <T> SonosHouseholdResult<T> forEach(SonosCommand<T> command) {
+        return this.forEach(this.getDevices(), command);
+    }
+
+    /**
+     * Run a command on some speakers concurrently, and wait until they all answered or the deadline passed.
+     * Speakers which didn't answer in time are reported with a TimeoutException; their command is interrupted but
+     * may still reach the speaker.
+     * @param targets speakers
+     * @param command command to run
+     * @return result or error of each speaker
+     */
+    public <T> SonosHouseholdResult<T> forEach(Collection<SonosDevice> targets, final SonosCommand<T> command) {
+        long start = System.nanoTime();
+        long end = start + TimeUnit.MILLISECONDS.toNanos(this.deadline);
+        LinkedHashMap<SonosDevice, Future<T>> pending = new LinkedHashMap<SonosDevice, Future<T>>();
+        for (final SonosDevice device : targets) {
+            pending.put(device, this.executor.submit(new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    return command.execute(device);
+                }
+            }));
+        }
+        LinkedHashMap<SonosDevice, T> results = new LinkedHashMap<SonosDevice, T>();
+        LinkedHashMap<SonosDevice, Throwable> failures = new LinkedHashMap<SonosDevice, Throwable>();
+        for (Map.Entry<SonosDevice, Future<T>> entry : pending.entrySet()) {
+            Future<T> future = entry.getValue();
+            try {
+                results.put(entry.getKey(), future.get(Math.max(0, end - System.nanoTime()), TimeUnit.NANOSECONDS));
+            }
+            catch (ExecutionException e) {
+                failures.put(entry.getKey(), e.getCause());
+            }
+            catch (TimeoutException | CancellationException e) {
+                future.cancel(true);
+                failures.put(entry.getKey(), new TimeoutException("No answer from " + entry.getKey().getIpAddress()
+                        + " within " + this.deadline + " ms"));
+            }
+            catch (InterruptedException e) {
+                future.cancel(true);
+                failures.put(entry.getKey(), e);
+                Thread.currentThread().interrupt();
+            }
+        }
+        return new SonosHouseholdResult<T>(results, failures,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    //</editor-fold>
+
+    //<editor-fold desc="SNAPSHOT">
+
+    /**
+     * Capture the playback state of every speaker (source, track, position, play state and mode, volume, mute and
+     * group), e.g. before an announcement. The speakers are read in parallel, and the reads of each speaker are sent
+     * at once, so the capture takes about one round trip.
+     * @return state of the speakers, and the speakers which couldn't be read
+     * @throws IOException if the topology can't be read
+     * @throws SonosControllerException if the topology can't be read
+     */
+    public SonosHouseholdSnapshot snapshot() throws IOException, SonosControllerException {
+        long start = System.nanoTime();
+        SonosTopology topology = this.readTopology();
+        SonosHouseholdResult<SonosSpeakerSnapshot> read = this.forEach(this.getDevices(), this.capture(topology));
+        LinkedHashMap<String, SonosSpeakerSnapshot> speakers = new LinkedHashMap<String, SonosSpeakerSnapshot>();
+        for (SonosSpeakerSnapshot speaker : read.getResults().values()) { speakers.put(speaker.getUID(), speaker); }
+        return new SonosHouseholdSnapshot(speakers, read.getFailures(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * Put back the state captured by {@link #snapshot()}. The current state is read first and only the settings
+     * which differ are sent, phase by phase: regroup, then source and play mode, then track and position, then
+     * volume and mute, and at last play or pause. Within a phase the speakers are handled in parallel.
+     * @param snapshot state to restore
+     * @return duration, commands sent and failures of each phase
+     */
+    public SonosRestoreReport restore(SonosHouseholdSnapshot snapshot) {
+        SonosRestoreReport report = new SonosRestoreReport();
+        final LinkedHashMap<SonosDevice, SonosSpeakerSnapshot> wanted =
+                new LinkedHashMap<SonosDevice, SonosSpeakerSnapshot>();
+        ArrayList<SonosDevice> coordinators = new ArrayList<SonosDevice>();
+        for (SonosSpeakerSnapshot speaker : snapshot.getSpeakers()) {
+            wanted.put(speaker.getDevice(), speaker);
+            if (speaker.isCoordinator()) { coordinators.add(speaker.getDevice()); }
+        }
+        ArrayList<SonosDevice> targets = new ArrayList<SonosDevice>(wanted.keySet());
+
+        long start = System.nanoTime();
+        final Map<SonosDevice, SonosSpeakerSnapshot> current = new HashMap<SonosDevice, SonosSpeakerSnapshot>();
+        LinkedHashMap<SonosDevice, Throwable> failures = new LinkedHashMap<SonosDevice, Throwable>();
+        try {
+            SonosHouseholdResult<SonosSpeakerSnapshot> read = this.forEach(targets, this.capture(this.readTopology()));
+            current.putAll(read.getResults());
+            failures.putAll(read.getFailures());
+        }
+        catch (IOException | SonosControllerException e) {
+            for (SonosDevice device : targets) { failures.put(device, e); }
+        }
+        // speakers whose current state is unknown get every setting
+        report.record(SonosRestoreReport.Phase.READ, elapsedMillis(start), current.size(), failures);
+
+        // speakers which changed group or source are stopped, whatever their state read before
+        final Set<SonosDevice> reset = Collections.newSetFromMap(new ConcurrentHashMap<SonosDevice, Boolean>());
+
+        start = System.nanoTime();
+        failures = new LinkedHashMap<SonosDevice, Throwable>();
+        // future coordinators leave their group before the other speakers join them
+        int count = this.run(targets, failures, new SonosCommand<Integer>() {
+            @Override
+            public Integer execute(SonosDevice device) throws IOException, SonosControllerException {
+                SonosSpeakerSnapshot now = current.get(device);
+                if (!wanted.get(device).isCoordinator() || (now != null && now.isCoordinator())) { return 0; }
+                device.unjoin();
+                reset.add(device);
+                return 1;
+            }
+        });
+        count += this.run(targets, failures, new SonosCommand<Integer>() {
+            @Override
+            public Integer execute(SonosDevice device) throws IOException, SonosControllerException {
+                SonosSpeakerSnapshot then = wanted.get(device);
+                SonosSpeakerSnapshot now = current.get(device);
+                if (then.isCoordinator()) { return 0; }
+                if (now != null && then.getCoordinatorUID().equals(now.getCoordinatorUID())) { return 0; }
+                device.join(then.getCoordinatorUID());
+                return 1;
+            }
+        });
+        report.record(SonosRestoreReport.Phase.REGROUP, elapsedMillis(start), count, failures);
+
+        start = System.nanoTime();
+        failures = new LinkedHashMap<SonosDevice, Throwable>();
+        count = this.run(coordinators, failures, new SonosCommand<Integer>() {
+            @Override
+            public Integer execute(SonosDevice device) throws IOException, SonosControllerException {
+                SonosSpeakerSnapshot then = wanted.get(device);
+                SonosSpeakerSnapshot now = current.get(device);
+                int sent = 0;
+                if (reset.contains(device) || now == null || !equal(then.getTransportUri(), now.getTransportUri())) {
+                    CommandBuilder.transport("SetAVTransportURI").put("InstanceID", "0")
+                            .put("CurrentURI", then.getTransportUri())
+                            .put("CurrentURIMetaData", then.getTransportMetaData()).executeOn(device.getIpAddress());
+                    reset.add(device);
+                    sent++;
+                }
+                if (then.getPlayMode() != null
+                        && (reset.contains(device) || now == null || then.getPlayMode() != now.getPlayMode())) {
+                    device.setPlayMode(then.getPlayMode());
+                    sent++;
+                }
+                return sent;
+            }
+        });
+        report.record(SonosRestoreReport.Phase.URI, elapsedMillis(start), count, failures);
+
+        start = System.nanoTime();
+        failures = new LinkedHashMap<SonosDevice, Throwable>();
+        count = this.run(coordinators, failures, new SonosCommand<Integer>() {
+            @Override
+            public Integer execute(SonosDevice device) throws IOException, SonosControllerException {
+                SonosSpeakerSnapshot then = wanted.get(device);
+                SonosSpeakerSnapshot now = current.get(device);
+                if (!then.isQueue()) { return 0; }
+                int sent = 0;
+                boolean moved = reset.contains(device) || now == null;
+                if (then.getTrackNumber() > 0 && (moved || then.getTrackNumber() != now.getTrackNumber())) {
+                    CommandBuilder.transport("Seek").put("InstanceID", "0").put("Unit", "TRACK_NR")
+                            .put("Target", String.valueOf(then.getTrackNumber())).executeOn(device.getIpAddress());
+                    moved = true;
+                    sent++;
+                }
+                long position = SonosPollingScheduler.parseTime(then.getPosition());
+                if (position > 0 && (moved || Math.abs(position
+                        - SonosPollingScheduler.parseTime(now.getPosition())) > SEEK_TOLERANCE)) {
+                    device.seek(then.getPosition());
+                    sent++;
+                }
+                return sent;
+            }
+        });
+        report.record(SonosRestoreReport.Phase.SEEK, elapsedMillis(start), count, failures);
+
+        start = System.nanoTime();
+        failures = new LinkedHashMap<SonosDevice, Throwable>();
+        count = this.run(targets, failures, new SonosCommand<Integer>() {
+            @Override
+            public Integer execute(SonosDevice device) throws IOException, SonosControllerException {
+                SonosSpeakerSnapshot then = wanted.get(device);
+                SonosSpeakerSnapshot now = current.get(device);
+                int sent = 0;
+                if (now == null || then.getVolume() != now.getVolume()) {
+                    device.setVolume(then.getVolume());
+                    sent++;
+                }
+                if (now == null || then.isMuted() != now.isMuted()) {
+                    device.setMute(then.isMuted());
+                    sent++;
+                }
+                return sent;
+            }
+        });
+        report.record(SonosRestoreReport.Phase.VOLUME, elapsedMillis(start), count, failures);
+
+        start = System.nanoTime();
+        failures = new LinkedHashMap<SonosDevice, Throwable>();
+        count = this.run(coordinators, failures, new SonosCommand<Integer>() {
+            @Override
+            public Integer execute(SonosDevice device) throws IOException, SonosControllerException {
+                SonosSpeakerSnapshot then = wanted.get(device);
+                SonosSpeakerSnapshot now = current.get(device);
+                boolean playing = !reset.contains(device) && now != null && now.getPlayState() == PlayState.PLAYING;
+                if (then.getPlayState() == PlayState.PLAYING && !playing) {
+                    device.play();
+                    return 1;
+                }
+                if (then.getPlayState() != PlayState.PLAYING && playing) {
+                    try { device.pause(); }
+                    catch (SonosControllerException e) { device.stop(); } // streams can't be paused
+                    return 1;
+                }
+                return 0;
+            }
+        });
+        report.record(SonosRestoreReport.Phase.PLAY, elapsedMillis(start), count, failures);
+        return report;
+    }
+
+    /**
+     * Run a restore step on some speakers.
+     * @return number of commands sent
+     */
+    private int run(List<SonosDevice> devices, Map<SonosDevice, Throwable> failures, SonosCommand<Integer> step) {
+        SonosHouseholdResult<Integer> result = this.forEach(devices, step);
+        failures.putAll(result.getFailures());
+        int count = 0;
+        for (Integer sent : result.getResults().values()) { count += sent; }
+        return count;
+    }
+
+    /**
+     * @return command reading the state of a speaker, its reads sent at once
+     */
+    private SonosCommand<SonosSpeakerSnapshot> capture(final SonosTopology topology) {
+        return new SonosCommand<SonosSpeakerSnapshot>() {
+            @Override
+            public SonosSpeakerSnapshot execute(SonosDevice device) throws IOException, SonosControllerException {
+                String ip = device.getIpAddress();
+                CompletableFuture<Map<String, String>> media = CommandBuilder.transport("GetMediaInfo")
+                        .put("InstanceID", "0").executeOnAndGetAllAsync(ip, "CurrentURI", "CurrentURIMetaData");
+                CompletableFuture<Map<String, String>> position = CommandBuilder.transport("GetPositionInfo")
+                        .put("InstanceID", "0").executeOnAndGetAllAsync(ip, "Track", "RelTime");
+                CompletableFuture<String> playState = CommandBuilder.transport("GetTransportInfo")
+                        .put("InstanceID", "0").executeOnAndGetAsync(ip, "CurrentTransportState");
+                CompletableFuture<String> playMode = CommandBuilder.transport("GetTransportSettings")
+                        .put("InstanceID", "0").executeOnAndGetAsync(ip, "PlayMode");
+                CompletableFuture<String> volume = CommandBuilder.rendering("GetVolume").put("InstanceID", "0")
+                        .put("Channel", "Master").executeOnAndGetAsync(ip, "CurrentVolume");
+                CompletableFuture<String> mute = CommandBuilder.rendering("GetMute").put("InstanceID", "0")
+                        .put("Channel", "Master").executeOnAndGetAsync(ip, "CurrentMute");
+
+                SonosZoneGroup group = topology.getGroupByIpAddress(ip);
+                SonosZoneMember member = null;
+                if (group != null) {
+                    for (SonosZoneMember candidate : group.getMembers()) {
+                        if (ip.equals(candidate.getIpAddress())) { member = candidate; }
+                    }
+                }
+                if (member == null) { throw new SonosControllerException(ip + " not found in the topology"); }
+                Map<String, String> mediaValues = CommandBuilder.await(media);
+                Map<String, String> positionValues = CommandBuilder.await(position);
+                try {
+                    return new SonosSpeakerSnapshot(device, member.getUID(), group.getCoordinatorUID(),
+                            mediaValues.get("CurrentURI"), mediaValues.get("CurrentURIMetaData"),
+                            Integer.parseInt(positionValues.get("Track")), positionValues.get("RelTime"),
+                            PlayState.valueOf(CommandBuilder.await(playState)),
+                            PlayMode.valueOf(CommandBuilder.await(playMode)),
+                            Integer.parseInt(CommandBuilder.await(volume)),
+                            "1".equals(CommandBuilder.await(mute)));
+                }
+                catch (IllegalArgumentException | NullPointerException e) {
+                    throw new SonosControllerException("Invalid state received from " + ip + ": " + e.getMessage());
+                }
+            }
+        };
+    }
+
+    /**
+     * @return the topology read right now
+     */
+    private SonosTopology readTopology() throws IOException, SonosControllerException {
+        SonosTopologyManager manager = this.topologyManager;
+        if (manager == null) {
+            List<SonosDevice> known = this.getDevices();
+            if (known.isEmpty()) { throw new SonosControllerException("No speaker in the household"); }
+            manager = new SonosTopologyManager(known.get(0));
+            this.topologyManager = manager;
+            for (SonosDevice device : known) { device.useTopology(manager); }
+        }
+        return manager.refresh();
+    }
+
+    private static long elapsedMillis(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    //</editor-fold>
+
+    /**
+     * Stop the threads of the household. The speakers stay usable on their own.
+     */
+    public void close() {
+        this.executor.shutdownNow();
+        SonosTopologyManager manager = this.topologyManager;
+        if (manager != null) { manager.stopPolling(); }
+    }
+}
@@ -0,0 +1,63 @@
+package com.vmichalak.sonoscontroller;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Outcome of a command run on many speakers by {@link SonosHousehold}: the result of each speaker which answered in
+ * time, and the error of each other one (IOException, SonosControllerException, or TimeoutException past the
+ * deadline).
+ * @param <T> result of the command
+ */
+public final class SonosHouseholdResult<T> {
+    private final Map<SonosDevice, T> results;
+    private final Map<SonosDevice, Throwable> failures;
+    private final long elapsedMillis;
+
+    SonosHouseholdResult(Map<SonosDevice, T> results, Map<SonosDevice, Throwable> failures, long elapsedMillis) {
+        this.results = results;
+        this.failures = failures;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * @return true if every speaker succeeded
+     */
+    public boolean isSuccess() {
+        return failures.isEmpty();
+    }
+
+    /**
+     * @return result of each speaker which succeeded
+     */
+    public Map<SonosDevice, T> getResults() {
+        return Collections.unmodifiableMap(results);
+    }
+
+    /**
+     * @return result of a speaker, null if it failed
+     */
+    public T get(SonosDevice device) {
+        return results.get(device);
+    }
+
+    public Map<SonosDevice, Throwable> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * @return wall-clock time of the whole fan-out, in milliseconds
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "SonosHouseholdResult{" +
+                "results=" + results +
+                ", failures=" + failures +
+                ", elapsedMillis=" + elapsedMillis +
+                '}';
+    }
+}
@@ -0,0 +1,57 @@
+package com.vmichalak.sonoscontroller;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Playback state of every speaker of a household, captured by {@link SonosHousehold#snapshot()} and put back by
+ * {@link SonosHousehold#restore(SonosHouseholdSnapshot)}.
+ */
+public final class SonosHouseholdSnapshot {
+    private final Map<String, SonosSpeakerSnapshot> speakers;
+    private final Map<SonosDevice, Throwable> failures;
+    private final long captureMillis;
+
+    SonosHouseholdSnapshot(Map<String, SonosSpeakerSnapshot> speakers, Map<SonosDevice, Throwable> failures,
+                           long captureMillis) {
+        this.speakers = Collections.unmodifiableMap(speakers);
+        this.failures = Collections.unmodifiableMap(failures);
+        this.captureMillis = captureMillis;
+    }
+
+    public Collection<SonosSpeakerSnapshot> getSpeakers() {
+        return speakers.values();
+    }
+
+    /**
+     * @param uid speaker UID
+     * @return state of the speaker, null if it wasn't captured
+     */
+    public SonosSpeakerSnapshot getSpeaker(String uid) {
+        return speakers.get(uid);
+    }
+
+    /**
+     * @return speakers whose state couldn't be captured, they are left alone by the restore
+     */
+    public Map<SonosDevice, Throwable> getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return time taken by the capture, in milliseconds
+     */
+    public long getCaptureMillis() {
+        return captureMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "SonosHouseholdSnapshot{" +
+                "speakers=" + speakers.values() +
+                ", failures=" + failures +
+                ", captureMillis=" + captureMillis +
+                '}';
+    }
+}
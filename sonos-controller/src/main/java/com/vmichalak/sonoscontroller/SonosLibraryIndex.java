@@ -0,0 +1,221 @@
+package com.vmichalak.sonoscontroller;
+
+import com.vmichalak.sonoscontroller.exception.SonosControllerException;
+
+import java.io.IOException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In-memory full-text index of content directory objects (favorites, music library...), to search by title, artist
+ * or album without any round trip. The last word of a query matches as a prefix, so results can follow typing.
+ * {@link #refresh()} asks the speaker whether anything changed and browses again only the sources that did.
+ */
+public class SonosLibraryIndex {
+    public static final String FAVORITES = "FV:2";
+    public static final String TRACKS    = "A:TRACKS";
+    public static final String PLAYLISTS = "SQ:";
+
+    private final SonosDevice device;
+    private final String[] sources;
+
+    private String systemUpdateId;
+    private final HashMap<String, String> sourceUpdateIds = new HashMap<String, String>();
+    // document ID is the position in the list, documents are never moved until compaction
+    private final ArrayList<SonosMediaItem> documents = new ArrayList<SonosMediaItem>();
+    private final HashMap<String, Postings> documentsBySource = new HashMap<String, Postings>();
+    private final BitSet deleted = new BitSet();
+    private int deletedCount = 0;
+    // sorted, for the prefix lookups
+    private final TreeMap<String, Postings> terms = new TreeMap<String, Postings>();
+
+    /**
+     * @param device speaker browsed to build the index
+     * @param sources objects whose children are indexed, e.g. {@link #FAVORITES} and {@link #TRACKS}
+     */
+    public SonosLibraryIndex(SonosDevice device, String... sources) {
+        this.device = device;
+        this.sources = sources.length > 0 ? sources : new String[] { FAVORITES, TRACKS };
+    }
+
+    /**
+     * Bring the index up to date. Costs a single round trip when nothing changed on the speaker; otherwise only the
+     * sources whose UpdateID changed are browsed again.
+     * @return true if the index changed
+     * @throws IOException
+     * @throws SonosControllerException
+     */
+    public boolean refresh() throws IOException, SonosControllerException {
+        String newSystemUpdateId = CommandBuilder.contentDirectory("GetSystemUpdateID")
+                .executeOnAndGet(this.device.getIpAddress(), "Id");
+        synchronized (this) {
+            if (newSystemUpdateId != null && newSystemUpdateId.equals(this.systemUpdateId)) { return false; }
+        }
+        boolean changed = false;
+        for (String source : this.sources) {
+            String updateId = this.getUpdateId(source);
+            synchronized (this) {
+                // sources without UpdateID are browsed again on every system change
+                if (updateId != null && updateId.equals(this.sourceUpdateIds.get(source))) { continue; }
+            }
+            ArrayList<SonosMediaItem> items = new ArrayList<SonosMediaItem>();
+            SonosBrowseCursor cursor = this.device.browse(source);
+            while (cursor.hasNext()) { items.add(cursor.next()); }
+            synchronized (this) {
+                this.replace(source, items);
+                this.sourceUpdateIds.put(source, updateId);
+            }
+            changed = true;
+        }
+        synchronized (this) {
+            this.systemUpdateId = newSystemUpdateId;
+        }
+        return changed;
+    }
+
+    /**
+     * Find the objects whose title, creator or album contain every word of the query.
+     * Case and accents are ignored; the last word may be incomplete.
+     * @param query words to look for, e.g. "beatles abb"
+     * @param limit maximum number of results
+     * @return matching objects, in browse order
+     */
+    public synchronized List<SonosMediaItem> search(String query, int limit) {
+        ArrayList<SonosMediaItem> results = new ArrayList<SonosMediaItem>();
+        List<String> words = tokenize(query);
+        if (words.isEmpty()) { return results; }
+        BitSet matches = null;
+        for (int i = 0; i < words.size(); i++) {
+            BitSet wordMatches = new BitSet(this.documents.size());
+            if (i < words.size() - 1) {
+                Postings postings = this.terms.get(words.get(i));
+                if (postings != null) { postings.addTo(wordMatches); }
+            }
+            else {
+                String prefix = words.get(i);
+                for (Postings postings : this.terms.subMap(prefix, prefix + Character.MAX_VALUE).values()) {
+                    postings.addTo(wordMatches);
+                }
+            }
+            if (matches == null) { matches = wordMatches; }
+            else { matches.and(wordMatches); }
+            if (matches.isEmpty()) { return results; }
+        }
+        matches.andNot(this.deleted);
+        for (int doc = matches.nextSetBit(0); doc >= 0 && results.size() < limit; doc = matches.nextSetBit(doc + 1)) {
+            results.add(this.documents.get(doc));
+        }
+        return results;
+    }
+
+    /**
+     * @return number of indexed objects
+     */
+    public synchronized int size() {
+        return this.documents.size() - this.deletedCount;
+    }
+
+    private String getUpdateId(String source) throws IOException, SonosControllerException {
+        return CommandBuilder.contentDirectory("Browse").put("ObjectID", source).put("BrowseFlag", "BrowseMetadata")
+                .put("Filter", "").put("StartingIndex", "0").put("RequestedCount", "1").put("SortCriteria", "")
+                .executeOnAndGet(this.device.getIpAddress(), "UpdateID");
+    }
+
+    private void replace(String source, List<SonosMediaItem> items) {
+        Postings previous = this.documentsBySource.remove(source);
+        if (previous != null) {
+            for (int i = 0; i < previous.size; i++) { this.deleted.set(previous.docs[i]); }
+            this.deletedCount += previous.size;
+        }
+        Postings added = new Postings();
+        for (SonosMediaItem item : items) { added.add(this.add(item)); }
+        this.documentsBySource.put(source, added);
+        if (this.deletedCount > this.documents.size() / 2) { this.compact(); }
+    }
+
+    private int add(SonosMediaItem item) {
+        int doc = this.documents.size();
+        this.documents.add(item);
+        LinkedHashSet<String> words = new LinkedHashSet<String>();
+        words.addAll(tokenize(item.getTitle()));
+        words.addAll(tokenize(item.getCreator()));
+        words.addAll(tokenize(item.getAlbum()));
+        for (String word : words) {
+            Postings postings = this.terms.get(word);
+            if (postings == null) {
+                postings = new Postings();
+                this.terms.put(word, postings);
+            }
+            postings.add(doc);
+        }
+        return doc;
+    }
+
+    /**
+     * Drop the replaced documents and renumber the others.
+     */
+    private void compact() {
+        HashMap<String, List<SonosMediaItem>> live = new HashMap<String, List<SonosMediaItem>>();
+        for (Map.Entry<String, Postings> entry : this.documentsBySource.entrySet()) {
+            ArrayList<SonosMediaItem> items = new ArrayList<SonosMediaItem>();
+            Postings docs = entry.getValue();
+            for (int i = 0; i < docs.size; i++) { items.add(this.documents.get(docs.docs[i])); }
+            live.put(entry.getKey(), items);
+        }
+        this.documents.clear();
+        this.documentsBySource.clear();
+        this.terms.clear();
+        this.deleted.clear();
+        this.deletedCount = 0;
+        for (Map.Entry<String, List<SonosMediaItem>> entry : live.entrySet()) {
+            Postings added = new Postings();
+            for (SonosMediaItem item : entry.getValue()) { added.add(this.add(item)); }
+            this.documentsBySource.put(entry.getKey(), added);
+        }
+    }
+
+    /**
+     * @return lower case words without accents
+     */
+    static List<String> tokenize(String text) {
+        ArrayList<String> words = new ArrayList<String>();
+        if (text == null) { return words; }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFD).toLowerCase(Locale.ROOT);
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            if (Character.isLetterOrDigit(c)) { word.append(c); }
+            else if (Character.getType(c) != Character.NON_SPACING_MARK && word.length() > 0) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        if (word.length() > 0) { words.add(word.toString()); }
+        return words;
+    }
+
+    /**
+     * Growable sorted array of document IDs.
+     */
+    private static final class Postings {
+        private int[] docs = new int[4];
+        private int size = 0;
+
+        private void add(int doc) {
+            if (this.size == this.docs.length) { this.docs = Arrays.copyOf(this.docs, this.size * 2); }
+            this.docs[this.size++] = doc;
+        }
+
+        private void addTo(BitSet set) {
+            for (int i = 0; i < this.size; i++) { set.set(this.docs[i]); }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.vmichalak.sonoscontroller;
+
+/**
+ * An entry of the content directory (DIDL-Lite item or container): a track, an album, a favorite, a playlist...
+ */
+public class SonosMediaItem {
+    private final String id;
+    private final String parentId;
+    private final boolean container;
+    private final String title;
+    private final String creator;
+    private final String album;
+    private final String albumArtUri;
+    private final String upnpClass;
+    private final String uri;
+    private final String metadata;
+
+    SonosMediaItem(String id, String parentId, boolean container, String title, String creator, String album,
+                   String albumArtUri, String upnpClass, String uri, String metadata) {
+        this.id = id;
+        this.parentId = parentId;
+        this.container = container;
+        this.title = title;
+        this.creator = creator;
+        this.album = album;
+        this.albumArtUri = albumArtUri;
+        this.upnpClass = upnpClass;
+        this.uri = uri;
+        this.metadata = metadata;
+    }
+
+    /**
+     * @return object ID, to browse the children of a container, e.g. "A:ALBUM/Abbey%20Road"
+     */
+    public String getId() {
+        return id;
+    }
+
+    public String getParentId() {
+        return parentId;
+    }
+
+    /**
+     * @return true for a container (album, artist, playlist...), false for a playable item
+     */
+    public boolean isContainer() {
+        return container;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getCreator() {
+        return creator;
+    }
+
+    public String getAlbum() {
+        return album;
+    }
+
+    /**
+     * @return album art URI, often relative to the speaker, e.g. "/getaa?s=1&amp;u=..."
+     */
+    public String getAlbumArtUri() {
+        return albumArtUri;
+    }
+
+    /**
+     * @return UPnP class, e.g. "object.item.audioItem.musicTrack"
+     */
+    public String getUpnpClass() {
+        return upnpClass;
+    }
+
+    /**
+     * @return URI to play with {@link SonosDevice#playUri(String, String)}, null for most containers
+     */
+    public String getUri() {
+        return uri;
+    }
+
+    /**
+     * @return DIDL metadata to play a favorite with {@link SonosDevice#playUri(String, String)}, null if none
+     */
+    public String getMetadata() {
+        return metadata;
+    }
+
+    @Override
+    public String toString() {
+        return "SonosMediaItem{" +
+                "id='" + id + '\'' +
+                ", title='" + title + '\'' +
+                ", creator='" + creator + '\'' +
+                ", album='" + album + '\'' +
+                ", upnpClass='" + upnpClass + '\'' +
+                ", uri='" + uri + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,104 @@
+package com.vmichalak.sonoscontroller;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What a speaker plays, as read by the last poll of {@link SonosPollingScheduler}.
+ * The position is extrapolated locally from the last poll while the speaker plays.
+ */
+public final class SonosNowPlaying {
+    private final SonosDevice device;
+    private final PlayState playState;
+    private final String mediaUri;
+    private final int trackNumber;
+    private final String trackUri;
+    private final SonosMediaItem track;
+    private final long durationMillis;
+    private final long positionMillis;
+    private final long sampledAt;
+
+    SonosNowPlaying(SonosDevice device, PlayState playState, String mediaUri, int trackNumber, String trackUri,
+                    SonosMediaItem track, long durationMillis, long positionMillis, long sampledAt) {
+        this.device = device;
+        this.playState = playState;
+        this.mediaUri = mediaUri;
+        this.trackNumber = trackNumber;
+        this.trackUri = trackUri;
+        this.track = track;
+        this.durationMillis = durationMillis;
+        this.positionMillis = positionMillis;
+        this.sampledAt = sampledAt;
+    }
+
+    public SonosDevice getDevice() {
+        return device;
+    }
+
+    public PlayState getPlayState() {
+        return playState;
+    }
+
+    /**
+     * @return URI of the source, e.g. the queue or a radio stream (GetMediaInfo CurrentURI)
+     */
+    public String getMediaUri() {
+        return mediaUri;
+    }
+
+    /**
+     * @return position of the track in the queue, starting at 1
+     */
+    public int getTrackNumber() {
+        return trackNumber;
+    }
+
+    public String getTrackUri() {
+        return trackUri;
+    }
+
+    /**
+     * @return title, artist and album of the track, null if the speaker sent no metadata
+     */
+    public SonosMediaItem getTrack() {
+        return track;
+    }
+
+    /**
+     * @return duration of the track in milliseconds, 0 for streams
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * @return current position in the track in milliseconds, extrapolated since the last poll
+     */
+    public long getPositionMillis() {
+        if (playState != PlayState.PLAYING) { return positionMillis; }
+        long position = positionMillis + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sampledAt);
+        return durationMillis > 0 ? Math.min(position, durationMillis) : position;
+    }
+
+    /**
+     * @return true if the track or the play state differ, position changes aside
+     */
+    boolean differsFrom(SonosNowPlaying other) {
+        return other == null || playState != other.playState || trackNumber != other.trackNumber
+                || !equal(trackUri, other.trackUri) || !equal(mediaUri, other.mediaUri);
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    @Override
+    public String toString() {
+        return "SonosNowPlaying{" +
+                "device=" + device +
+                ", playState=" + playState +
+                ", trackNumber=" + trackNumber +
+                ", track=" + track +
+                ", position=" + getPositionMillis() + "/" + durationMillis +
+                '}';
+    }
+}
@@ -0,0 +1,19 @@
+package com.vmichalak.sonoscontroller;
+
+/**
+ * Callback notified by {@link SonosPollingScheduler}. Callbacks run on the polling thread and must return quickly.
+ */
+public interface SonosNowPlayingListener {
+    /**
+     * The track or the play state of a speaker changed. Position changes alone are not reported.
+     * @param nowPlaying new state of the speaker
+     */
+    void onNowPlayingChanged(SonosNowPlaying nowPlaying);
+
+    /**
+     * A poll failed, the speaker is polled less often until it answers again.
+     * @param device speaker
+     * @param error IOException or SonosControllerException
+     */
+    void onPollFailed(SonosDevice device, Throwable error);
+}
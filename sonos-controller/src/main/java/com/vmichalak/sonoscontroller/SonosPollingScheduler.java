@@ -0,0 +1,278 @@
+package com.vmichalak.sonoscontroller;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Poll the now playing information (GetTransportInfo, GetPositionInfo, GetMediaInfo) of many speakers from a single
+ * thread. Requests go through the {@link AsyncHttpTransport}, so no thread waits for a speaker.
+ * Playing speakers are polled often, idle ones rarely and failing ones less and less. Every delay is randomized a
+ * little, so the polls of the speakers don't line up. Between two polls, the position is extrapolated locally.
+ */
+public class SonosPollingScheduler {
+    private static final long DEFAULT_PLAYING_INTERVAL = 5000;
+    private static final long DEFAULT_IDLE_INTERVAL    = 30000;
+    private static final long TRANSITION_INTERVAL      = 1000;
+    private static final long MAX_BACKOFF              = 300000;
+    private static final double JITTER                 = 0.2;
+
+    private final long playingInterval;
+    private final long idleInterval;
+    private final Random random = new Random();
+    private final ConcurrentHashMap<String, Poller> pollers = new ConcurrentHashMap<String, Poller>();
+    private final CopyOnWriteArrayList<SonosNowPlayingListener> listeners =
+            new CopyOnWriteArrayList<SonosNowPlayingListener>();
+    private volatile ScheduledExecutorService scheduler;
+
+    public SonosPollingScheduler() {
+        this(DEFAULT_PLAYING_INTERVAL, DEFAULT_IDLE_INTERVAL);
+    }
+
+    /**
+     * @param playingInterval time between two polls of a playing speaker, in milliseconds
+     * @param idleInterval time between two polls of a paused or stopped speaker, in milliseconds
+     */
+    public SonosPollingScheduler(long playingInterval, long idleInterval) {
+        this.playingInterval = playingInterval;
+        this.idleInterval = idleInterval;
+    }
+
+    public synchronized void start() {
+        if (this.scheduler != null) { return; }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "sonos-polling");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        for (Poller poller : this.pollers.values()) { this.schedule(poller, this.spread(this.playingInterval)); }
+    }
+
+    public synchronized void stop() {
+        if (this.scheduler == null) { return; }
+        this.scheduler.shutdownNow();
+        this.scheduler = null;
+    }
+
+    public boolean isRunning() {
+        return this.scheduler != null;
+    }
+
+    /**
+     * Start polling a speaker. Its first poll happens at a random time within the playing interval, so speakers
+     * added together are not polled at once.
+     * @param device speaker
+     */
+    public synchronized void addDevice(SonosDevice device) {
+        Poller poller = new Poller(device);
+        if (this.pollers.putIfAbsent(device.getIpAddress(), poller) != null) { return; }
+        if (this.scheduler != null) { this.schedule(poller, this.spread(this.playingInterval)); }
+    }
+
+    public synchronized void removeDevice(SonosDevice device) {
+        Poller poller = this.pollers.remove(device.getIpAddress());
+        if (poller != null && poller.next != null) { poller.next.cancel(false); }
+    }
+
+    /**
+     * @param device speaker
+     * @return state read by the last poll, null if the speaker wasn't polled successfully yet
+     */
+    public SonosNowPlaying getNowPlaying(SonosDevice device) {
+        Poller poller = this.pollers.get(device.getIpAddress());
+        return poller == null ? null : poller.nowPlaying;
+    }
+
+    public void addListener(SonosNowPlayingListener listener) {
+        this.listeners.add(listener);
+    }
+
+    public void removeListener(SonosNowPlayingListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * @return random delay between 0 and the given interval, to spread the first polls
+     */
+    private long spread(long interval) {
+        return (long) (this.random.nextDouble() * interval);
+    }
+
+    /**
+     * @return the interval, randomly shortened or lengthened by up to 20%
+     */
+    private long jitter(long interval) {
+        return (long) (interval * (1 - JITTER + 2 * JITTER * this.random.nextDouble()));
+    }
+
+    private void schedule(final Poller poller, long delay) {
+        ScheduledExecutorService current = this.scheduler;
+        if (current == null || this.pollers.get(poller.device.getIpAddress()) != poller) { return; }
+        poller.next = current.schedule(new Runnable() {
+            @Override
+            public void run() {
+                poll(poller);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void poll(final Poller poller) {
+        ScheduledExecutorService current = this.scheduler;
+        if (current == null) { return; }
+        final String ip = poller.device.getIpAddress();
+        final long sampledAt = System.nanoTime();
+        final SonosNowPlaying previous = poller.nowPlaying;
+        CommandBuilder.transport("GetTransportInfo").put("InstanceID", "0")
+                .executeOnAndGetAsync(ip, "CurrentTransportState")
+                .thenCompose(new Function<String, CompletableFuture<SonosNowPlaying>>() {
+                    @Override
+                    public CompletableFuture<SonosNowPlaying> apply(final String playState) {
+                        return readPosition(poller.device, playState, previous, sampledAt);
+                    }
+                })
+                .whenCompleteAsync(new BiConsumer<SonosNowPlaying, Throwable>() {
+                    @Override
+                    public void accept(SonosNowPlaying nowPlaying, Throwable error) {
+                        onPolled(poller, previous, nowPlaying, error);
+                    }
+                }, current);
+    }
+
+    private CompletableFuture<SonosNowPlaying> readPosition(final SonosDevice device, final String playState,
+                                                            final SonosNowPlaying previous, final long sampledAt) {
+        final String ip = device.getIpAddress();
+        return CommandBuilder.transport("GetPositionInfo").put("InstanceID", "0").executeOnAsync(ip)
+                .thenCompose(new Function<String, CompletableFuture<SonosNowPlaying>>() {
+                    @Override
+                    public CompletableFuture<SonosNowPlaying> apply(String response) {
+                        final Map<String, String> position;
+                        try {
+                            position = SoapResponseReader.readValues(response, "Track", "TrackDuration",
+                                    "TrackMetaData", "TrackURI", "RelTime");
+                        }
+                        catch (IOException e) {
+                            throw new CompletionException(e);
+                        }
+                        final String trackUri = position.get("TrackURI");
+                        if (previous != null && equal(trackUri, previous.getTrackUri())) {
+                            // same track, same source: GetMediaInfo can be skipped
+                            return CompletableFuture.completedFuture(toNowPlaying(device, playState,
+                                    previous.getMediaUri(), position, previous.getTrack(), sampledAt));
+                        }
+                        final SonosMediaItem track = readTrack(position.get("TrackMetaData"));
+                        return CommandBuilder.transport("GetMediaInfo").put("InstanceID", "0")
+                                .executeOnAndGetAsync(ip, "CurrentURI")
+                                .thenApply(new Function<String, SonosNowPlaying>() {
+                                    @Override
+                                    public SonosNowPlaying apply(String mediaUri) {
+                                        return toNowPlaying(device, playState, mediaUri, position, track, sampledAt);
+                                    }
+                                });
+                    }
+                });
+    }
+
+    private void onPolled(Poller poller, SonosNowPlaying previous, SonosNowPlaying nowPlaying, Throwable error) {
+        if (error != null) {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error;
+            poller.failures++;
+            long backoff = Math.min(MAX_BACKOFF, this.idleInterval << Math.min(poller.failures - 1, 10));
+            // scheduled first, so a failing listener can't stop the polling of the speaker
+            this.schedule(poller, this.jitter(backoff));
+            for (SonosNowPlayingListener listener : this.listeners) {
+                try { listener.onPollFailed(poller.device, cause); }
+                catch (RuntimeException e) { /* keep notifying the other listeners */ }
+            }
+            return;
+        }
+        poller.failures = 0;
+        poller.nowPlaying = nowPlaying;
+        this.schedule(poller, this.jitter(this.intervalFor(nowPlaying)));
+        if (nowPlaying.differsFrom(previous)) {
+            for (SonosNowPlayingListener listener : this.listeners) {
+                try { listener.onNowPlayingChanged(nowPlaying); }
+                catch (RuntimeException e) { /* keep notifying the other listeners */ }
+            }
+        }
+    }
+
+    private long intervalFor(SonosNowPlaying nowPlaying) {
+        if (nowPlaying.getPlayState() == PlayState.TRANSITIONING) { return TRANSITION_INTERVAL; }
+        if (nowPlaying.getPlayState() != PlayState.PLAYING) { return this.idleInterval; }
+        long remaining = nowPlaying.getDurationMillis() - nowPlaying.getPositionMillis();
+        // poll right after the end of the track instead of waiting a full interval
+        if (nowPlaying.getDurationMillis() > 0 && remaining < this.playingInterval) {
+            return Math.max(TRANSITION_INTERVAL, remaining + TRANSITION_INTERVAL);
+        }
+        return this.playingInterval;
+    }
+
+    private static SonosNowPlaying toNowPlaying(SonosDevice device, String playState, String mediaUri,
+                                                Map<String, String> position, SonosMediaItem track, long sampledAt) {
+        PlayState state;
+        try { state = PlayState.valueOf(playState); }
+        catch (IllegalArgumentException | NullPointerException e) { state = null; }
+        int trackNumber;
+        try { trackNumber = Integer.parseInt(position.get("Track")); }
+        catch (NumberFormatException e) { trackNumber = 0; }
+        return new SonosNowPlaying(device, state, mediaUri, trackNumber, position.get("TrackURI"), track,
+                parseTime(position.get("TrackDuration")), parseTime(position.get("RelTime")), sampledAt);
+    }
+
+    private static SonosMediaItem readTrack(String metadata) {
+        if (metadata == null || !metadata.startsWith("<")) { return null; } // empty or "NOT_IMPLEMENTED"
+        try { return new DidlReader(metadata).next(); }
+        catch (IOException e) { return null; }
+    }
+
+    /**
+     * @param time "H:MM:SS", e.g. "0:03:25"
+     * @return milliseconds, 0 if unknown (e.g. "NOT_IMPLEMENTED" for streams)
+     */
+    static long parseTime(String time) {
+        if (time == null) { return 0; }
+        String[] parts = time.split(":");
+        if (parts.length != 3) { return 0; }
+        try {
+            return TimeUnit.HOURS.toMillis(Long.parseLong(parts[0]))
+                    + TimeUnit.MINUTES.toMillis(Long.parseLong(parts[1]))
+                    + (long) (Double.parseDouble(parts[2]) * 1000);
+        }
+        catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Polling state of a speaker, only touched by the polling thread.
+     */
+    private static final class Poller {
+        private final SonosDevice device;
+        private volatile SonosNowPlaying nowPlaying;
+        private volatile ScheduledFuture<?> next;
+        private int failures = 0;
+
+        private Poller(SonosDevice device) {
+            this.device = device;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.vmichalak.sonoscontroller;
+
+/**
+ * Callback notified by {@link SonosDevice#addToQueue(java.util.List, java.util.List, SonosQueueListener)} after
+ * each batch of tracks added to the queue.
+ */
+public interface SonosQueueListener {
+    /**
+     * @param progress tracks added so far and throughput
+     */
+    void onBatchAdded(SonosQueueProgress progress);
+}
@@ -0,0 +1,86 @@
+package com.vmichalak.sonoscontroller;
+
+/**
+ * Progress of a bulk queue operation, after a batch of tracks was added.
+ */
+public final class SonosQueueProgress {
+    private final int batch;
+    private final int batchCount;
+    private final int tracksAdded;
+    private final int trackCount;
+    private final int firstTrackNumber;
+    private final int queueLength;
+    private final long elapsedMillis;
+
+    SonosQueueProgress(int batch, int batchCount, int tracksAdded, int trackCount, int firstTrackNumber,
+                       int queueLength, long elapsedMillis) {
+        this.batch = batch;
+        this.batchCount = batchCount;
+        this.tracksAdded = tracksAdded;
+        this.trackCount = trackCount;
+        this.firstTrackNumber = firstTrackNumber;
+        this.queueLength = queueLength;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * @return number of batches sent so far, from 1 to {@link #getBatchCount()}
+     */
+    public int getBatch() {
+        return batch;
+    }
+
+    public int getBatchCount() {
+        return batchCount;
+    }
+
+    /**
+     * @return number of tracks added so far
+     */
+    public int getTracksAdded() {
+        return tracksAdded;
+    }
+
+    /**
+     * @return number of tracks of the whole operation
+     */
+    public int getTrackCount() {
+        return trackCount;
+    }
+
+    /**
+     * @return position in the queue of the first track of the operation, starting at 1
+     */
+    public int getFirstTrackNumber() {
+        return firstTrackNumber;
+    }
+
+    /**
+     * @return length of the queue after the last batch
+     */
+    public int getQueueLength() {
+        return queueLength;
+    }
+
+    /**
+     * @return time since the first batch was sent, in milliseconds
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public double getTracksPerSecond() {
+        return elapsedMillis == 0 ? 0 : tracksAdded * 1000.0 / elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "SonosQueueProgress{" +
+                "batch=" + batch + "/" + batchCount +
+                ", tracksAdded=" + tracksAdded + "/" + trackCount +
+                ", queueLength=" + queueLength +
+                ", elapsedMillis=" + elapsedMillis +
+                ", tracksPerSecond=" + getTracksPerSecond() +
+                '}';
+    }
+}
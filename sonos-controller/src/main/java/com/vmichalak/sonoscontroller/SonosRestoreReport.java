@@ -0,0 +1,84 @@
+package com.vmichalak.sonoscontroller;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Outcome of {@link SonosHousehold#restore(SonosHouseholdSnapshot)}: duration, commands sent and failures of each
+ * phase.
+ */
+public final class SonosRestoreReport {
+    /**
+     * Phases of a restore, in execution order.
+     */
+    public enum Phase {
+        /** read the current state, to send only what differs */
+        READ,
+        /** unjoin and join the speakers */
+        REGROUP,
+        /** set the source and the play mode of the coordinators */
+        URI,
+        /** go back to the track and position in the queue */
+        SEEK,
+        /** volume and mute of every speaker */
+        VOLUME,
+        /** play or pause the coordinators */
+        PLAY
+    }
+
+    private final EnumMap<Phase, Long> durations = new EnumMap<Phase, Long>(Phase.class);
+    private final EnumMap<Phase, Integer> commandCounts = new EnumMap<Phase, Integer>(Phase.class);
+    private final EnumMap<Phase, Map<SonosDevice, Throwable>> failures =
+            new EnumMap<Phase, Map<SonosDevice, Throwable>>(Phase.class);
+
+    SonosRestoreReport() { }
+
+    void record(Phase phase, long durationMillis, int commandCount, Map<SonosDevice, Throwable> phaseFailures) {
+        this.durations.put(phase, durationMillis);
+        this.commandCounts.put(phase, commandCount);
+        this.failures.put(phase, new LinkedHashMap<SonosDevice, Throwable>(phaseFailures));
+    }
+
+    /**
+     * @return true if no command failed
+     */
+    public boolean isSuccess() {
+        for (Map<SonosDevice, Throwable> phaseFailures : this.failures.values()) {
+            if (!phaseFailures.isEmpty()) { return false; }
+        }
+        return true;
+    }
+
+    /**
+     * @return duration of the phase in milliseconds, 0 if it didn't run
+     */
+    public long getDurationMillis(Phase phase) {
+        Long duration = this.durations.get(phase);
+        return duration == null ? 0 : duration;
+    }
+
+    /**
+     * @return number of commands sent during the phase; settings already right aren't sent
+     */
+    public int getCommandCount(Phase phase) {
+        Integer count = this.commandCounts.get(phase);
+        return count == null ? 0 : count;
+    }
+
+    public Map<SonosDevice, Throwable> getFailures(Phase phase) {
+        Map<SonosDevice, Throwable> phaseFailures = this.failures.get(phase);
+        return phaseFailures == null ? Collections.<SonosDevice, Throwable>emptyMap()
+                : Collections.unmodifiableMap(phaseFailures);
+    }
+
+    @Override
+    public String toString() {
+        return "SonosRestoreReport{" +
+                "durations=" + durations +
+                ", commandCounts=" + commandCounts +
+                ", failures=" + failures +
+                '}';
+    }
+}
@@ -1,39 +1,24 @@
 package com.vmichalak.sonoscontroller;
 
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Snapshot of the /status/zp document of a speaker. The document is parsed on first access only, every field in a
+ * single scan.
+ */
 public class SonosSpeakerInfo {
-    private final String zoneName;
-    private final String zoneIcon;
-    private final String configuration;
-    private final String localUID;
-    private final String serialNumber;
-    private final String softwareVersion;
-    private final String softwareDate;
-    private final String softwareScm;
-    private final String minCompatibleVersion;
-    private final String legacyCompatibleVersion;
-    private final String hardwareVersion;
-    private final String dspVersion;
-    private final String hwFlags;
-    private final String hwFeatures;
-    private final String variant;
-    private final String generalFlags;
-    private final String ipAddress;
-    private final String macAddress;
-    private final String copyright;
-    private final String extraInfo;
-    private final String htAudioInCode;
-    private final String idxTrk;
-    private final String mdp2Ver;
-    private final String mdp3Ver;
-    private final String relBuild;
-    private final String whitelistBuild;
-    private final String prodUnit;
-    private final String fuseCfg;
-    private final String revokeFuse;
-    private final String authFlags;
-    private final String swFeatures;
-    private final String regState;
-    private final String customerID;
+    private static final String[] ALL_TAGS = {
+            "ZoneName", "ZoneIcon", "Configuration", "LocalUID", "SerialNumber", "SoftwareVersion", "SoftwareDate",
+            "SoftwareScm", "MinCompatibleVersion", "LegacyCompatibleVersion", "HardwareVersion", "DspVersion",
+            "HwFlags", "HwFeatures", "Variant", "GeneralFlags", "IPAddress", "MACAddress", "Copyright", "ExtraInfo",
+            "HTAudioInCode", "IdxTrk", "MDP2Ver", "MDP3Ver", "RelBuild", "WhitelistBuild", "ProdUnit", "FuseCfg",
+            "RevokeFuse", "AuthFlags", "SwFeatures", "RegState", "CustomerID"
+    };
+
+    private final String document;
+    // null until the document is parsed, never modified afterwards
+    private volatile Map<String, String> values;
 
     public SonosSpeakerInfo(String zoneName, String zoneIcon, String configuration, String localUID,
                             String serialNumber, String softwareVersion, String softwareDate, String softwareScm,
@@ -43,209 +28,229 @@ public class SonosSpeakerInfo {
                             String htAudioInCode, String idxTrk, String mdp2Ver, String mdp3Ver, String relBuild,
                             String whitelistBuild, String prodUnit, String fuseCfg, String revokeFuse, String authFlags,
                             String swFeatures, String regState, String customerID) {
-        this.zoneName = zoneName;
-        this.zoneIcon = zoneIcon;
-        this.configuration = configuration;
-        this.localUID = localUID;
-        this.serialNumber = serialNumber;
-        this.softwareVersion = softwareVersion;
-        this.softwareDate = softwareDate;
-        this.softwareScm = softwareScm;
-        this.minCompatibleVersion = minCompatibleVersion;
-        this.legacyCompatibleVersion = legacyCompatibleVersion;
-        this.hardwareVersion = hardwareVersion;
-        this.dspVersion = dspVersion;
-        this.hwFlags = hwFlags;
-        this.hwFeatures = hwFeatures;
-        this.variant = variant;
-        this.generalFlags = generalFlags;
-        this.ipAddress = ipAddress;
-        this.macAddress = macAddress;
-        this.copyright = copyright;
-        this.extraInfo = extraInfo;
-        this.htAudioInCode = htAudioInCode;
-        this.idxTrk = idxTrk;
-        this.mdp2Ver = mdp2Ver;
-        this.mdp3Ver = mdp3Ver;
-        this.relBuild = relBuild;
-        this.whitelistBuild = whitelistBuild;
-        this.prodUnit = prodUnit;
-        this.fuseCfg = fuseCfg;
-        this.revokeFuse = revokeFuse;
-        this.authFlags = authFlags;
-        this.swFeatures = swFeatures;
-        this.regState = regState;
-        this.customerID = customerID;
+        this.document = null;
+        HashMap<String, String> values = new HashMap<String, String>(ALL_TAGS.length * 2);
+        values.put("ZoneName", zoneName);
+        values.put("ZoneIcon", zoneIcon);
+        values.put("Configuration", configuration);
+        values.put("LocalUID", localUID);
+        values.put("SerialNumber", serialNumber);
+        values.put("SoftwareVersion", softwareVersion);
+        values.put("SoftwareDate", softwareDate);
+        values.put("SoftwareScm", softwareScm);
+        values.put("MinCompatibleVersion", minCompatibleVersion);
+        values.put("LegacyCompatibleVersion", legacyCompatibleVersion);
+        values.put("HardwareVersion", hardwareVersion);
+        values.put("DspVersion", dspVersion);
+        values.put("HwFlags", hwFlags);
+        values.put("HwFeatures", hwFeatures);
+        values.put("Variant", variant);
+        values.put("GeneralFlags", generalFlags);
+        values.put("IPAddress", ipAddress);
+        values.put("MACAddress", macAddress);
+        values.put("Copyright", copyright);
+        values.put("ExtraInfo", extraInfo);
+        values.put("HTAudioInCode", htAudioInCode);
+        values.put("IdxTrk", idxTrk);
+        values.put("MDP2Ver", mdp2Ver);
+        values.put("MDP3Ver", mdp3Ver);
+        values.put("RelBuild", relBuild);
+        values.put("WhitelistBuild", whitelistBuild);
+        values.put("ProdUnit", prodUnit);
+        values.put("FuseCfg", fuseCfg);
+        values.put("RevokeFuse", revokeFuse);
+        values.put("AuthFlags", authFlags);
+        values.put("SwFeatures", swFeatures);
+        values.put("RegState", regState);
+        values.put("CustomerID", customerID);
+        this.values = values;
+    }
+
+    /**
+     * @param document /status/zp document, parsed lazily
+     */
+    SonosSpeakerInfo(String document) {
+        this.document = document;
     }
 
     public String getZoneName() {
-        return zoneName;
+        return this.get("ZoneName");
     }
 
     public String getZoneIcon() {
-        return zoneIcon;
+        return this.get("ZoneIcon");
     }
 
     public String getConfiguration() {
-        return configuration;
+        return this.get("Configuration");
     }
 
     public String getLocalUID() {
-        return localUID;
+        return this.get("LocalUID");
     }
 
     public String getSerialNumber() {
-        return serialNumber;
+        return this.get("SerialNumber");
     }
 
     public String getSoftwareVersion() {
-        return softwareVersion;
+        return this.get("SoftwareVersion");
     }
 
     public String getSoftwareDate() {
-        return softwareDate;
+        return this.get("SoftwareDate");
     }
 
     public String getSoftwareScm() {
-        return softwareScm;
+        return this.get("SoftwareScm");
     }
 
     public String getMinCompatibleVersion() {
-        return minCompatibleVersion;
+        return this.get("MinCompatibleVersion");
     }
 
     public String getLegacyCompatibleVersion() {
-        return legacyCompatibleVersion;
+        return this.get("LegacyCompatibleVersion");
     }
 
     public String getHardwareVersion() {
-        return hardwareVersion;
+        return this.get("HardwareVersion");
     }
 
     public String getDspVersion() {
-        return dspVersion;
+        return this.get("DspVersion");
     }
 
     public String getHwFlags() {
-        return hwFlags;
+        return this.get("HwFlags");
     }
 
     public String getHwFeatures() {
-        return hwFeatures;
+        return this.get("HwFeatures");
     }
 
     public String getVariant() {
-        return variant;
+        return this.get("Variant");
     }
 
     public String getGeneralFlags() {
-        return generalFlags;
+        return this.get("GeneralFlags");
     }
 
     public String getIpAddress() {
-        return ipAddress;
+        return this.get("IPAddress");
     }
 
     public String getMacAddress() {
-        return macAddress;
+        return this.get("MACAddress");
     }
 
     public String getCopyright() {
-        return copyright;
+        return this.get("Copyright");
     }
 
     public String getExtraInfo() {
-        return extraInfo;
+        return this.get("ExtraInfo");
     }
 
     public String getHtAudioInCode() {
-        return htAudioInCode;
+        return this.get("HTAudioInCode");
     }
 
     public String getIdxTrk() {
-        return idxTrk;
+        return this.get("IdxTrk");
     }
 
     public String getMdp2Ver() {
-        return mdp2Ver;
+        return this.get("MDP2Ver");
     }
 
     public String getMdp3Ver() {
-        return mdp3Ver;
+        return this.get("MDP3Ver");
     }
 
     public String getRelBuild() {
-        return relBuild;
+        return this.get("RelBuild");
     }
 
     public String getWhitelistBuild() {
-        return whitelistBuild;
+        return this.get("WhitelistBuild");
     }
 
     public String getProdUnit() {
-        return prodUnit;
+        return this.get("ProdUnit");
     }
 
     public String getFuseCfg() {
-        return fuseCfg;
+        return this.get("FuseCfg");
     }
 
     public String getRevokeFuse() {
-        return revokeFuse;
+        return this.get("RevokeFuse");
     }
 
     public String getAuthFlags() {
-        return authFlags;
+        return this.get("AuthFlags");
     }
 
     public String getSwFeatures() {
-        return swFeatures;
+        return this.get("SwFeatures");
     }
 
     public String getRegState() {
-        return regState;
+        return this.get("RegState");
     }
 
     public String getCustomerID() {
-        return customerID;
+        return this.get("CustomerID");
+    }
+
+    private String get(String tag) {
+        Map<String, String> parsed = this.values;
+        if (parsed == null) {
+            // concurrent first reads may both parse, they get equal maps
+            parsed = ParserHelper.findAll(this.document, ALL_TAGS);
+            this.values = parsed;
+        }
+        return parsed.get(tag);
     }
 
     @Override
     public String toString() {
         return "SonosSpeakerInfo{" +
-                "zoneName='" + zoneName + '\'' +
-                ", zoneIcon='" + zoneIcon + '\'' +
-                ", configuration='" + configuration + '\'' +
-                ", localUID='" + localUID + '\'' +
-                ", serialNumber='" + serialNumber + '\'' +
-                ", softwareVersion='" + softwareVersion + '\'' +
-                ", softwareDate='" + softwareDate + '\'' +
-                ", softwareScm='" + softwareScm + '\'' +
-                ", minCompatibleVersion='" + minCompatibleVersion + '\'' +
-                ", legacyCompatibleVersion='" + legacyCompatibleVersion + '\'' +
-                ", hardwareVersion='" + hardwareVersion + '\'' +
-                ", dspVersion='" + dspVersion + '\'' +
-                ", hwFlags='" + hwFlags + '\'' +
-                ", hwFeatures='" + hwFeatures + '\'' +
-                ", variant='" + variant + '\'' +
-                ", generalFlags='" + generalFlags + '\'' +
-                ", ipAddress='" + ipAddress + '\'' +
-                ", macAddress='" + macAddress + '\'' +
-                ", copyright='" + copyright + '\'' +
-                ", extraInfo='" + extraInfo + '\'' +
-                ", htAudioInCode='" + htAudioInCode + '\'' +
-                ", idxTrk='" + idxTrk + '\'' +
-                ", mdp2Ver='" + mdp2Ver + '\'' +
-                ", mdp3Ver='" + mdp3Ver + '\'' +
-                ", relBuild='" + relBuild + '\'' +
-                ", whitelistBuild='" + whitelistBuild + '\'' +
-                ", prodUnit='" + prodUnit + '\'' +
-                ", fuseCfg='" + fuseCfg + '\'' +
-                ", revokeFuse='" + revokeFuse + '\'' +
-                ", authFlags='" + authFlags + '\'' +
-                ", swFeatures='" + swFeatures + '\'' +
-                ", regState='" + regState + '\'' +
-                ", customerID='" + customerID + '\'' +
+                "zoneName='" + getZoneName() + '\'' +
+                ", zoneIcon='" + getZoneIcon() + '\'' +
+                ", configuration='" + getConfiguration() + '\'' +
+                ", localUID='" + getLocalUID() + '\'' +
+                ", serialNumber='" + getSerialNumber() + '\'' +
+                ", softwareVersion='" + getSoftwareVersion() + '\'' +
+                ", softwareDate='" + getSoftwareDate() + '\'' +
+                ", softwareScm='" + getSoftwareScm() + '\'' +
+                ", minCompatibleVersion='" + getMinCompatibleVersion() + '\'' +
+                ", legacyCompatibleVersion='" + getLegacyCompatibleVersion() + '\'' +
+                ", hardwareVersion='" + getHardwareVersion() + '\'' +
+                ", dspVersion='" + getDspVersion() + '\'' +
+                ", hwFlags='" + getHwFlags() + '\'' +
+                ", hwFeatures='" + getHwFeatures() + '\'' +
+                ", variant='" + getVariant() + '\'' +
+                ", generalFlags='" + getGeneralFlags() + '\'' +
+                ", ipAddress='" + getIpAddress() + '\'' +
+                ", macAddress='" + getMacAddress() + '\'' +
+                ", copyright='" + getCopyright() + '\'' +
+                ", extraInfo='" + getExtraInfo() + '\'' +
+                ", htAudioInCode='" + getHtAudioInCode() + '\'' +
+                ", idxTrk='" + getIdxTrk() + '\'' +
+                ", mdp2Ver='" + getMdp2Ver() + '\'' +
+                ", mdp3Ver='" + getMdp3Ver() + '\'' +
+                ", relBuild='" + getRelBuild() + '\'' +
+                ", whitelistBuild='" + getWhitelistBuild() + '\'' +
+                ", prodUnit='" + getProdUnit() + '\'' +
+                ", fuseCfg='" + getFuseCfg() + '\'' +
+                ", revokeFuse='" + getRevokeFuse() + '\'' +
+                ", authFlags='" + getAuthFlags() + '\'' +
+                ", swFeatures='" + getSwFeatures() + '\'' +
+                ", regState='" + getRegState() + '\'' +
+                ", customerID='" + getCustomerID() + '\'' +
                 '}';
     }
 }
@@ -0,0 +1,116 @@
+package com.vmichalak.sonoscontroller;
+
+/**
+ * Playback state of a speaker captured by {@link SonosHousehold#snapshot()}.
+ */
+public final class SonosSpeakerSnapshot {
+    private final SonosDevice device;
+    private final String uid;
+    private final String coordinatorUID;
+    private final String transportUri;
+    private final String transportMetaData;
+    private final int trackNumber;
+    private final String position;
+    private final PlayState playState;
+    private final PlayMode playMode;
+    private final int volume;
+    private final boolean muted;
+
+    SonosSpeakerSnapshot(SonosDevice device, String uid, String coordinatorUID, String transportUri,
+                         String transportMetaData, int trackNumber, String position, PlayState playState,
+                         PlayMode playMode, int volume, boolean muted) {
+        this.device = device;
+        this.uid = uid;
+        this.coordinatorUID = coordinatorUID;
+        this.transportUri = transportUri;
+        this.transportMetaData = transportMetaData;
+        this.trackNumber = trackNumber;
+        this.position = position;
+        this.playState = playState;
+        this.playMode = playMode;
+        this.volume = volume;
+        this.muted = muted;
+    }
+
+    public SonosDevice getDevice() {
+        return device;
+    }
+
+    public String getUID() {
+        return uid;
+    }
+
+    /**
+     * @return UID of the coordinator of the speaker's group, its own UID if it's the coordinator
+     */
+    public String getCoordinatorUID() {
+        return coordinatorUID;
+    }
+
+    public boolean isCoordinator() {
+        return uid.equals(coordinatorUID);
+    }
+
+    /**
+     * @return URI of the source, e.g. "x-rincon-queue:RINCON_000E58A0123401400#0" for the queue
+     */
+    public String getTransportUri() {
+        return transportUri;
+    }
+
+    public String getTransportMetaData() {
+        return transportMetaData;
+    }
+
+    /**
+     * @return position of the current track in the queue, starting at 1
+     */
+    public int getTrackNumber() {
+        return trackNumber;
+    }
+
+    /**
+     * @return position in the current track, in the format HH:MM:SS
+     */
+    public String getPosition() {
+        return position;
+    }
+
+    public PlayState getPlayState() {
+        return playState;
+    }
+
+    public PlayMode getPlayMode() {
+        return playMode;
+    }
+
+    public int getVolume() {
+        return volume;
+    }
+
+    public boolean isMuted() {
+        return muted;
+    }
+
+    /**
+     * @return true if the source is the queue, where tracks and positions can be sought
+     */
+    boolean isQueue() {
+        return transportUri != null && transportUri.startsWith("x-rincon-queue:");
+    }
+
+    @Override
+    public String toString() {
+        return "SonosSpeakerSnapshot{" +
+                "uid='" + uid + '\'' +
+                ", coordinatorUID='" + coordinatorUID + '\'' +
+                ", transportUri='" + transportUri + '\'' +
+                ", trackNumber=" + trackNumber +
+                ", position='" + position + '\'' +
+                ", playState=" + playState +
+                ", playMode=" + playMode +
+                ", volume=" + volume +
+                ", muted=" + muted +
+                '}';
+    }
+}
@@ -0,0 +1,99 @@
+package com.vmichalak.sonoscontroller;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Groups and speakers of the household, read at once from the ZoneGroupTopology service of any speaker.
+ * Maps the speaker UIDs to their IP addresses without any SSDP discovery. The speakers are indexed when the
+ * topology is built, so every lookup is answered in constant time.
+ */
+public class SonosTopology {
+    private final List<SonosZoneGroup> groups;
+    private final HashMap<String, SonosZoneGroup> groupsById = new HashMap<String, SonosZoneGroup>();
+    private final HashMap<String, SonosZoneGroup> groupsByUID = new HashMap<String, SonosZoneGroup>();
+    private final HashMap<String, SonosZoneGroup> groupsByIp = new HashMap<String, SonosZoneGroup>();
+    private final HashMap<String, SonosZoneGroup> groupsByZoneName = new HashMap<String, SonosZoneGroup>();
+    private final HashMap<String, SonosZoneMember> membersByUID = new HashMap<String, SonosZoneMember>();
+
+    SonosTopology(List<SonosZoneGroup> groups) {
+        this.groups = groups;
+        for (SonosZoneGroup group : groups) {
+            this.groupsById.put(group.getId(), group);
+            for (SonosZoneMember member : group.getMembers()) {
+                this.index(group, member);
+                for (SonosZoneMember satellite : member.getSatellites()) { this.index(group, satellite); }
+                if (!member.isInvisible() && member.getZoneName() != null) {
+                    this.groupsByZoneName.put(member.getZoneName(), group);
+                }
+            }
+        }
+    }
+
+    private void index(SonosZoneGroup group, SonosZoneMember member) {
+        this.groupsByUID.put(member.getUID(), group);
+        this.membersByUID.put(member.getUID(), member);
+        if (member.getIpAddress() != null) { this.groupsByIp.put(member.getIpAddress(), group); }
+    }
+
+    public List<SonosZoneGroup> getGroups() {
+        return Collections.unmodifiableList(groups);
+    }
+
+    /**
+     * @param id group ID, e.g. "RINCON_000E58A0123401400:52"
+     * @return the group, null if unknown
+     */
+    public SonosZoneGroup getGroupById(String id) {
+        return this.groupsById.get(id);
+    }
+
+    /**
+     * @param uid speaker UID
+     * @return group of the speaker, null if unknown
+     */
+    public SonosZoneGroup getGroup(String uid) {
+        return this.groupsByUID.get(uid);
+    }
+
+    /**
+     * @param ip speaker IP address
+     * @return group of the speaker, null if unknown
+     */
+    public SonosZoneGroup getGroupByIpAddress(String ip) {
+        return this.groupsByIp.get(ip);
+    }
+
+    /**
+     * @param zoneName name of a zone, e.g. "Kitchen"
+     * @return group the zone is in, null if unknown
+     */
+    public SonosZoneGroup getGroupByZoneName(String zoneName) {
+        return this.groupsByZoneName.get(zoneName);
+    }
+
+    /**
+     * @param uid speaker UID, satellites included
+     * @return the speaker, null if unknown
+     */
+    public SonosZoneMember getMember(String uid) {
+        return this.membersByUID.get(uid);
+    }
+
+    /**
+     * @param ip speaker IP address
+     * @return true if the speaker shares its group with other visible speakers
+     */
+    public boolean isJoined(String ip) {
+        SonosZoneGroup group = this.groupsByIp.get(ip);
+        return group != null && group.getVisibleMembers().size() > 1;
+    }
+
+    @Override
+    public String toString() {
+        return "SonosTopology{" +
+                "groups=" + groups +
+                '}';
+    }
+}
@@ -0,0 +1,24 @@
+package com.vmichalak.sonoscontroller;
+
+/**
+ * Notified by {@link SonosTopologyManager} of the groups that changed. Unchanged groups are not reported.
+ */
+public interface SonosTopologyListener {
+    /**
+     * @param group group which appeared, e.g. a speaker left its group or was switched on
+     */
+    void onGroupAdded(SonosZoneGroup group);
+
+    /**
+     * @param group group which disappeared, e.g. it was merged into another one
+     */
+    void onGroupRemoved(SonosZoneGroup group);
+
+    /**
+     * Members or speaker attributes (name, IP address) of a group changed. A group whose coordinator changed is
+     * reported as removed and added.
+     * @param previous group before the change
+     * @param current group after the change, with the same coordinator
+     */
+    void onGroupChanged(SonosZoneGroup previous, SonosZoneGroup current);
+}
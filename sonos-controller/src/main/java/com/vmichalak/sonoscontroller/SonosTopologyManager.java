@@ -0,0 +1,181 @@
+package com.vmichalak.sonoscontroller;
+
+import com.vmichalak.sonoscontroller.exception.SonosControllerException;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory topology of the household, kept up to date from the ZoneGroupTopology events of a
+ * {@link SonosEventManager} and/or by polling a speaker. Queries (group of a zone, coordinator, joined or not) are
+ * answered from memory; listeners are told only about the groups that changed.
+ */
+public class SonosTopologyManager {
+    private final SonosDevice source;
+    private final CopyOnWriteArrayList<SonosTopologyListener> listeners =
+            new CopyOnWriteArrayList<SonosTopologyListener>();
+    private final SonosEventListener eventListener = new SonosEventAdapter() {
+        @Override
+        public void onZoneGroupStateChanged(SonosDevice device, String zoneGroupState) {
+            try { update(EventParser.parseZoneGroupState(zoneGroupState)); }
+            catch (IOException e) { /* malformed event, the next one carries the full state again */ }
+        }
+    };
+    private volatile SonosTopology topology;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param source speaker asked for the topology by {@link #refresh()}, any speaker of the household
+     */
+    public SonosTopologyManager(SonosDevice source) {
+        this.source = source;
+    }
+
+    /**
+     * @return the last known topology, null before the first {@link #refresh()} or event
+     */
+    public SonosTopology getTopology() {
+        return topology;
+    }
+
+    /**
+     * Read the topology from the source speaker and report the changes.
+     * @return the new topology
+     * @throws IOException
+     * @throws SonosControllerException
+     */
+    public SonosTopology refresh() throws IOException, SonosControllerException {
+        SonosTopology newTopology = this.source.getTopology();
+        this.update(newTopology);
+        return newTopology;
+    }
+
+    /**
+     * Follow the ZoneGroupTopology events received by an event manager. Any subscribed speaker is enough.
+     * @param eventManager event manager
+     */
+    public void listenTo(SonosEventManager eventManager) {
+        eventManager.addListener(this.eventListener);
+    }
+
+    public void stopListeningTo(SonosEventManager eventManager) {
+        eventManager.removeListener(this.eventListener);
+    }
+
+    /**
+     * Refresh the topology periodically in background, e.g. as a fallback when no event subscription is possible.
+     * @param interval time between two refreshes, in milliseconds
+     */
+    public synchronized void startPolling(long interval) {
+        this.stopPolling();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "sonos-topology-refresh");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try { refresh(); }
+                catch (IOException | SonosControllerException e) { /* keep the last topology, retried next time */ }
+                catch (RuntimeException e) { /* unexpected failure, an escaping exception would cancel the polling */ }
+            }
+        }, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stopPolling() {
+        if (this.scheduler == null) { return; }
+        this.scheduler.shutdownNow();
+        this.scheduler = null;
+    }
+
+    public void addListener(SonosTopologyListener listener) {
+        this.listeners.add(listener);
+    }
+
+    public void removeListener(SonosTopologyListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * @return true if the speaker shares its group with other visible speakers, false if unknown
+     */
+    public boolean isJoined(SonosDevice device) {
+        SonosTopology current = this.topology;
+        return current != null && current.isJoined(device.getIpAddress());
+    }
+
+    /**
+     * @return coordinator of the group of the speaker, null if unknown
+     */
+    public SonosZoneMember getCoordinator(SonosDevice device) {
+        SonosTopology current = this.topology;
+        SonosZoneGroup group = current == null ? null : current.getGroupByIpAddress(device.getIpAddress());
+        return group == null ? null : group.getCoordinator();
+    }
+
+    /**
+     * @param zoneName name of a zone, e.g. "Kitchen"
+     * @return group the zone is in, null if unknown
+     */
+    public SonosZoneGroup getGroupByZoneName(String zoneName) {
+        SonosTopology current = this.topology;
+        return current == null ? null : current.getGroupByZoneName(zoneName);
+    }
+
+    /**
+     * Replace the topology and report the groups added, removed or changed. Groups are matched by coordinator.
+     */
+    synchronized void update(SonosTopology newTopology) {
+        SonosTopology previous = this.topology;
+        this.topology = newTopology;
+        Map<String, SonosZoneGroup> before = byCoordinator(previous);
+        Map<String, SonosZoneGroup> after = byCoordinator(newTopology);
+        for (Map.Entry<String, SonosZoneGroup> entry : before.entrySet()) {
+            if (after.containsKey(entry.getKey())) { continue; }
+            for (SonosTopologyListener listener : this.listeners) {
+                try { listener.onGroupRemoved(entry.getValue()); }
+                catch (RuntimeException e) { /* keep notifying the other listeners */ }
+            }
+        }
+        for (Map.Entry<String, SonosZoneGroup> entry : after.entrySet()) {
+            SonosZoneGroup old = before.get(entry.getKey());
+            SonosZoneGroup group = entry.getValue();
+            if (old == null) {
+                for (SonosTopologyListener listener : this.listeners) {
+                    try { listener.onGroupAdded(group); }
+                    catch (RuntimeException e) { /* keep notifying the other listeners */ }
+                }
+            }
+            else if (!sameMembers(old, group)) {
+                for (SonosTopologyListener listener : this.listeners) {
+                    try { listener.onGroupChanged(old, group); }
+                    catch (RuntimeException e) { /* keep notifying the other listeners */ }
+                }
+            }
+        }
+    }
+
+    private static Map<String, SonosZoneGroup> byCoordinator(SonosTopology topology) {
+        LinkedHashMap<String, SonosZoneGroup> groups = new LinkedHashMap<String, SonosZoneGroup>();
+        if (topology == null) { return groups; }
+        for (SonosZoneGroup group : topology.getGroups()) { groups.put(group.getCoordinatorUID(), group); }
+        return groups;
+    }
+
+    /**
+     * The group ID sequence changes with every regrouping, only the members matter.
+     */
+    private static boolean sameMembers(SonosZoneGroup a, SonosZoneGroup b) {
+        return a.getMembers().equals(b.getMembers());
+    }
+}
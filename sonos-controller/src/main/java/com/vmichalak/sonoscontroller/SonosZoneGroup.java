@@ -0,0 +1,88 @@
+package com.vmichalak.sonoscontroller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A group of the household topology: speakers playing the same source, driven by the coordinator.
+ */
+public class SonosZoneGroup {
+    private final String id;
+    private final String coordinatorUID;
+    private final List<SonosZoneMember> members;
+    private final List<SonosZoneMember> visibleMembers = new ArrayList<SonosZoneMember>();
+
+    SonosZoneGroup(String id, String coordinatorUID, List<SonosZoneMember> members) {
+        this.id = id;
+        this.coordinatorUID = coordinatorUID;
+        this.members = members;
+        for (SonosZoneMember member : members) {
+            if (!member.isInvisible()) { this.visibleMembers.add(member); }
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getCoordinatorUID() {
+        return coordinatorUID;
+    }
+
+    /**
+     * @return the coordinator, null if it isn't listed among the members
+     */
+    public SonosZoneMember getCoordinator() {
+        return this.getMember(coordinatorUID);
+    }
+
+    /**
+     * @return name shown by the Sonos apps, e.g. "Kitchen + 2"
+     */
+    public String getName() {
+        SonosZoneMember coordinator = this.getCoordinator();
+        if (coordinator == null) { return null; }
+        int others = this.getVisibleMembers().size() - 1;
+        return others > 0 ? coordinator.getZoneName() + " + " + others : coordinator.getZoneName();
+    }
+
+    public List<SonosZoneMember> getMembers() {
+        return Collections.unmodifiableList(members);
+    }
+
+    /**
+     * @return the members without the hidden speakers of stereo pairs
+     */
+    public List<SonosZoneMember> getVisibleMembers() {
+        return Collections.unmodifiableList(visibleMembers);
+    }
+
+    /**
+     * @return member with this UID, null if not in this group
+     */
+    public SonosZoneMember getMember(String uid) {
+        for (SonosZoneMember member : members) {
+            if (member.getUID().equals(uid)) { return member; }
+        }
+        return null;
+    }
+
+    /**
+     * @return controllers of the visible members
+     */
+    public List<SonosDevice> getSonosDevices() {
+        ArrayList<SonosDevice> devices = new ArrayList<SonosDevice>();
+        for (SonosZoneMember member : this.getVisibleMembers()) { devices.add(member.toSonosDevice()); }
+        return devices;
+    }
+
+    @Override
+    public String toString() {
+        return "SonosZoneGroup{" +
+                "id='" + id + '\'' +
+                ", coordinatorUID='" + coordinatorUID + '\'' +
+                ", members=" + members +
+                '}';
+    }
+}
@@ -1,5 +1,7 @@
 package com.vmichalak.sonoscontroller;
 
+import com.vmichalak.sonoscontroller.exception.SonosControllerException;
+
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -9,11 +11,18 @@ public class SonosZoneInfo {
     private final String name;
     private final String id;
     private final List<String> zonePlayerUIDInGroup;
+    // speaker which reported this zone, asked for the topology
+    private final String sourceIp;
 
     public SonosZoneInfo(String name, String id, List<String> zonePlayerUIDInGroup) {
+        this(name, id, zonePlayerUIDInGroup, null);
+    }
+
+    SonosZoneInfo(String name, String id, List<String> zonePlayerUIDInGroup, String sourceIp) {
         this.name = name;
         this.id = id;
         this.zonePlayerUIDInGroup = zonePlayerUIDInGroup;
+        this.sourceIp = sourceIp;
     }
 
     public String getName() {
@@ -24,21 +33,43 @@ public class SonosZoneInfo {
         return id;
     }
 
+    /**
+     * @return UID of the group coordinator, the group ID being "coordinatorUID:sequence"
+     */
+    public String getCoordinatorUID() {
+        int separator = id.indexOf(':');
+        return separator < 0 ? id : id.substring(0, separator);
+    }
+
     public List<String> getZonePlayerUIDInGroup() {
         return Collections.unmodifiableList(zonePlayerUIDInGroup);
     }
 
-    public List<SonosDevice> getSonosDevicesInGroup() {
+    /**
+     * Resolve the members of the zone from the household topology, read in a single call.
+     * Members missing from the topology are left out.
+     * @return List of the Sonos speakers of the zone
+     * @throws IOException
+     * @throws SonosControllerException
+     */
+    public List<SonosDevice> getSonosDevicesInGroup() throws IOException, SonosControllerException {
         ArrayList<SonosDevice> devices = new ArrayList<SonosDevice>();
+        SonosTopology topology = this.getTopology();
+        if (topology == null) { return devices; }
         for (String uid : zonePlayerUIDInGroup) {
-            try {
-                SonosDevice device = SonosDiscovery.discoverByUID(uid);
-                if(device != null) {
-                    devices.add(device);
-                }
-            }
-            catch (IOException e) { }
+            SonosZoneMember member = topology.getMember(uid);
+            if (member != null) { devices.add(member.toSonosDevice()); }
         }
         return devices;
     }
+
+    private SonosTopology getTopology() throws IOException, SonosControllerException {
+        if (sourceIp != null) { return new SonosDevice(sourceIp).getTopology(); }
+        // any member knows the whole topology, a single discovery is enough
+        for (String uid : zonePlayerUIDInGroup) {
+            SonosDevice device = SonosDiscovery.discoverByUID(uid);
+            if (device != null) { return device.getTopology(); }
+        }
+        return null;
+    }
 }
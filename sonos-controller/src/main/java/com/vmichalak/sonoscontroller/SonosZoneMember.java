@@ -0,0 +1,89 @@
+package com.vmichalak.sonoscontroller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A speaker of the household, as listed by the ZoneGroupState of the topology.
+ */
+public class SonosZoneMember {
+    private final String uid;
+    private final String ip;
+    private final String zoneName;
+    private final boolean invisible;
+    private final List<SonosZoneMember> satellites = new ArrayList<SonosZoneMember>();
+
+    SonosZoneMember(String uid, String ip, String zoneName, boolean invisible) {
+        this.uid = uid;
+        this.ip = ip;
+        this.zoneName = zoneName;
+        this.invisible = invisible;
+    }
+
+    public String getUID() {
+        return uid;
+    }
+
+    public String getIpAddress() {
+        return ip;
+    }
+
+    public String getZoneName() {
+        return zoneName;
+    }
+
+    /**
+     * @return true for the speakers hidden from the user, e.g. the second speaker of a stereo pair
+     */
+    public boolean isInvisible() {
+        return invisible;
+    }
+
+    /**
+     * @return the surrounds and subwoofer bonded to this home theater speaker
+     */
+    public List<SonosZoneMember> getSatellites() {
+        return Collections.unmodifiableList(satellites);
+    }
+
+    void addSatellite(SonosZoneMember satellite) {
+        this.satellites.add(satellite);
+    }
+
+    /**
+     * @return a controller of this speaker, no discovery needed
+     */
+    public SonosDevice toSonosDevice() {
+        return new SonosDevice(ip, uid, null);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) { return true; }
+        if (!(o instanceof SonosZoneMember)) { return false; }
+        SonosZoneMember that = (SonosZoneMember) o;
+        return invisible == that.invisible && equal(uid, that.uid) && equal(ip, that.ip)
+                && equal(zoneName, that.zoneName) && satellites.equals(that.satellites);
+    }
+
+    @Override
+    public int hashCode() {
+        return uid == null ? 0 : uid.hashCode();
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    @Override
+    public String toString() {
+        return "SonosZoneMember{" +
+                "uid='" + uid + '\'' +
+                ", ip='" + ip + '\'' +
+                ", zoneName='" + zoneName + '\'' +
+                ", invisible=" + invisible +
+                ", satellites=" + satellites +
+                '}';
+    }
+}
@@ -0,0 +1,57 @@
+package com.vmichalak.sonoscontroller;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Short-lived cache of the values read from a speaker, keyed by response argument name (e.g. "CurrentVolume").
+ */
+final class StateCache {
+    private final long ttl;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param ttl how long a value is served from the cache, in milliseconds
+     */
+    StateCache(long ttl) {
+        this.ttl = TimeUnit.MILLISECONDS.toNanos(ttl);
+    }
+
+    /**
+     * @return the cached value, null if absent or expired
+     */
+    String get(String key) {
+        Entry entry = this.entries.get(key);
+        if (entry == null || System.nanoTime() - entry.expiresAt >= 0) {
+            this.misses.incrementAndGet();
+            return null;
+        }
+        this.hits.incrementAndGet();
+        return entry.value;
+    }
+
+    void put(String key, String value) {
+        this.entries.put(key, new Entry(value, System.nanoTime() + this.ttl));
+    }
+
+    void invalidate(String key) {
+        this.entries.remove(key);
+    }
+
+    StateCacheStats getStats() {
+        return new StateCacheStats(this.hits.get(), this.misses.get());
+    }
+
+    private static final class Entry {
+        private final String value;
+        private final long expiresAt;
+
+        private Entry(String value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.vmichalak.sonoscontroller;
+
+/**
+ * Hit and miss counters of the state cache of a {@link SonosDevice}. Each hit is a round trip saved.
+ */
+public final class StateCacheStats {
+    private final long hits;
+    private final long misses;
+
+    StateCacheStats(long hits, long misses) {
+        this.hits = hits;
+        this.misses = misses;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return share of the reads served from the cache, between 0 and 1
+     */
+    public double getHitRatio() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return "StateCacheStats{" +
+                "hits=" + hits +
+                ", misses=" + misses +
+                ", hitRatio=" + getHitRatio() +
+                '}';
+    }
+}
@@ -0,0 +1,175 @@
+package com.vmichalak.sonoscontroller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Change the volume of a speaker without racing read/write pairs.
+ * At most one request is in flight per speaker: changes asked meanwhile are merged (relative steps are summed, an
+ * absolute volume replaces everything before it) and sent as a single request once the previous one is answered.
+ * Every caller gets the volume reached once all the merged changes are applied.
+ */
+public class VolumeController {
+    private static final int MIN_VOLUME = 0;
+    private static final int MAX_VOLUME = 100;
+
+    private final SonosDevice device;
+
+    private int pendingDelta = 0;
+    private Integer pendingVolume = null;
+    private boolean inFlight = false;
+    // callers whose change isn't sent yet
+    private List<CompletableFuture<Integer>> waiting = new ArrayList<CompletableFuture<Integer>>();
+    // callers whose change is applied, waiting for the last merged request
+    private List<CompletableFuture<Integer>> applied = new ArrayList<CompletableFuture<Integer>>();
+    private volatile int lastKnownVolume = -1;
+
+    /**
+     * Use {@link SonosDevice#getVolumeController()} to share the controller of a speaker.
+     * @param device speaker
+     */
+    VolumeController(SonosDevice device) {
+        this.device = device;
+    }
+
+    /**
+     * Change the volume relatively to its current value, sent with RenderingControl SetRelativeVolume.
+     * @param delta volume step, negative to lower the volume
+     * @return future completed with the volume reached
+     */
+    public CompletableFuture<Integer> adjust(int delta) {
+        CompletableFuture<Integer> result = new CompletableFuture<Integer>();
+        synchronized (this) {
+            if (this.pendingVolume != null) { this.pendingVolume = clamp(this.pendingVolume + delta); }
+            else { this.pendingDelta += delta; }
+            if (!this.enqueue(result)) { return result; }
+        }
+        this.sendNext();
+        return result;
+    }
+
+    /**
+     * Set the volume, replacing the changes not sent yet.
+     * @param volume value between 0 and 100
+     * @return future completed with the volume reached
+     */
+    public CompletableFuture<Integer> setVolume(int volume) {
+        CompletableFuture<Integer> result = new CompletableFuture<Integer>();
+        synchronized (this) {
+            this.pendingVolume = clamp(volume);
+            this.pendingDelta = 0;
+            if (!this.enqueue(result)) { return result; }
+        }
+        this.sendNext();
+        return result;
+    }
+
+    /**
+     * @return the volume returned by the last successful request, -1 if none yet
+     */
+    public int getLastKnownVolume() {
+        return this.lastKnownVolume;
+    }
+
+    /**
+     * @return true if the caller must start sending, false if a request is already in flight
+     */
+    private boolean enqueue(CompletableFuture<Integer> result) {
+        this.waiting.add(result);
+        if (this.inFlight) { return false; }
+        this.inFlight = true;
+        return true;
+    }
+
+    private void sendNext() {
+        final List<CompletableFuture<Integer>> batch;
+        final Integer volume;
+        final int delta;
+        synchronized (this) {
+            batch = this.waiting;
+            volume = this.pendingVolume;
+            delta = this.pendingDelta;
+            this.waiting = new ArrayList<CompletableFuture<Integer>>();
+            this.pendingVolume = null;
+            this.pendingDelta = 0;
+        }
+        CompletableFuture<Integer> response;
+        try { response = this.send(volume, delta); }
+        catch (RuntimeException e) {
+            // failed before any request went out: release the batch, or inFlight would stay set for good
+            this.onResponse(batch, null, e);
+            return;
+        }
+        response.whenComplete(new BiConsumer<Integer, Throwable>() {
+            @Override
+            public void accept(Integer newVolume, Throwable error) {
+                onResponse(batch, newVolume, error);
+            }
+        });
+    }
+
+    private CompletableFuture<Integer> send(final Integer volume, int delta) {
+        String ip = this.device.getIpAddress();
+        if (volume != null) {
+            return CommandBuilder.rendering("SetVolume").put("InstanceID", "0").put("Channel", "Master")
+                    .put("DesiredVolume", String.valueOf(volume)).executeOnAsync(ip)
+                    .thenApply(new Function<String, Integer>() {
+                        @Override
+                        public Integer apply(String r) {
+                            return volume;
+                        }
+                    });
+        }
+        CommandBuilder command;
+        String element;
+        if (delta != 0) {
+            command = CommandBuilder.rendering("SetRelativeVolume").put("InstanceID", "0").put("Channel", "Master")
+                    .put("Adjustment", String.valueOf(delta));
+            element = "NewVolume";
+        }
+        else {
+            // the steps cancelled each other
+            if (this.lastKnownVolume >= 0) { return CompletableFuture.completedFuture(this.lastKnownVolume); }
+            command = CommandBuilder.rendering("GetVolume").put("InstanceID", "0").put("Channel", "Master");
+            element = "CurrentVolume";
+        }
+        return command.executeOnAndGetAsync(ip, element).thenApply(new Function<String, Integer>() {
+            @Override
+            public Integer apply(String r) {
+                return Integer.parseInt(r);
+            }
+        });
+    }
+
+    private void onResponse(List<CompletableFuture<Integer>> batch, Integer newVolume, Throwable error) {
+        if (error == null) {
+            this.lastKnownVolume = newVolume;
+            this.device.cacheWrite("CurrentVolume", String.valueOf(newVolume));
+        }
+        List<CompletableFuture<Integer>> finished = null;
+        boolean sendMore;
+        synchronized (this) {
+            if (error == null) { this.applied.addAll(batch); }
+            sendMore = !this.waiting.isEmpty();
+            if (!sendMore) {
+                this.inFlight = false;
+                finished = this.applied;
+                this.applied = new ArrayList<CompletableFuture<Integer>>();
+            }
+        }
+        if (error != null) {
+            for (CompletableFuture<Integer> result : batch) { result.completeExceptionally(error); }
+        }
+        if (finished != null) {
+            for (CompletableFuture<Integer> result : finished) { result.complete(this.lastKnownVolume); }
+        }
+        if (sendMore) { this.sendNext(); }
+    }
+
+    private static int clamp(int volume) {
+        return Math.max(MIN_VOLUME, Math.min(MAX_VOLUME, volume));
+    }
+}
@@ -0,0 +1,83 @@
+package com.vmichalak.sonoscontroller;
+
+import com.vmichalak.sonoscontroller.exception.SonosControllerException;
+import com.vmichalak.sonoscontroller.exception.UPnPSonosControllerException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class CommandBuilderTest {
+    private static final String IP = "192.168.1.42";
+
+    @Test
+    public void successIsNoError() throws SonosControllerException {
+        CommandBuilder.handleError(IP, 200, SoapResponseReaderTest.GET_VOLUME_RESPONSE);
+    }
+
+    @Test
+    public void successMentioningErrorCodeIsNoError() throws SonosControllerException {
+        // e.g. a track title or a browse result
+        CommandBuilder.handleError(IP, 200, "<r><Result>&lt;dc:title&gt;errorCode&lt;/dc:title&gt;</Result></r>");
+        CommandBuilder.handleError(IP, 200, "<r><errorCode>402</errorCode></r>");
+    }
+
+    @Test
+    public void faultIsUPnPError() throws SonosControllerException {
+        try {
+            CommandBuilder.handleError(IP, 500, SoapResponseReaderTest.FAULT_RESPONSE);
+            fail();
+        }
+        catch (UPnPSonosControllerException e) {
+            assertEquals(402, e.getErrorCode());
+            assertEquals("Invalid Args", e.getErrorDescription());
+            assertEquals(SoapResponseReaderTest.FAULT_RESPONSE, e.getResponse());
+            assertEquals("UPnP Error 402 (Invalid Args) received from " + IP, e.getMessage());
+        }
+    }
+
+    @Test
+    public void faultWithUnknownCodeKeepsItsDescription() throws SonosControllerException {
+        String response = SoapResponseReaderTest.FAULT_RESPONSE.replace("<errorCode>402</errorCode>",
+                "<errorCode> 701 </errorCode><errorDescription>Transition not available</errorDescription>");
+        try {
+            CommandBuilder.handleError(IP, 500, response);
+            fail();
+        }
+        catch (UPnPSonosControllerException e) {
+            assertEquals(701, e.getErrorCode());
+            assertEquals("Transition not available", e.getErrorDescription());
+        }
+    }
+
+    @Test
+    public void invalidErrorCode() {
+        String response = SoapResponseReaderTest.FAULT_RESPONSE.replace("402", "x");
+        assertNotUPnPError(500, response, "Invalid UPnP error x received from " + IP);
+    }
+
+    @Test
+    public void errorWithoutFault() {
+        assertNotUPnPError(500, "Internal Server Error", "HTTP 500 received from " + IP);
+        assertNotUPnPError(500, "<r><errorCode>402</errorCode></r>", "HTTP 500 received from " + IP);
+        assertNotUPnPError(500, "", "HTTP 500 received from " + IP);
+    }
+
+    @Test
+    public void otherStatusIgnoresTheBody() {
+        assertNotUPnPError(404, SoapResponseReaderTest.FAULT_RESPONSE, "HTTP 404 received from " + IP);
+    }
+
+    private static void assertNotUPnPError(int statusCode, String response, String message) {
+        try {
+            CommandBuilder.handleError(IP, statusCode, response);
+            fail();
+        }
+        catch (SonosControllerException e) {
+            assertFalse(e instanceof UPnPSonosControllerException);
+            assertEquals(message, e.getMessage());
+        }
+    }
+}
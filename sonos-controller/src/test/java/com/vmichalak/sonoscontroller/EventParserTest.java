@@ -0,0 +1,154 @@
+package com.vmichalak.sonoscontroller;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EventParserTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String LAST_CHANGE = "<Event xmlns=\"urn:schemas-upnp-org:metadata-1-0/RCS/\">"
+            + "<InstanceID val=\"0\">"
+            + "<Volume channel=\"Master\" val=\"23\"/><Volume channel=\"LF\" val=\"100\"/>"
+            + "<Volume channel=\"RF\" val=\"90\"/><Mute channel=\"Master\" val=\"0\"/>"
+            + "<Bass val=\"2\"/><Treble val=\"-1\"/><Loudness channel=\"Master\" val=\"1\"/><NightMode val=\"1\"/>"
+            + "<PresetNameList/>"
+            + "</InstanceID>"
+            + "<InstanceID val=\"1\"><Volume channel=\"Master\" val=\"77\"/><Bass val=\"9\"/></InstanceID>"
+            + "</Event>";
+
+    private static final String ZONE_GROUP_STATE = "<ZoneGroupState><ZoneGroups>"
+            + "<ZoneGroup Coordinator=\"RINCON_A\" ID=\"RINCON_A:12\">"
+            + "<ZoneGroupMember UUID=\"RINCON_A\" Location=\"http://192.168.1.10:1400/xml/device_description.xml\""
+            + " ZoneName=\"Living Room\">"
+            + "<Satellite UUID=\"RINCON_S\" Location=\"http://192.168.1.13:1400/xml/device_description.xml\""
+            + " ZoneName=\"Living Room\" Invisible=\"1\"/>"
+            + "</ZoneGroupMember>"
+            + "<ZoneGroupMember UUID=\"RINCON_B\" Location=\"http://192.168.1.11:1400/xml/device_description.xml\""
+            + " ZoneName=\"Kitchen\"/>"
+            + "</ZoneGroup>"
+            + "<ZoneGroup Coordinator=\"RINCON_C\" ID=\"RINCON_C:3\">"
+            + "<ZoneGroupMember UUID=\"RINCON_C\" Location=\"http://192.168.1.12:1400/xml/device_description.xml\""
+            + " ZoneName=\"Bedroom &amp; Bath\"/>"
+            + "<ZoneGroupMember UUID=\"RINCON_D\" Location=\"not a url\" ZoneName=\"Sub\" Invisible=\"1\"/>"
+            + "</ZoneGroup>"
+            + "</ZoneGroups></ZoneGroupState>";
+
+    @Test
+    public void parsePropertySet() throws IOException {
+        String body = "<?xml version=\"1.0\"?><e:propertyset xmlns:e=\"urn:schemas-upnp-org:event-1-0\">"
+                + "<e:property><LastChange>" + escape(LAST_CHANGE) + "</LastChange></e:property>"
+                + "<e:property><ZoneGroupState>" + escape(ZONE_GROUP_STATE) + "</ZoneGroupState></e:property>"
+                + "<e:property><Empty></Empty></e:property>"
+                + "</e:propertyset>";
+        Map<String, String> properties = EventParser.parsePropertySet(body.getBytes(UTF_8));
+        assertEquals(3, properties.size());
+        assertEquals(LAST_CHANGE, properties.get("LastChange"));
+        assertEquals(ZONE_GROUP_STATE, properties.get("ZoneGroupState"));
+        assertEquals("", properties.get("Empty"));
+    }
+
+    @Test
+    public void parsePropertySetReadsDeclaredEncoding() throws IOException {
+        String body = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>"
+                + "<e:propertyset xmlns:e=\"urn:schemas-upnp-org:event-1-0\">"
+                + "<e:property><ZoneName>Küche</ZoneName></e:property></e:propertyset>";
+        Map<String, String> properties = EventParser.parsePropertySet(body.getBytes(Charset.forName("ISO-8859-1")));
+        assertEquals("Küche", properties.get("ZoneName"));
+    }
+
+    @Test(expected = IOException.class)
+    public void parseInvalidPropertySet() throws IOException {
+        EventParser.parsePropertySet("<e:propertyset><e:property>".getBytes(UTF_8));
+    }
+
+    @Test
+    public void parseLastChange() throws IOException {
+        Map<String, String> variables = EventParser.parseLastChange(LAST_CHANGE);
+        assertEquals("23", variables.get("Volume"));
+        assertEquals("0", variables.get("Mute"));
+        assertEquals("2", variables.get("Bass"));
+        assertEquals("-1", variables.get("Treble"));
+        assertEquals("1", variables.get("Loudness"));
+        assertEquals("1", variables.get("NightMode"));
+        assertFalse("variable without value", variables.containsKey("PresetNameList"));
+    }
+
+    @Test
+    public void parseTransportLastChange() throws IOException {
+        String lastChange = "<Event xmlns=\"urn:schemas-upnp-org:metadata-1-0/AVT/\"><InstanceID val=\"0\">"
+                + "<TransportState val=\"PLAYING\"/><CurrentPlayMode val=\"SHUFFLE\"/>"
+                + "<CurrentTrackURI val=\"x-file-cifs://nas/music/a&amp;b.mp3\"/>"
+                + "<CurrentTrackMetaData val=\"&lt;DIDL-Lite&gt;&lt;/DIDL-Lite&gt;\"/>"
+                + "</InstanceID></Event>";
+        Map<String, String> variables = EventParser.parseLastChange(lastChange);
+        assertEquals("PLAYING", variables.get("TransportState"));
+        assertEquals("SHUFFLE", variables.get("CurrentPlayMode"));
+        assertEquals("x-file-cifs://nas/music/a&b.mp3", variables.get("CurrentTrackURI"));
+        assertEquals("<DIDL-Lite></DIDL-Lite>", variables.get("CurrentTrackMetaData"));
+    }
+
+    @Test
+    public void parseLastChangeOfOtherInstance() throws IOException {
+        String lastChange = "<Event><InstanceID val=\"1\"><Volume channel=\"Master\" val=\"77\"/></InstanceID></Event>";
+        assertTrue(EventParser.parseLastChange(lastChange).isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void parseInvalidLastChange() throws IOException {
+        EventParser.parseLastChange("<Event><InstanceID val=\"0\"><Volume val=\"1\"></Event>");
+    }
+
+    @Test
+    public void parseZoneGroupState() throws IOException {
+        SonosTopology topology = EventParser.parseZoneGroupState(ZONE_GROUP_STATE);
+        assertEquals(2, topology.getGroups().size());
+
+        SonosZoneGroup livingRoom = topology.getGroupById("RINCON_A:12");
+        assertEquals("RINCON_A", livingRoom.getCoordinatorUID());
+        assertEquals(2, livingRoom.getMembers().size());
+        SonosZoneMember coordinator = livingRoom.getCoordinator();
+        assertEquals("192.168.1.10", coordinator.getIpAddress());
+        assertEquals("Living Room", coordinator.getZoneName());
+        assertFalse(coordinator.isInvisible());
+        assertEquals(1, coordinator.getSatellites().size());
+        assertEquals("RINCON_S", coordinator.getSatellites().get(0).getUID());
+        assertTrue(coordinator.getSatellites().get(0).isInvisible());
+        assertNull("satellites aren't members", livingRoom.getMember("RINCON_S"));
+        assertEquals("192.168.1.11", livingRoom.getMember("RINCON_B").getIpAddress());
+
+        SonosZoneGroup bedroom = topology.getGroupByIpAddress("192.168.1.12");
+        assertEquals("RINCON_C:3", bedroom.getId());
+        assertEquals("Bedroom & Bath", bedroom.getCoordinator().getZoneName());
+        SonosZoneMember sub = bedroom.getMember("RINCON_D");
+        assertTrue(sub.isInvisible());
+        assertNull(sub.getIpAddress());
+    }
+
+    @Test
+    public void parseZoneGroupStateWithoutRoot() throws IOException {
+        String zoneGroups = ZONE_GROUP_STATE.replace("<ZoneGroupState>", "").replace("</ZoneGroupState>", "");
+        assertEquals(2, EventParser.parseZoneGroupState(zoneGroups).getGroups().size());
+    }
+
+    @Test
+    public void parseEmptyZoneGroupState() throws IOException {
+        assertTrue(EventParser.parseZoneGroupState("<ZoneGroups/>").getGroups().isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void parseInvalidZoneGroupState() throws IOException {
+        EventParser.parseZoneGroupState("<ZoneGroups><ZoneGroup></ZoneGroups>");
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
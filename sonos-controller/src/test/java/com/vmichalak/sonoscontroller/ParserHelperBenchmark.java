@@ -0,0 +1,79 @@
+package com.vmichalak.sonoscontroller;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extraction of the 33 fields of /status/zp: {@link ParserHelper#findAll(String, String...)} against the former
+ * regex per field compiled on every call, and against the same regexes served by the pattern cache.
+ * Run with main(), it isn't part of the unit tests.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class ParserHelperBenchmark {
+    private static final String[] TAGS = {
+            "ZoneName", "ZoneIcon", "Configuration", "LocalUID", "SerialNumber", "SoftwareVersion", "SoftwareDate",
+            "SoftwareScm", "MinCompatibleVersion", "LegacyCompatibleVersion", "HardwareVersion", "DspVersion",
+            "HwFlags", "HwFeatures", "Variant", "GeneralFlags", "IPAddress", "MACAddress", "Copyright", "ExtraInfo",
+            "HTAudioInCode", "IdxTrk", "MDP2Ver", "MDP3Ver", "RelBuild", "WhitelistBuild", "ProdUnit", "FuseCfg",
+            "RevokeFuse", "AuthFlags", "SwFeatures", "RegState", "CustomerID"
+    };
+
+    @Benchmark
+    public Map<String, String> findAll() {
+        return ParserHelper.findAll(ParserHelperTest.STATUS_ZP, TAGS);
+    }
+
+    @Benchmark
+    public Map<String, String> cachedRegexPerField() {
+        Map<String, String> values = new HashMap<String, String>();
+        for (String tag : TAGS) {
+            values.put(tag, ParserHelper.findOne("<" + tag + ">(.*)</" + tag + ">", ParserHelperTest.STATUS_ZP));
+        }
+        return values;
+    }
+
+    @Benchmark
+    public Map<String, String> compiledRegexPerField() {
+        Map<String, String> values = new HashMap<String, String>();
+        for (String tag : TAGS) {
+            values.put(tag, legacyFindOne("<" + tag + ">(.*)</" + tag + ">", ParserHelperTest.STATUS_ZP));
+        }
+        return values;
+    }
+
+    /**
+     * ParserHelper.findOne before the pattern cache.
+     */
+    private static String legacyFindOne(String regex, String content) {
+        Matcher matcher = Pattern.compile(regex).matcher(content);
+        if (!matcher.find()) { return null; }
+        return matcher.group(1);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ParserHelperBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,144 @@
+package com.vmichalak.sonoscontroller;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ParserHelperTest {
+    /**
+     * Abridged /status/zp document of a speaker.
+     */
+    static final String STATUS_ZP = "<?xml version=\"1.0\" ?>"
+            + "<?xml-stylesheet type=\"text/xsl\" href=\"/xml/review.xsl\"?>"
+            + "<ZPSupportInfo><ZPInfo><ZoneName>Living Room</ZoneName><ZoneIcon>x-rincon-roomicon:living</ZoneIcon>"
+            + "<Configuration>1</Configuration><LocalUID>RINCON_000E58A0123401400</LocalUID>"
+            + "<SerialNumber>00-0E-58-A0-12-34:F</SerialNumber><SoftwareVersion>45.1-56150</SoftwareVersion>"
+            + "<SoftwareDate>2018-07-25 21:07:08.993574</SoftwareDate><SoftwareScm>1001161</SoftwareScm>"
+            + "<MinCompatibleVersion>44.0-00000</MinCompatibleVersion>"
+            + "<LegacyCompatibleVersion>25.0-00000</LegacyCompatibleVersion>"
+            + "<HardwareVersion>1.8.1.2-1</HardwareVersion><DspVersion>0.25.3</DspVersion><HwFlags>0x30</HwFlags>"
+            + "<HwFeatures>0x0</HwFeatures><Variant>0</Variant><GeneralFlags>0x0</GeneralFlags>"
+            + "<IPAddress>192.168.1.42</IPAddress><MACAddress>00:0E:58:A0:12:34</MACAddress>"
+            + "<Copyright>&#169; 2003-2018, Sonos, Inc. All rights reserved.</Copyright><ExtraInfo></ExtraInfo>"
+            + "<HTAudioInCode>0</HTAudioInCode><IdxTrk></IdxTrk><MDP2Ver>3</MDP2Ver><MDP3Ver>2</MDP3Ver>"
+            + "<RelBuild>1</RelBuild><WhitelistBuild>0x0</WhitelistBuild><ProdUnit>1</ProdUnit>"
+            + "<FuseCfg>OK</FuseCfg><RevokeFuse>0x1</RevokeFuse><AuthFlags>0x0</AuthFlags>"
+            + "<SwFeatures>0x0</SwFeatures><RegState>3</RegState><CustomerID>1234567</CustomerID>"
+            + "</ZPInfo></ZPSupportInfo>";
+
+    @Test
+    public void findOne() {
+        assertEquals("Living Room", ParserHelper.findOne("<ZoneName>(.*)</ZoneName>", STATUS_ZP));
+        assertNull(ParserHelper.findOne("<Unknown>(.*)</Unknown>", STATUS_ZP));
+    }
+
+    @Test
+    public void findAllOnOneLine() {
+        Map<String, String> values = ParserHelper.findAll(STATUS_ZP, "ZoneName", "LocalUID", "CustomerID");
+        assertEquals(3, values.size());
+        assertEquals("Living Room", values.get("ZoneName"));
+        assertEquals("RINCON_000E58A0123401400", values.get("LocalUID"));
+        assertEquals("1234567", values.get("CustomerID"));
+    }
+
+    @Test
+    public void findAllKeepsFirstOfRepeatedTags() {
+        Map<String, String> values = ParserHelper.findAll("<a>1</a><b>2</b><a>3</a><b>4</b>", "a", "b");
+        assertEquals("1", values.get("a"));
+        assertEquals("2", values.get("b"));
+    }
+
+    @Test
+    public void findAllIgnoresTagsWithSamePrefix() {
+        Map<String, String> values = ParserHelper.findAll("<ab>1</ab><a>2</a>", "a");
+        assertEquals("2", values.get("a"));
+    }
+
+    @Test
+    public void findAllWithAttributes() {
+        assertEquals("2", ParserHelper.findAll("<a x=\"1\">2</a>", "a").get("a"));
+    }
+
+    @Test
+    public void findAllSelfClosingIsEmpty() {
+        Map<String, String> values = ParserHelper.findAll("<x/><y /><z>1</z>", "x", "y", "z");
+        assertEquals("", values.get("x"));
+        assertEquals("", values.get("y"));
+        assertEquals("1", values.get("z"));
+    }
+
+    @Test
+    public void findAllEmptyElement() {
+        assertEquals("", ParserHelper.findAll(STATUS_ZP, "ExtraInfo").get("ExtraInfo"));
+    }
+
+    @Test
+    public void findAllUnescapesEntities() {
+        Map<String, String> values = ParserHelper.findAll("<a>&lt;b&gt; &amp; &quot;c&quot; &apos;d&apos;</a>"
+                + "<e>&amp;lt;</e>", "a", "e");
+        assertEquals("<b> & \"c\" 'd'", values.get("a"));
+        assertEquals("&lt;", values.get("e"));
+    }
+
+    @Test
+    public void findAllSkipsUnclosedElement() {
+        Map<String, String> values = ParserHelper.findAll("<a>1<b>2</b><c>3</c>", "a", "b", "c");
+        assertFalse(values.containsKey("a"));
+        assertEquals("2", values.get("b"));
+        assertEquals("3", values.get("c"));
+    }
+
+    @Test
+    public void findAllTruncatedDocument() {
+        Map<String, String> values = ParserHelper.findAll("<a>1</a><b", "a", "b");
+        assertEquals("1", values.get("a"));
+        assertFalse(values.containsKey("b"));
+    }
+
+    @Test
+    public void findAllAbsentElements() {
+        assertTrue(ParserHelper.findAll("", "a").isEmpty());
+        assertTrue(ParserHelper.findAll("no markup", "a").isEmpty());
+    }
+
+    @Test
+    public void concurrentCallsGiveSameResults() throws Exception {
+        final Map<String, String> expected = ParserHelper.findAll(STATUS_ZP, "ZoneName", "LocalUID", "MACAddress");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int t = 0; t < 8; t++) {
+                final int thread = t;
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        for (int i = 0; i < 2000; i++) {
+                            // distinct regexes per thread and iteration fill the pattern cache concurrently
+                            String regex = "<ZoneName>(.*)</ZoneName>" + "|<T" + thread + "_" + (i % 50) + ">(.*)<";
+                            if (!"Living Room".equals(ParserHelper.findOne(regex, STATUS_ZP))) { return false; }
+                            Map<String, String> values =
+                                    ParserHelper.findAll(STATUS_ZP, "ZoneName", "LocalUID", "MACAddress");
+                            if (!expected.equals(values)) { return false; }
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) { assertTrue(result.get()); }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+}
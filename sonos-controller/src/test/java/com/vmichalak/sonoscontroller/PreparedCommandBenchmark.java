@@ -0,0 +1,71 @@
+package com.vmichalak.sonoscontroller;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Envelope encoding by {@link PreparedCommand} against the former string concatenation.
+ * Run with main(), it isn't part of the unit tests.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PreparedCommandBenchmark {
+    private static final String SERVICE = "urn:schemas-upnp-org:service:AVTransport:1";
+
+    @Param({ "Play", "SetAVTransportURI" })
+    public String action;
+
+    private Map<String, String> arguments;
+
+    @Setup
+    public void setUp() {
+        this.arguments = new LinkedHashMap<String, String>();
+        this.arguments.put("InstanceID", "0");
+        if ("Play".equals(this.action)) {
+            this.arguments.put("Speed", "1");
+            return;
+        }
+        this.arguments.put("CurrentURI", "x-sonos-spotify:spotify%3atrack%3a4uLU6hMCjMI75M1A2tKUQC?sid=9&flags=8224");
+        this.arguments.put("CurrentURIMetaData", "<DIDL-Lite xmlns:dc=\"http://purl.org/dc/elements/1.1/\""
+                + " xmlns:upnp=\"urn:schemas-upnp-org:metadata-1-0/upnp/\""
+                + " xmlns=\"urn:schemas-upnp-org:metadata-1-0/DIDL-Lite/\"><item id=\"10032020\" restricted=\"true\">"
+                + "<dc:title>Never Gonna Give You Up</dc:title>"
+                + "<upnp:class>object.item.audioItem.musicTrack</upnp:class>"
+                + "<desc id=\"cdudn\" nameSpace=\"urn:schemas-rinconnetworks-com:metadata-1-0/\">"
+                + "SA_RINCON2311_X_#Svc2311-0-Token</desc></item></DIDL-Lite>");
+    }
+
+    @Benchmark
+    public byte[] preparedCommand() {
+        return PreparedCommand.of(SERVICE, this.action).encode(this.arguments);
+    }
+
+    @Benchmark
+    public byte[] stringConcatenation() {
+        return PreparedCommandTest.legacyEnvelope(SERVICE, this.action, this.arguments);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PreparedCommandBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,108 @@
+package com.vmichalak.sonoscontroller;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PreparedCommandTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String SERVICE = "urn:schemas-upnp-org:service:AVTransport:1";
+
+    @Test
+    public void sameEnvelopeAsStringConcatenation() {
+        Map<String, String> arguments = new LinkedHashMap<String, String>();
+        arguments.put("InstanceID", "0");
+        arguments.put("CurrentURI", "x-rincon-mp3radio://example.com/stream?a=1&b=2");
+        arguments.put("CurrentURIMetaData", "<DIDL-Lite xmlns:dc=\"http://purl.org/dc/elements/1.1/\">"
+                + "<dc:title>Rock 'n' Roll</dc:title></DIDL-Lite>");
+        byte[] expected = legacyEnvelope(SERVICE, "SetAVTransportURI", arguments);
+        byte[] actual = PreparedCommand.of(SERVICE, "SetAVTransportURI").encode(arguments);
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void sameEnvelopeWithoutArguments() {
+        Map<String, String> arguments = new LinkedHashMap<String, String>();
+        assertArrayEquals(legacyEnvelope(SERVICE, "Stop", arguments),
+                PreparedCommand.of(SERVICE, "Stop").encode(arguments));
+    }
+
+    @Test
+    public void escapeSpecialCharacters() {
+        assertEquals("<v>&amp;&lt;&gt;&quot;&apos;</v>", body("&<>\"'"));
+        assertEquals("<v>a &amp;amp; b</v>", body("a &amp; b"));
+    }
+
+    @Test
+    public void encodeUtf8() {
+        assertEquals("<v>Café Zürich ♫ 🎵</v>", body("Café Zürich ♫ 🎵"));
+    }
+
+    @Test
+    public void replaceLoneSurrogate() {
+        assertEquals("<v>a?b?</v>", body("a\uD83Cb\uDFB5"));
+    }
+
+    @Test
+    public void nullValueGivesEmptyElement() {
+        assertEquals("<v></v>", body(null));
+    }
+
+    @Test
+    public void encodeLongValue() {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 100000; i++) { value.append(i % 2 == 0 ? '&' : 'é'); }
+        Map<String, String> arguments = new LinkedHashMap<String, String>();
+        arguments.put("v", value.toString());
+        assertArrayEquals(legacyEnvelope(SERVICE, "Long", arguments),
+                PreparedCommand.of(SERVICE, "Long").encode(arguments));
+    }
+
+    private static String body(String value) {
+        Map<String, String> arguments = new LinkedHashMap<String, String>();
+        arguments.put("v", value);
+        String envelope = new String(PreparedCommand.of(SERVICE, "Test").encode(arguments), UTF_8);
+        return envelope.substring(envelope.indexOf("<v>"), envelope.indexOf("</u:Test>"));
+    }
+
+    /**
+     * Envelope as built by string concatenation before PreparedCommand.
+     */
+    static byte[] legacyEnvelope(String service, String action, Map<String, String> arguments) {
+        StringBuilder body = new StringBuilder();
+        for (Map.Entry<String, String> entry : arguments.entrySet()) {
+            String key = legacyEscape(entry.getKey());
+            body.append("<").append(key).append(">").append(legacyEscape(entry.getValue()))
+                    .append("</").append(key).append(">");
+        }
+        String content = "<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\""
+                + " s:encodingStyle=\"http://schemas.xmlsoap.org/soap/encoding/\"><s:Body>"
+                + "<u:" + action + " xmlns:u=\"" + service + "\">"
+                + body
+                + "</u:" + action + ">"
+                + "</s:Body></s:Envelope>";
+        return content.getBytes(UTF_8);
+    }
+
+    private static String legacyEscape(String value) {
+        if (value == null) { return null; }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&': sb.append("&amp;"); break;
+                case '<': sb.append("&lt;"); break;
+                case '>': sb.append("&gt;"); break;
+                case '"': sb.append("&quot;"); break;
+                case '\'': sb.append("&apos;"); break;
+                default: sb.append(c); break;
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,152 @@
+package com.vmichalak.sonoscontroller;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class ResponseParserTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void contentLength() throws IOException {
+        AsyncHttpTransport.Response response = parse("HTTP/1.1 200 OK\r\nCONTENT-LENGTH: 5\r\n"
+                + "Content-Type: text/xml\r\n\r\nhello", false);
+        assertEquals(200, response.getStatusCode());
+        assertEquals("hello", response.getBodyAsString());
+    }
+
+    @Test
+    public void contentLengthIgnoresTrailingBytes() throws IOException {
+        assertEquals("hel", parse("HTTP/1.1 200 OK\r\nContent-Length: 3\r\n\r\nhello", false).getBodyAsString());
+    }
+
+    @Test
+    public void contentLengthInBytes() throws IOException {
+        byte[] body = "Küche".getBytes(UTF_8);
+        String head = "HTTP/1.1 200 OK\r\nContent-Length: " + body.length + "\r\n\r\n";
+        assertEquals("Küche", parse(head + "Küche", false).getBodyAsString());
+        assertNull(parse(head + "Küch", false));
+    }
+
+    @Test
+    public void emptyBody() throws IOException {
+        AsyncHttpTransport.Response response = parse("HTTP/1.1 500 Internal Server Error\r\nContent-Length: 0\r\n\r\n",
+                false);
+        assertEquals(500, response.getStatusCode());
+        assertEquals(0, response.getBody().length);
+    }
+
+    @Test
+    public void incompleteHeaders() throws IOException {
+        assertNull(parse("HTTP/1.1 200 OK\r\nContent-Len", false));
+        assertNull(parse("HTTP/1.1 200 OK\r\nContent-Length: 5\r\n", false));
+    }
+
+    @Test
+    public void incompleteContentLengthBody() throws IOException {
+        assertNull(parse("HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nhel", false));
+        // the caller fails the exchange when the connection closed before the end
+        assertNull(parse("HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nhel", true));
+    }
+
+    @Test
+    public void chunked() throws IOException {
+        AsyncHttpTransport.Response response = parse("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "5\r\nhello\r\n"
+                + "1;ext=1\r\n \r\n"
+                + "A\r\n0123456789\r\n"
+                + "0\r\n\r\n", false);
+        assertEquals(200, response.getStatusCode());
+        assertEquals("hello 0123456789", response.getBodyAsString());
+    }
+
+    @Test
+    public void chunkedIsCaseInsensitive() throws IOException {
+        assertEquals("ab", parse("HTTP/1.1 200 OK\r\ntransfer-encoding: Chunked\r\n\r\n2\r\nab\r\n0\r\n\r\n", false)
+                .getBodyAsString());
+    }
+
+    @Test
+    public void chunkedWinsOverContentLength() throws IOException {
+        assertEquals("ab", parse("HTTP/1.1 200 OK\r\nContent-Length: 99\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "2\r\nab\r\n0\r\n\r\n", false).getBodyAsString());
+    }
+
+    @Test
+    public void incompleteChunked() throws IOException {
+        String head = "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n";
+        assertNull(parse(head, false));
+        assertNull(parse(head + "5", false));
+        assertNull(parse(head + "5\r\nhel", false));
+        assertNull(parse(head + "5\r\nhello", false));
+        assertNull(parse(head + "5\r\nhello\r\n", false));
+        assertNotNull(parse(head + "5\r\nhello\r\n0\r\n", false));
+    }
+
+    @Test
+    public void closeDelimited() throws IOException {
+        String message = "HTTP/1.1 200 OK\r\nConnection: close\r\n\r\nhello";
+        assertNull(parse(message, false));
+        assertEquals("hello", parse(message, true).getBodyAsString());
+    }
+
+    @Test
+    public void incrementalParsing() throws IOException {
+        byte[] message = ("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "5\r\nhello\r\n6\r\n world\r\n0\r\n\r\n").getBytes(UTF_8);
+        for (int length = 0; length < message.length - 2; length++) {
+            assertNull("complete at " + length, AsyncHttpTransport.ResponseParser.tryParse(message, length, false));
+        }
+        assertEquals("hello world",
+                AsyncHttpTransport.ResponseParser.tryParse(message, message.length, false).getBodyAsString());
+    }
+
+    @Test
+    public void invalidStatusLine() {
+        assertMalformed("ICY 200 OK\r\n\r\n");
+        assertMalformed("HTTP/1.1\r\n\r\n");
+        assertMalformed("HTTP/1.1 -200 OK\r\n\r\n");
+        assertMalformed("HTTP/1.1 OK 200\r\n\r\n");
+    }
+
+    @Test
+    public void invalidContentLength() {
+        assertMalformed("HTTP/1.1 200 OK\r\nContent-Length: five\r\n\r\nhello");
+        assertMalformed("HTTP/1.1 200 OK\r\nContent-Length: -1\r\n\r\nhello");
+    }
+
+    @Test
+    public void invalidChunkSize() {
+        assertMalformed("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\nxyz\r\nhello\r\n0\r\n\r\n");
+        assertMalformed("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n-5\r\nhello\r\n0\r\n\r\n");
+    }
+
+    @Test
+    public void hugeChunkSizeWaitsForData() throws IOException {
+        assertNull(parse("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n7fffffff\r\nhello", false));
+    }
+
+    private static AsyncHttpTransport.Response parse(String message, boolean eof) throws IOException {
+        byte[] data = message.getBytes(UTF_8);
+        // the read buffer is usually larger than the received bytes
+        byte[] buffer = new byte[data.length + 16];
+        System.arraycopy(data, 0, buffer, 0, data.length);
+        return AsyncHttpTransport.ResponseParser.tryParse(buffer, data.length, eof);
+    }
+
+    private static void assertMalformed(String message) {
+        try {
+            parse(message, true);
+            fail("parsed: " + message);
+        }
+        catch (IOException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.vmichalak.sonoscontroller;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class SoapResponseReaderTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    static final String GET_VOLUME_RESPONSE = "<?xml version=\"1.0\"?>"
+            + "<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\""
+            + " s:encodingStyle=\"http://schemas.xmlsoap.org/soap/encoding/\"><s:Body>"
+            + "<u:GetVolumeResponse xmlns:u=\"urn:schemas-upnp-org:service:RenderingControl:1\">"
+            + "<CurrentVolume>23</CurrentVolume></u:GetVolumeResponse></s:Body></s:Envelope>";
+
+    static final String FAULT_RESPONSE = "<?xml version=\"1.0\"?>"
+            + "<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\""
+            + " s:encodingStyle=\"http://schemas.xmlsoap.org/soap/encoding/\"><s:Body><s:Fault>"
+            + "<faultcode>s:Client</faultcode><faultstring>UPnPError</faultstring><detail>"
+            + "<UPnPError xmlns=\"urn:schemas-upnp-org:control-1-0\"><errorCode>402</errorCode></UPnPError>"
+            + "</detail></s:Fault></s:Body></s:Envelope>";
+
+    @Test
+    public void readValue() throws IOException {
+        assertEquals("23", SoapResponseReader.readValue(stream(GET_VOLUME_RESPONSE), "CurrentVolume"));
+    }
+
+    @Test
+    public void readAbsentValue() throws IOException {
+        assertNull(SoapResponseReader.readValue(stream(GET_VOLUME_RESPONSE), "CurrentMute"));
+    }
+
+    @Test
+    public void readValuesFromString() throws IOException {
+        Map<String, String> values = SoapResponseReader.readValues(FAULT_RESPONSE, "faultstring", "errorCode");
+        assertEquals("UPnPError", values.get("faultstring"));
+        assertEquals("402", values.get("errorCode"));
+    }
+
+    @Test
+    public void enclosingElementIsEmpty() throws IOException {
+        Map<String, String> values = SoapResponseReader.readValues(FAULT_RESPONSE, "Fault", "errorCode");
+        assertEquals("", values.get("Fault"));
+        assertEquals("402", values.get("errorCode"));
+    }
+
+    @Test
+    public void emptyElement() throws IOException {
+        assertEquals("", SoapResponseReader.readValues("<r><a></a><b/></r>", "a", "b").get("a"));
+        assertEquals("", SoapResponseReader.readValues("<r><a></a><b/></r>", "a", "b").get("b"));
+    }
+
+    @Test
+    public void firstOfRepeatedElements() throws IOException {
+        assertEquals("1", SoapResponseReader.readValues("<r><a>1</a><a>2</a></r>", "a").get("a"));
+    }
+
+    @Test
+    public void unescapeEntities() throws IOException {
+        String didl = "&lt;DIDL-Lite&gt;&lt;dc:title&gt;Rock &amp;amp; Roll&lt;/dc:title&gt;&lt;/DIDL-Lite&gt;";
+        Map<String, String> values = SoapResponseReader.readValues(
+                "<r><Result>" + didl + "</Result><q>&quot;x&quot; &apos;y&apos; &#169;</q></r>", "Result", "q");
+        assertEquals("<DIDL-Lite><dc:title>Rock &amp; Roll</dc:title></DIDL-Lite>", values.get("Result"));
+        assertEquals("\"x\" 'y' ©", values.get("q"));
+    }
+
+    @Test
+    public void readEncodingFromDeclaration() throws IOException {
+        byte[] body = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><r><a>Café</a></r>"
+                .getBytes(Charset.forName("ISO-8859-1"));
+        assertEquals("Café", SoapResponseReader.readValue(new ByteArrayInputStream(body), "a"));
+    }
+
+    @Test
+    public void stopOnceEveryValueIsRead() throws IOException {
+        // the malformed tail is never parsed
+        String response = "<r><a>1</a><b>2</b><<< not xml";
+        Map<String, String> values = SoapResponseReader.readValues(response, "a", "b");
+        assertEquals("1", values.get("a"));
+        assertEquals("2", values.get("b"));
+    }
+
+    @Test
+    public void stopReadingTheStreamOnceEveryValueIsRead() throws IOException {
+        StringBuilder tail = new StringBuilder();
+        for (int i = 0; i < 100000; i++) { tail.append("<c>").append(i).append("</c>"); }
+        CountingInputStream in = new CountingInputStream(stream("<r><a>1</a>" + tail + "</r>"));
+        assertEquals("1", SoapResponseReader.readValue(in, "a"));
+        assertFalse("whole stream read", in.count == in.length);
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidXml() throws IOException {
+        SoapResponseReader.readValues("<r><a>1</b></r>", "a");
+    }
+
+    @Test
+    public void textOnlyHasNoValue() throws IOException {
+        assertNull(SoapResponseReader.readValue(stream("Internal Server Error"), "a"));
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(UTF_8));
+    }
+
+    private static final class CountingInputStream extends InputStream {
+        private final InputStream in;
+        private final int length;
+        private int count = 0;
+
+        private CountingInputStream(InputStream in) throws IOException {
+            this.in = in;
+            this.length = in.available();
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = this.in.read();
+            if (b >= 0) { this.count++; }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = this.in.read(buffer, offset, length);
+            if (read > 0) { this.count += read; }
+            return read;
+        }
+    }
+}
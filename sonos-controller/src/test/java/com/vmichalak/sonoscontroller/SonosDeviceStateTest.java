@@ -0,0 +1,96 @@
+package com.vmichalak.sonoscontroller;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SonosDeviceStateTest {
+    private final SonosDevice device = new SonosDevice("192.168.1.10");
+    private final SonosDeviceState state = new SonosDeviceState(device);
+    private final List<String> events = new ArrayList<String>();
+
+    private final SonosEventListener failing = new SonosEventAdapter() {
+        @Override
+        public void onPlayStateChanged(SonosDevice device, PlayState playState) {
+            throw new IllegalStateException();
+        }
+
+        @Override
+        public void onVolumeChanged(SonosDevice device, int volume) {
+            throw new IllegalStateException();
+        }
+
+        @Override
+        public void onZoneGroupStateChanged(SonosDevice device, String zoneGroupState) {
+            throw new IllegalStateException();
+        }
+    };
+
+    private final SonosEventListener recording = new SonosEventAdapter() {
+        @Override
+        public void onPlayStateChanged(SonosDevice device, PlayState playState) {
+            events.add("playState=" + playState);
+        }
+
+        @Override
+        public void onVolumeChanged(SonosDevice device, int volume) {
+            events.add("volume=" + volume);
+        }
+
+        @Override
+        public void onMuteChanged(SonosDevice device, boolean muted) {
+            events.add("muted=" + muted);
+        }
+
+        @Override
+        public void onNightModeChanged(SonosDevice device, boolean nightMode) {
+            events.add("nightMode=" + nightMode);
+        }
+
+        @Override
+        public void onZoneGroupStateChanged(SonosDevice device, String zoneGroupState) {
+            events.add("zoneGroupState");
+        }
+    };
+
+    @Test
+    public void failingListenerDoesNotStopTheUpdate() {
+        Map<String, String> variables = new HashMap<String, String>();
+        variables.put("TransportState", "PLAYING");
+        variables.put("Volume", "23");
+        variables.put("Mute", "1");
+        variables.put("NightMode", "1");
+        this.state.update(variables, Arrays.asList(this.failing, this.recording));
+
+        assertEquals(PlayState.PLAYING, this.state.getPlayState());
+        assertEquals(Integer.valueOf(23), this.state.getVolume());
+        assertEquals(Boolean.TRUE, this.state.isMuted());
+        assertEquals(Boolean.TRUE, this.state.isNightModeActivated());
+        assertEquals(Arrays.asList("playState=PLAYING", "volume=23", "muted=true", "nightMode=true"), this.events);
+    }
+
+    @Test
+    public void unchangedValuesAreNotNotified() {
+        Map<String, String> variables = new HashMap<String, String>();
+        variables.put("Volume", "23");
+        variables.put("NightMode", "0");
+        this.state.update(variables, Arrays.asList(this.recording));
+        this.events.clear();
+        this.state.update(variables, Arrays.asList(this.recording));
+        assertTrue(this.events.isEmpty());
+    }
+
+    @Test
+    public void failingListenerDoesNotStopTheZoneGroupState() {
+        this.state.updateZoneGroupState("<ZoneGroups/>", Arrays.asList(this.failing, this.recording));
+        assertEquals("<ZoneGroups/>", this.state.getZoneGroupState());
+        assertEquals(Arrays.asList("zoneGroupState"), this.events);
+    }
+}
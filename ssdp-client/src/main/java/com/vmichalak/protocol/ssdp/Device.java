@@ -1,52 +1,79 @@
 package com.vmichalak.protocol.ssdp;
 
 import java.net.DatagramPacket;
-import java.util.HashMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Represent a Device discovered by SSDP.
  */
 public class Device {
+    /**
+     * Value of {@link #getMaxAge()} when the response didn't carry a CACHE-CONTROL max-age directive.
+     */
+    public static final int UNKNOWN_MAX_AGE = -1;
+
     private final String ip;
     private final String descriptionUrl;
     private final String server;
     private final String serviceType;
     private final String usn;
+    private final int maxAge;
+    private final String bootId;
+    private final String configId;
 
     public Device(String ip, String descriptionUrl, String server, String serviceType, String usn) {
+        this(ip, descriptionUrl, server, serviceType, usn, UNKNOWN_MAX_AGE);
+    }
+
+    public Device(String ip, String descriptionUrl, String server, String serviceType, String usn, int maxAge) {
+        this(ip, descriptionUrl, server, serviceType, usn, maxAge, null, null);
+    }
+
+    public Device(String ip, String descriptionUrl, String server, String serviceType, String usn, int maxAge,
+                  String bootId, String configId) {
         this.ip = ip;
         this.descriptionUrl = descriptionUrl;
         this.server = server;
         this.serviceType = serviceType;
         this.usn = usn;
+        this.maxAge = maxAge;
+        this.bootId = bootId;
+        this.configId = configId;
     }
 
     /**
-     * Instantiate a new Device Object from a SSDP discovery response packet.
+     * Instantiate a new Device Object from a SSDP discovery response or NOTIFY packet.
      * @param ssdpResult SSDP Discovery Response packet.
      * @return Device
      */
     public static Device parse(DatagramPacket ssdpResult) {
-        HashMap<String, String> headers = new HashMap<String, String>();
-        Pattern pattern = Pattern.compile("(.*): (.*)");
-
-        String[] lines = new String(ssdpResult.getData()).split("\r\n");
+        return parse(ssdpResult.getAddress().getHostAddress(),
+                ssdpResult.getData(), ssdpResult.getOffset(), ssdpResult.getLength());
+    }
 
-        for (String line : lines) {
-            Matcher matcher = pattern.matcher(line);
-            if(matcher.matches()) {
-                headers.put(matcher.group(1).toUpperCase(), matcher.group(2));
-            }
-        }
+    /**
+     * Instantiate a new Device Object from the bytes of a SSDP discovery response or NOTIFY message.
+     * Only the bytes between offset and offset + length are read.
+     * @param ip address of the sender
+     * @param data packet buffer
+     * @param offset start of the message in the buffer
+     * @param length length of the message
+     * @return Device
+     */
+    public static Device parse(String ip, byte[] data, int offset, int length) {
+        return fromHeaders(ip, SSDPHeaders.scan(data, offset, length));
+    }
 
+    static Device fromHeaders(String ip, SSDPHeaders headers) {
+        // NOTIFY messages carry the type in NT instead of ST
         return new Device(
-                ssdpResult.getAddress().getHostAddress(),
-                headers.get("LOCATION"),
-                headers.get("SERVER"),
-                headers.get("ST"),
-                headers.get("USN"));
+                ip,
+                headers.location,
+                headers.server,
+                headers.st != null ? headers.st : headers.nt,
+                headers.usn,
+                headers.maxAge,
+                headers.bootId,
+                headers.configId);
     }
 
     public String getIPAddress() {
@@ -69,6 +96,37 @@ public class Device {
         return usn;
     }
 
+    /**
+     * @return the device UUID extracted from the USN (e.g. "RINCON_000E58XXXXXX01400"), null if there is none
+     */
+    public String getUUID() {
+        if (usn == null || !usn.startsWith("uuid:")) { return null; }
+        int end = usn.indexOf("::");
+        return end < 0 ? usn.substring(5) : usn.substring(5, end);
+    }
+
+    /**
+     * @return validity of the advertisement in seconds, {@link #UNKNOWN_MAX_AGE} if not advertised
+     */
+    public int getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * @return value of BOOTID.UPNP.ORG (or Sonos X-RINCON-BOOTSEQ), changes each time the device reboots;
+     * null if not advertised
+     */
+    public String getBootId() {
+        return bootId;
+    }
+
+    /**
+     * @return value of CONFIGID.UPNP.ORG, changes each time the device description changes; null if not advertised
+     */
+    public String getConfigId() {
+        return configId;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -81,6 +139,8 @@ public class Device {
             return false;
         if (server != null ? !server.equals(device.server) : device.server != null) return false;
         if (serviceType != null ? !serviceType.equals(device.serviceType) : device.serviceType != null) return false;
+        if (bootId != null ? !bootId.equals(device.bootId) : device.bootId != null) return false;
+        if (configId != null ? !configId.equals(device.configId) : device.configId != null) return false;
         return usn != null ? usn.equals(device.usn) : device.usn == null;
 
     }
@@ -92,6 +152,8 @@ public class Device {
         result = 31 * result + (server != null ? server.hashCode() : 0);
         result = 31 * result + (serviceType != null ? serviceType.hashCode() : 0);
         result = 31 * result + (usn != null ? usn.hashCode() : 0);
+        result = 31 * result + (bootId != null ? bootId.hashCode() : 0);
+        result = 31 * result + (configId != null ? configId.hashCode() : 0);
         return result;
     }
 
@@ -103,6 +165,8 @@ public class Device {
                 ", server='" + server + '\'' +
                 ", serviceType='" + serviceType + '\'' +
                 ", usn='" + usn + '\'' +
+                ", bootId='" + bootId + '\'' +
+                ", configId='" + configId + '\'' +
                 '}';
     }
 }
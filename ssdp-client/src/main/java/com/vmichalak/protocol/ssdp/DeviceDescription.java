@@ -0,0 +1,107 @@
+package com.vmichalak.protocol.ssdp;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Root device description downloaded from the LOCATION URL of a SSDP advertisement.
+ */
+public class DeviceDescription {
+    private final Map<String, String> properties;
+
+    public DeviceDescription(Map<String, String> properties) {
+        this.properties = Collections.unmodifiableMap(new HashMap<String, String>(properties));
+    }
+
+    /**
+     * Parse a UPnP device description with a streaming parser. Only the simple elements of the root device are kept;
+     * embedded devices and service lists are skipped and the parsing stops at the end of the root device.
+     * @param in description XML
+     * @return DeviceDescription
+     * @throws IOException
+     */
+    public static DeviceDescription parse(InputStream in) throws IOException {
+        HashMap<String, String> properties = new HashMap<String, String>();
+        try {
+            XmlPullParser parser = XmlPullParserFactory.newInstance().newPullParser();
+            parser.setInput(in, null);
+            int event = parser.getEventType();
+            String name = null;
+            String text = null;
+            // <root> is depth 1, the root <device> is depth 2, its properties are depth 3
+            while (event != XmlPullParser.END_DOCUMENT) {
+                if (event == XmlPullParser.START_TAG) {
+                    name = parser.getDepth() == 3 ? parser.getName() : null;
+                    text = null;
+                }
+                else if (event == XmlPullParser.TEXT && name != null) {
+                    text = parser.getText();
+                }
+                else if (event == XmlPullParser.END_TAG) {
+                    if (name != null) { properties.put(name, text == null ? "" : text.trim()); }
+                    name = null;
+                    if (parser.getDepth() == 2 && "device".equals(parser.getName())) { break; }
+                }
+                event = parser.next();
+            }
+        }
+        catch (XmlPullParserException e) {
+            throw new IOException("Invalid device description: " + e.getMessage());
+        }
+        return new DeviceDescription(properties);
+    }
+
+    /**
+     * @param name element name in the root device, e.g. "roomName" for Sonos players
+     * @return element text, null if absent
+     */
+    public String getProperty(String name) {
+        return properties.get(name);
+    }
+
+    public Map<String, String> getProperties() {
+        return properties;
+    }
+
+    public String getDeviceType() {
+        return properties.get("deviceType");
+    }
+
+    public String getFriendlyName() {
+        return properties.get("friendlyName");
+    }
+
+    public String getManufacturer() {
+        return properties.get("manufacturer");
+    }
+
+    public String getModelName() {
+        return properties.get("modelName");
+    }
+
+    public String getModelNumber() {
+        return properties.get("modelNumber");
+    }
+
+    public String getSerialNumber() {
+        return properties.get("serialNum");
+    }
+
+    public String getUDN() {
+        return properties.get("UDN");
+    }
+
+    @Override
+    public String toString() {
+        return "DeviceDescription{" +
+                "properties=" + properties +
+                '}';
+    }
+}
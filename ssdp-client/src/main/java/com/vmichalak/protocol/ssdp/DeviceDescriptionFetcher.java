@@ -0,0 +1,179 @@
+package com.vmichalak.protocol.ssdp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Download the description (LOCATION URL) of discovered devices concurrently, with a bounded parallelism.
+ * Descriptions are cached by USN, BOOTID and CONFIGID: as long as a device doesn't reboot or change its
+ * configuration, repeated discoveries cost no extra HTTP request. Only the latest BOOTID and CONFIGID of each USN
+ * are kept, so reboots don't grow the cache.
+ */
+public class DeviceDescriptionFetcher implements DiscoveryListener {
+    private static final int DEFAULT_PARALLELISM = 4;
+    private static final int DEFAULT_TIMEOUT     = 2000;
+
+    private final ExecutorService executor;
+    private final int timeout;
+    private final ConcurrentHashMap<String, Future<DeviceDescription>> cache =
+            new ConcurrentHashMap<String, Future<DeviceDescription>>();
+    // latest cache key of each USN
+    private final ConcurrentHashMap<String, String> latestKeys = new ConcurrentHashMap<String, String>();
+
+    public DeviceDescriptionFetcher() {
+        this(DEFAULT_PARALLELISM, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * @param parallelism maximum number of descriptions downloaded at the same time
+     * @param timeout connect and read timeout in milliseconds
+     */
+    public DeviceDescriptionFetcher(int parallelism, int timeout) {
+        this.timeout = timeout;
+        this.executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ssdp-description-fetcher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Start downloading the description of a device, unless it is already cached or being downloaded.
+     * @param device discovered device
+     * @return the pending or cached description, cancelled if it isn't cached and the fetcher is shut down
+     */
+    public Future<DeviceDescription> fetch(final Device device) {
+        final String key = cacheKey(device);
+        Future<DeviceDescription> future = cache.get(key);
+        if (future != null) { return future; }
+        FutureTask<DeviceDescription> task = new FutureTask<DeviceDescription>(new Callable<DeviceDescription>() {
+            @Override
+            public DeviceDescription call() throws IOException {
+                return download(device.getDescriptionUrl());
+            }
+        }) {
+            @Override
+            protected void done() {
+                // don't cache failures, the next discovery tries again
+                try { get(); }
+                catch (InterruptedException e) { cache.remove(key, this); }
+                catch (ExecutionException e) { cache.remove(key, this); }
+                catch (CancellationException e) { cache.remove(key, this); }
+            }
+        };
+        future = cache.putIfAbsent(key, task);
+        if (future != null) { return future; }
+        // the device rebooted or changed its configuration: its previous description is obsolete
+        String previousKey = latestKeys.put(deviceId(device), key);
+        if (previousKey != null && !previousKey.equals(key)) { cache.remove(previousKey); }
+        try { executor.execute(task); }
+        catch (RejectedExecutionException e) {
+            // shut down: the task would never run, cancelling it also removes it from the cache
+            task.cancel(false);
+        }
+        return task;
+    }
+
+    /**
+     * Download the descriptions of several devices concurrently and wait for all of them.
+     * Devices whose description couldn't be downloaded are left out.
+     * @param devices discovered devices
+     * @return descriptions by device
+     * @throws InterruptedException
+     */
+    public Map<Device, DeviceDescription> fetchAll(Collection<Device> devices) throws InterruptedException {
+        LinkedHashMap<Device, Future<DeviceDescription>> pending =
+                new LinkedHashMap<Device, Future<DeviceDescription>>();
+        for (Device device : devices) { pending.put(device, fetch(device)); }
+        LinkedHashMap<Device, DeviceDescription> result = new LinkedHashMap<Device, DeviceDescription>();
+        for (Map.Entry<Device, Future<DeviceDescription>> entry : pending.entrySet()) {
+            try { result.put(entry.getKey(), entry.getValue().get()); }
+            catch (ExecutionException e) { /* unreachable device, left out */ }
+            catch (CancellationException e) { /* fetcher shut down, left out */ }
+        }
+        return result;
+    }
+
+    /**
+     * @param device discovered device
+     * @return the cached description, null if it isn't downloaded yet or the download failed
+     */
+    public DeviceDescription getCached(Device device) {
+        Future<DeviceDescription> future = cache.get(cacheKey(device));
+        if (future == null || !future.isDone()) { return null; }
+        try { return future.get(); }
+        catch (InterruptedException e) { Thread.currentThread().interrupt(); return null; }
+        catch (ExecutionException e) { return null; }
+        catch (CancellationException e) { return null; }
+    }
+
+    /**
+     * Prefetch the description of each device as soon as a search reports it.
+     */
+    @Override
+    public void onDeviceDiscovered(Device device) {
+        fetch(device);
+    }
+
+    @Override
+    public void onDiscoveryFinished() { }
+
+    public void clearCache() {
+        cache.clear();
+        latestKeys.clear();
+    }
+
+    /**
+     * Stop the downloads. Downloads still queued are cancelled, so nobody waits for them.
+     */
+    public void shutdown() {
+        for (Runnable task : executor.shutdownNow()) {
+            if (task instanceof Future) { ((Future<?>) task).cancel(false); }
+        }
+    }
+
+    private DeviceDescription download(String location) throws IOException {
+        if (location == null) { throw new IOException("Device has no LOCATION"); }
+        HttpURLConnection connection = (HttpURLConnection) new URL(location).openConnection();
+        connection.setConnectTimeout(timeout);
+        connection.setReadTimeout(timeout);
+        InputStream in = null;
+        try {
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP " + connection.getResponseCode() + " received from " + location);
+            }
+            in = connection.getInputStream();
+            return DeviceDescription.parse(in);
+        }
+        finally {
+            if (in != null) { in.close(); }
+            connection.disconnect();
+        }
+    }
+
+    private static String cacheKey(Device device) {
+        return deviceId(device) + "|" + device.getBootId() + "|" + device.getConfigId();
+    }
+
+    private static String deviceId(Device device) {
+        return device.getUSN() != null ? device.getUSN() : device.getDescriptionUrl();
+    }
+}
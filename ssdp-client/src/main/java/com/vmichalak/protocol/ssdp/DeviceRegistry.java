@@ -0,0 +1,141 @@
+package com.vmichalak.protocol.ssdp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread-safe registry of advertised devices, keyed by USN.
+ * Entries expire after the CACHE-CONTROL max-age announced by the device.
+ */
+public class DeviceRegistry {
+    /**
+     * Max-age used when a device doesn't announce one (UPnP Device Architecture minimum recommendation).
+     */
+    public static final int DEFAULT_MAX_AGE = 1800;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final List<DeviceRegistryListener> listeners = new CopyOnWriteArrayList<DeviceRegistryListener>();
+
+    /**
+     * Add or refresh a device.
+     * @param device device announced by ssdp:alive or found by M-SEARCH
+     */
+    public void put(Device device) {
+        if (device.getUSN() == null) { return; }
+        int maxAge = device.getMaxAge() == Device.UNKNOWN_MAX_AGE ? DEFAULT_MAX_AGE : device.getMaxAge();
+        long expiresAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(maxAge);
+        Entry previous = entries.put(device.getUSN(), new Entry(device, expiresAt));
+        if (previous == null || previous.isExpired() || !previous.device.equals(device)) {
+            for (DeviceRegistryListener listener : listeners) { listener.onDeviceAdded(device); }
+        }
+    }
+
+    /**
+     * Remove a device, typically on ssdp:byebye.
+     * @param usn Unique Service Name
+     * @return the removed device, null if unknown
+     */
+    public Device remove(String usn) {
+        if (usn == null) { return null; }
+        Entry entry = entries.remove(usn);
+        if (entry == null) { return null; }
+        for (DeviceRegistryListener listener : listeners) { listener.onDeviceRemoved(entry.device); }
+        return entry.device;
+    }
+
+    /**
+     * @param usn Unique Service Name
+     * @return the device if it is known and its advertisement hasn't expired, null otherwise
+     */
+    public Device get(String usn) {
+        Entry entry = entries.get(usn);
+        if (entry == null) { return null; }
+        if (entry.isExpired()) {
+            entries.remove(usn, entry);
+            return null;
+        }
+        return entry.device;
+    }
+
+    /**
+     * Find a live device by its UUID, whatever the service type of the advertisement.
+     * @param uuid device UUID, without the "uuid:" prefix
+     * @param serviceType if not null, only advertisements of this type match
+     * @return the device, null if there is no live advertisement
+     */
+    public Device findByUUID(String uuid, String serviceType) {
+        String prefix = "uuid:" + uuid;
+        for (Entry entry : entries.values()) {
+            String usn = entry.device.getUSN();
+            if (!usn.startsWith(prefix)) { continue; }
+            if (usn.length() != prefix.length() && !usn.startsWith("::", prefix.length())) { continue; }
+            if (serviceType != null && !serviceType.equals(entry.device.getServiceType())) { continue; }
+            if (!entry.isExpired()) { return entry.device; }
+        }
+        return null;
+    }
+
+    /**
+     * @param serviceType if null, all live devices are returned
+     * @return live devices advertising this service type
+     */
+    public List<Device> getDevices(String serviceType) {
+        ArrayList<Device> devices = new ArrayList<Device>();
+        for (Entry entry : entries.values()) {
+            if (entry.isExpired()) { continue; }
+            if (serviceType == null || serviceType.equals(entry.device.getServiceType())) {
+                devices.add(entry.device);
+            }
+        }
+        return Collections.unmodifiableList(devices);
+    }
+
+    /**
+     * Drop every expired advertisement.
+     */
+    public void evictExpired() {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Entry> entry = iterator.next();
+            if (entry.getValue().isExpired() && entries.remove(entry.getKey(), entry.getValue())) {
+                for (DeviceRegistryListener listener : listeners) { listener.onDeviceRemoved(entry.getValue().device); }
+            }
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void addListener(DeviceRegistryListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(DeviceRegistryListener listener) {
+        listeners.remove(listener);
+    }
+
+    private static class Entry {
+        private final Device device;
+        private final long expiresAt;
+
+        private Entry(Device device, long expiresAt) {
+            this.device = device;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired() {
+            return System.nanoTime() - expiresAt > 0;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.vmichalak.protocol.ssdp;
+
+/**
+ * Callback notified when the content of a {@link DeviceRegistry} changes.
+ */
+public interface DeviceRegistryListener {
+    /**
+     * Called when a device appears or its advertisement changed (new location, new server, ...).
+     * @param device advertised device
+     */
+    void onDeviceAdded(Device device);
+
+    /**
+     * Called when a device said goodbye or its advertisement expired.
+     * @param device removed device
+     */
+    void onDeviceRemoved(Device device);
+}
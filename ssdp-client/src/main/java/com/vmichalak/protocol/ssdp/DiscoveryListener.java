@@ -0,0 +1,18 @@
+package com.vmichalak.protocol.ssdp;
+
+/**
+ * Callback notified by a {@link SSDPSearch} while the search is running.
+ * Callbacks are invoked on the thread that drives the search.
+ */
+public interface DiscoveryListener {
+    /**
+     * Called as soon as a response has been received and parsed.
+     * @param device discovered device
+     */
+    void onDeviceDiscovered(Device device);
+
+    /**
+     * Called once when the search is over (timeout, expected count reached, cancelled or failed).
+     */
+    void onDiscoveryFinished();
+}
@@ -1,18 +1,15 @@
 package com.vmichalak.protocol.ssdp;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
-import java.net.SocketTimeoutException;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 /**
  * Client for discovering UPNP devices with SSDP (Simple Service Discovery Protocol).
  */
 public class SSDPClient {
+    static final String MULTICAST_ADDRESS = "239.255.255.250";
+    static final int    MULTICAST_PORT    = 1900;
+
     /**
      * Discover any UPNP device using SSDP (Simple Service Discovery Protocol).
      * @param timeout in milliseconds
@@ -22,66 +19,33 @@ public class SSDPClient {
      * @see <a href="https://en.wikipedia.org/wiki/Simple_Service_Discovery_Protocol">SSDP Wikipedia Page</a>
      */
     public static List<Device> discover(int timeout, String serviceType) throws IOException {
-        ArrayList<Device> devices = new ArrayList<Device>();
-        byte[] sendData;
-        byte[] receiveData = new byte[1024];
-
-        /* Create the search request */
-        StringBuilder msearch = new StringBuilder(
-                "M-SEARCH * HTTP/1.1\nHost: 239.255.255.250:1900\nMan: \"ssdp:discover\"\n");
-        if (serviceType == null) { msearch.append("ST: ssdp:all\n"); }
-        else { msearch.append("ST: ").append(serviceType).append("\n"); }
-
-        /* Send the request */
-        sendData = msearch.toString().getBytes();
-        DatagramPacket sendPacket = new DatagramPacket(
-                sendData, sendData.length, InetAddress.getByName("239.255.255.250"), 1900);
-        DatagramSocket clientSocket = new DatagramSocket();
-        clientSocket.setSoTimeout(timeout);
-        clientSocket.send(sendPacket);
-
-        /* Receive all responses */
-        while (true) {
-            try {
-                DatagramPacket receivePacket = new DatagramPacket(receiveData, receiveData.length);
-                clientSocket.receive(receivePacket);
-                devices.add(Device.parse(receivePacket));
-            }
-            catch (SocketTimeoutException e) { break; }
-        }
-
-        clientSocket.close();
-        return Collections.unmodifiableList(devices);
+        return new SSDPSearch(timeout, serviceType).run();
     }
 
     public static Device discoverOne(int timeout, String serviceType) throws IOException {
-        Device device = null;
-        byte[] sendData;
-        byte[] receiveData = new byte[1024];
-
-        /* Create the search request */
-        StringBuilder msearch = new StringBuilder(
-                "M-SEARCH * HTTP/1.1\nHost: 239.255.255.250:1900\nMan: \"ssdp:discover\"\n");
-        if (serviceType == null) { msearch.append("ST: ssdp:all\n"); }
-        else { msearch.append("ST: ").append(serviceType).append("\n"); }
-
-        /* Send the request */
-        sendData = msearch.toString().getBytes();
-        DatagramPacket sendPacket = new DatagramPacket(
-                sendData, sendData.length, InetAddress.getByName("239.255.255.250"), 1900);
-        DatagramSocket clientSocket = new DatagramSocket();
-        clientSocket.setSoTimeout(timeout);
-        clientSocket.send(sendPacket);
+        List<Device> devices = new SSDPSearch(timeout, serviceType).expect(1).run();
+        return devices.isEmpty() ? null : devices.get(0);
+    }
 
-        /* Receive one response */
-        try {
-            DatagramPacket receivePacket = new DatagramPacket(receiveData, receiveData.length);
-            clientSocket.receive(receivePacket);
-            device = Device.parse(receivePacket);
-        }
-        catch (SocketTimeoutException e) { }
+    /**
+     * Start a non-blocking discovery. The listener is notified for each device as soon as it answers.
+     * @param timeout in milliseconds
+     * @param serviceType if null it use "ssdp:all"
+     * @param expectedCount stop as soon as this number of devices has been found, 0 to wait for the full timeout
+     * @param listener notified for each device found, may be null
+     * @return the running search, which can be cancelled or awaited
+     */
+    public static SSDPSearch search(int timeout, String serviceType, int expectedCount, DiscoveryListener listener) {
+        return new SSDPSearch(timeout, serviceType).expect(expectedCount).listener(listener).start();
+    }
 
-        clientSocket.close();
-        return device;
+    static byte[] buildSearchRequest(String serviceType, int mx) {
+        StringBuilder msearch = new StringBuilder(
+                "M-SEARCH * HTTP/1.1\r\nHOST: 239.255.255.250:1900\r\nMAN: \"ssdp:discover\"\r\n");
+        msearch.append("MX: ").append(mx).append("\r\n");
+        if (serviceType == null) { msearch.append("ST: ssdp:all\r\n"); }
+        else { msearch.append("ST: ").append(serviceType).append("\r\n"); }
+        msearch.append("\r\n");
+        return msearch.toString().getBytes();
     }
 }
@@ -0,0 +1,143 @@
+package com.vmichalak.protocol.ssdp;
+
+import java.nio.charset.Charset;
+
+/**
+ * Allocation-light scanner for the headers of a SSDP message.
+ * It works directly on the packet bytes and only materializes the headers needed to build a {@link Device}.
+ */
+final class SSDPHeaders {
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private static final byte[] LOCATION      = ascii("LOCATION");
+    private static final byte[] SERVER        = ascii("SERVER");
+    private static final byte[] ST            = ascii("ST");
+    private static final byte[] NT            = ascii("NT");
+    private static final byte[] NTS           = ascii("NTS");
+    private static final byte[] USN           = ascii("USN");
+    private static final byte[] CACHE_CONTROL = ascii("CACHE-CONTROL");
+    private static final byte[] BOOTID        = ascii("BOOTID.UPNP.ORG");
+    private static final byte[] RINCON_BOOT   = ascii("X-RINCON-BOOTSEQ");
+    private static final byte[] CONFIGID      = ascii("CONFIGID.UPNP.ORG");
+    private static final byte[] MAX_AGE       = ascii("max-age");
+
+    String location;
+    String server;
+    String st;
+    String nt;
+    String nts;
+    String usn;
+    int maxAge = Device.UNKNOWN_MAX_AGE;
+    String bootId;
+    String configId;
+
+    private SSDPHeaders() { }
+
+    /**
+     * Scan the headers of a SSDP message. The start line is skipped, the scan stops at the first empty line.
+     * @param data packet buffer
+     * @param offset start of the message in the buffer
+     * @param length length of the message
+     * @return scanned headers
+     */
+    static SSDPHeaders scan(byte[] data, int offset, int length) {
+        SSDPHeaders headers = new SSDPHeaders();
+        int end = offset + length;
+        int lineStart = nextLine(data, offset, end);
+        while (lineStart < end) {
+            int lineEnd = lineStart;
+            while (lineEnd < end && data[lineEnd] != '\r' && data[lineEnd] != '\n') { lineEnd++; }
+            if (lineEnd == lineStart) { break; }
+            headers.readHeader(data, lineStart, lineEnd);
+            lineStart = nextLine(data, lineEnd, end);
+        }
+        return headers;
+    }
+
+    /**
+     * @return true if the message starts with the given method (e.g. "NOTIFY")
+     */
+    static boolean startsWith(byte[] data, int offset, int length, String method) {
+        if (length < method.length()) { return false; }
+        for (int i = 0; i < method.length(); i++) {
+            if (data[offset + i] != method.charAt(i)) { return false; }
+        }
+        return true;
+    }
+
+    private void readHeader(byte[] data, int start, int end) {
+        int colon = start;
+        while (colon < end && data[colon] != ':') { colon++; }
+        if (colon == end) { return; }
+        int nameEnd = colon;
+        while (nameEnd > start && isWhitespace(data[nameEnd - 1])) { nameEnd--; }
+        int valueStart = colon + 1;
+        while (valueStart < end && isWhitespace(data[valueStart])) { valueStart++; }
+        int valueEnd = end;
+        while (valueEnd > valueStart && isWhitespace(data[valueEnd - 1])) { valueEnd--; }
+
+        if (nameEquals(data, start, nameEnd, LOCATION)) { location = value(data, valueStart, valueEnd); }
+        else if (nameEquals(data, start, nameEnd, SERVER)) { server = value(data, valueStart, valueEnd); }
+        else if (nameEquals(data, start, nameEnd, ST)) { st = value(data, valueStart, valueEnd); }
+        else if (nameEquals(data, start, nameEnd, NT)) { nt = value(data, valueStart, valueEnd); }
+        else if (nameEquals(data, start, nameEnd, NTS)) { nts = value(data, valueStart, valueEnd); }
+        else if (nameEquals(data, start, nameEnd, USN)) { usn = value(data, valueStart, valueEnd); }
+        else if (nameEquals(data, start, nameEnd, CACHE_CONTROL)) { maxAge = maxAge(data, valueStart, valueEnd); }
+        else if (nameEquals(data, start, nameEnd, BOOTID)) { bootId = value(data, valueStart, valueEnd); }
+        else if (nameEquals(data, start, nameEnd, RINCON_BOOT)) {
+            // Sonos players announce their boot sequence under their own header
+            if (bootId == null) { bootId = value(data, valueStart, valueEnd); }
+        }
+        else if (nameEquals(data, start, nameEnd, CONFIGID)) { configId = value(data, valueStart, valueEnd); }
+    }
+
+    private static int maxAge(byte[] data, int start, int end) {
+        for (int i = start; i + MAX_AGE.length <= end; i++) {
+            if (!nameEquals(data, i, i + MAX_AGE.length, MAX_AGE)) { continue; }
+            int j = i + MAX_AGE.length;
+            while (j < end && isWhitespace(data[j])) { j++; }
+            if (j == end || data[j] != '=') { return Device.UNKNOWN_MAX_AGE; }
+            j++;
+            while (j < end && isWhitespace(data[j])) { j++; }
+            int value = 0;
+            int digits = 0;
+            while (j < end && data[j] >= '0' && data[j] <= '9') {
+                // saturate instead of overflowing to a negative or wrong age
+                value = value > (Integer.MAX_VALUE - 9) / 10 ? Integer.MAX_VALUE : value * 10 + (data[j] - '0');
+                digits++;
+                j++;
+            }
+            return digits == 0 ? Device.UNKNOWN_MAX_AGE : value;
+        }
+        return Device.UNKNOWN_MAX_AGE;
+    }
+
+    private static int nextLine(byte[] data, int index, int end) {
+        while (index < end && data[index] != '\n') { index++; }
+        return index + 1;
+    }
+
+    private static boolean nameEquals(byte[] data, int start, int end, byte[] name) {
+        if (end - start != name.length) { return false; }
+        for (int i = 0; i < name.length; i++) {
+            byte b = data[start + i];
+            if (b >= 'a' && b <= 'z') { b -= 'a' - 'A'; }
+            byte n = name[i];
+            if (n >= 'a' && n <= 'z') { n -= 'a' - 'A'; }
+            if (b != n) { return false; }
+        }
+        return true;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    private static String value(byte[] data, int start, int end) {
+        return new String(data, start, end - start, CHARSET);
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(Charset.forName("US-ASCII"));
+    }
+}
@@ -0,0 +1,93 @@
+package com.vmichalak.protocol.ssdp;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+
+/**
+ * Long-lived listener for SSDP NOTIFY advertisements (ssdp:alive / ssdp:byebye).
+ * It joins the SSDP multicast group and keeps a {@link DeviceRegistry} up to date without sending any request.
+ */
+public class SSDPNotifyListener {
+    private static final int RECEIVE_BUFFER_SIZE = 2048;
+
+    private final DeviceRegistry registry;
+
+    private MulticastSocket socket;
+    private Thread thread;
+
+    public SSDPNotifyListener(DeviceRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Join the SSDP multicast group and start listening on a background daemon thread.
+     * @throws IOException
+     */
+    public synchronized void start() throws IOException {
+        if (isRunning()) { return; }
+        final MulticastSocket s = new MulticastSocket(null);
+        s.setReuseAddress(true);
+        s.bind(new InetSocketAddress(SSDPClient.MULTICAST_PORT));
+        s.joinGroup(InetAddress.getByName(SSDPClient.MULTICAST_ADDRESS));
+        socket = s;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                listen(s);
+            }
+        }, "ssdp-notify-listener");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Leave the multicast group and stop the listening thread. The registry keeps its content.
+     */
+    public synchronized void stop() {
+        if (socket == null) { return; }
+        socket.close();
+        socket = null;
+        thread = null;
+    }
+
+    public synchronized boolean isRunning() {
+        return socket != null && !socket.isClosed();
+    }
+
+    public DeviceRegistry getRegistry() {
+        return registry;
+    }
+
+    private void listen(MulticastSocket s) {
+        byte[] receiveData = new byte[RECEIVE_BUFFER_SIZE];
+        while (!s.isClosed()) {
+            try {
+                DatagramPacket packet = new DatagramPacket(receiveData, receiveData.length);
+                s.receive(packet);
+                handle(packet);
+            }
+            catch (IOException e) {
+                // socket closed by stop(), or transient receive failure
+                if (s.isClosed()) { return; }
+            }
+            catch (RuntimeException e) {
+                // malformed advertisement or failing registry listener, the packet is dropped
+            }
+        }
+    }
+
+    private void handle(DatagramPacket packet) {
+        if (!SSDPHeaders.startsWith(packet.getData(), packet.getOffset(), packet.getLength(), "NOTIFY")) { return; }
+        SSDPHeaders headers = SSDPHeaders.scan(packet.getData(), packet.getOffset(), packet.getLength());
+        if (headers.nts == null) { return; }
+        if (headers.nts.startsWith("ssdp:alive") || headers.nts.startsWith("ssdp:update")) {
+            registry.put(Device.fromHeaders(packet.getAddress().getHostAddress(), headers));
+        }
+        else if (headers.nts.startsWith("ssdp:byebye") && headers.usn != null) {
+            registry.remove(headers.usn);
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package com.vmichalak.protocol.ssdp;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Non-blocking SSDP search built on {@link DatagramChannel}s and a single {@link Selector}.
+ * The M-SEARCH is sent on every multicast-capable network interface in parallel and retransmitted with jitter.
+ * Each new device (deduplicated by USN, or by UUID if requested) is handed to the {@link DiscoveryListener} as soon
+ * as its response arrives. The search ends when the timeout elapses, when the expected number of devices has been
+ * found, when the {@link SearchCondition} is satisfied or when it is cancelled.
+ */
+public class SSDPSearch {
+    private static final int RECEIVE_BUFFER_SIZE     = 1024;
+    private static final int DEFAULT_RETRANSMISSIONS = 2;
+    private static final int MAX_MX                  = 5;
+
+    private final int timeout;
+    private final String serviceType;
+    private final List<Device> devices = Collections.synchronizedList(new ArrayList<Device>());
+    private final Set<String> seen = new HashSet<String>();
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private final Random random = new Random();
+
+    private int expectedCount = 0;
+    private int retransmissions = DEFAULT_RETRANSMISSIONS;
+    private int mx;
+    private List<NetworkInterface> networkInterfaces;
+    private boolean deduplicateByUUID = false;
+    private SearchCondition condition;
+    private DiscoveryListener listener;
+    private DeviceRegistry registry;
+    private volatile boolean started = false;
+    private volatile boolean cancelled = false;
+    private volatile boolean satisfied = false;
+    private volatile Selector selector;
+    private volatile IOException error;
+
+    /**
+     * @param timeout in milliseconds
+     * @param serviceType if null it use "ssdp:all"
+     */
+    public SSDPSearch(int timeout, String serviceType) {
+        this.timeout = timeout;
+        this.serviceType = serviceType;
+        this.mx = Math.max(1, Math.min(MAX_MX, timeout / 1000));
+    }
+
+    /**
+     * Stop the search as soon as this number of devices has been found.
+     * @param expectedCount number of devices, 0 to wait for the full timeout
+     * @return this search
+     */
+    public SSDPSearch expect(int expectedCount) {
+        this.expectedCount = expectedCount;
+        return this;
+    }
+
+    /**
+     * Stop the search as soon as the condition is satisfied.
+     * @param condition evaluated after each new device
+     * @return this search
+     */
+    public SSDPSearch until(SearchCondition condition) {
+        this.condition = condition;
+        return this;
+    }
+
+    /**
+     * Report each physical device only once, even if it answers for several USNs (root device, embedded devices,
+     * services). Useful with "ssdp:all" searches.
+     * @return this search
+     */
+    public SSDPSearch deduplicateByUUID() {
+        this.deduplicateByUUID = true;
+        return this;
+    }
+
+    /**
+     * Number of times the M-SEARCH is sent again after the first one, spread over the timeout with jitter.
+     * A single lost UDP packet then no longer hides a device.
+     * @param retransmissions number of retransmissions, 0 to send the request only once
+     * @return this search
+     */
+    public SSDPSearch retransmit(int retransmissions) {
+        if (retransmissions < 0) { throw new IllegalArgumentException("retransmissions must be positive"); }
+        this.retransmissions = retransmissions;
+        return this;
+    }
+
+    /**
+     * Maximum wait time in seconds announced to the devices (MX header). Devices spread their responses randomly
+     * over this delay. Defaults to the timeout, clamped between 1 and 5 seconds.
+     * @param mx value between 1 and 5
+     * @return this search
+     */
+    public SSDPSearch mx(int mx) {
+        if (mx < 1 || mx > MAX_MX) { throw new IllegalArgumentException("MX value need to be between 1 and 5"); }
+        this.mx = mx;
+        return this;
+    }
+
+    /**
+     * Restrict the search to the given interfaces. By default every interface which is up, not loopback,
+     * multicast-capable and has an IPv4 address is used.
+     * @param networkInterfaces interfaces to search on
+     * @return this search
+     */
+    public SSDPSearch networkInterfaces(List<NetworkInterface> networkInterfaces) {
+        this.networkInterfaces = networkInterfaces;
+        return this;
+    }
+
+    public SSDPSearch listener(DiscoveryListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Record every response in the given registry, so later lookups can be answered from memory.
+     * @param registry registry to feed
+     * @return this search
+     */
+    public SSDPSearch registry(DeviceRegistry registry) {
+        this.registry = registry;
+        return this;
+    }
+
+    /**
+     * Run the search on a background daemon thread and return immediately.
+     * @return this search
+     */
+    public SSDPSearch start() {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try { SSDPSearch.this.run(); }
+                catch (IOException | RuntimeException e) { /* recorded by run(), thrown by await() */ }
+            }
+        }, "ssdp-search");
+        thread.setDaemon(true);
+        thread.start();
+        return this;
+    }
+
+    /**
+     * Run the search on the calling thread.
+     * @return List of devices discovered
+     * @throws IOException
+     */
+    public List<Device> run() throws IOException {
+        if (started) { throw new IllegalStateException("Search already started"); }
+        started = true;
+        List<DatagramChannel> channels = new ArrayList<DatagramChannel>();
+        try {
+            selector = Selector.open();
+            if (cancelled) { return getDevices(); }
+            openChannels(channels);
+            ByteBuffer request = ByteBuffer.wrap(SSDPClient.buildSearchRequest(serviceType, mx));
+            InetSocketAddress group = new InetSocketAddress(SSDPClient.MULTICAST_ADDRESS, SSDPClient.MULTICAST_PORT);
+            if (sendAll(channels, request, group) == 0) {
+                throw new IOException("M-SEARCH could not be sent on any network interface");
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(RECEIVE_BUFFER_SIZE);
+            long start = System.currentTimeMillis();
+            long deadline = start + timeout;
+            long interval = timeout / (retransmissions + 2);
+            int sent = 1;
+            long nextSend = sent <= retransmissions ? start + interval + jitter(interval) : Long.MAX_VALUE;
+            while (!isOver()) {
+                long now = System.currentTimeMillis();
+                if (now >= deadline) { break; }
+                if (now >= nextSend) {
+                    sendAll(channels, request, group);
+                    sent++;
+                    nextSend = sent <= retransmissions ? start + sent * interval + jitter(interval) : Long.MAX_VALUE;
+                    continue;
+                }
+                if (selector.select(Math.max(1, Math.min(deadline, nextSend) - now)) == 0) { continue; }
+                for (SelectionKey key : selector.selectedKeys()) {
+                    receiveAll((DatagramChannel) key.channel(), buffer);
+                }
+                selector.selectedKeys().clear();
+            }
+            return getDevices();
+        }
+        catch (IOException e) {
+            error = e;
+            throw e;
+        }
+        catch (RuntimeException e) {
+            // e.g. a failing SearchCondition: await() must report it instead of returning a partial result
+            error = new IOException("Search failed: " + e, e);
+            throw e;
+        }
+        finally {
+            for (DatagramChannel channel : channels) { channel.close(); }
+            if (selector != null) { selector.close(); }
+            finished.countDown();
+            if (listener != null) {
+                try { listener.onDiscoveryFinished(); }
+                catch (RuntimeException e) { /* the search itself is over, its result stands */ }
+            }
+        }
+    }
+
+    /**
+     * Stop the search. Devices already found remain available.
+     */
+    public void cancel() {
+        cancelled = true;
+        Selector s = selector;
+        if (s != null) { s.wakeup(); }
+    }
+
+    /**
+     * Wait until the search is over.
+     * @return List of devices discovered
+     * @throws IOException if the search failed
+     * @throws InterruptedException
+     */
+    public List<Device> await() throws IOException, InterruptedException {
+        finished.await();
+        if (error != null) { throw error; }
+        return getDevices();
+    }
+
+    /**
+     * Wait until the search is over or the given time elapsed.
+     * @return true if the search is over
+     * @throws InterruptedException
+     */
+    public boolean await(long time, TimeUnit unit) throws InterruptedException {
+        return finished.await(time, unit);
+    }
+
+    public boolean isDone() {
+        return finished.getCount() == 0;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return snapshot of the devices found so far
+     */
+    public List<Device> getDevices() {
+        synchronized (devices) {
+            return Collections.unmodifiableList(new ArrayList<Device>(devices));
+        }
+    }
+
+    private void openChannels(List<DatagramChannel> channels) throws IOException {
+        List<NetworkInterface> interfaces = networkInterfaces != null ? networkInterfaces : findMulticastInterfaces();
+        for (NetworkInterface networkInterface : interfaces) {
+            InetAddress address = findIPv4Address(networkInterface);
+            if (address == null) { continue; }
+            DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
+            try {
+                channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface);
+                channel.bind(new InetSocketAddress(address, 0));
+                channel.configureBlocking(false);
+                channel.register(selector, SelectionKey.OP_READ);
+                channels.add(channel);
+            }
+            catch (IOException e) {
+                // interface vanished or can't be used, the other ones are still searched
+                channel.close();
+            }
+        }
+        if (channels.isEmpty()) {
+            // let the OS pick the interface
+            DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
+            channels.add(channel);
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ);
+        }
+    }
+
+    private static int sendAll(List<DatagramChannel> channels, ByteBuffer request, SocketAddress group) {
+        int sent = 0;
+        for (DatagramChannel channel : channels) {
+            try {
+                request.rewind();
+                channel.send(request, group);
+                sent++;
+            }
+            catch (IOException e) {
+                // keep going with the other interfaces
+            }
+        }
+        return sent;
+    }
+
+    private void receiveAll(DatagramChannel channel, ByteBuffer buffer) throws IOException {
+        while (!isOver()) {
+            buffer.clear();
+            SocketAddress sender = channel.receive(buffer);
+            if (sender == null) { return; }
+            String ip = ((InetSocketAddress) sender).getAddress().getHostAddress();
+            Device device = Device.parse(ip, buffer.array(), buffer.arrayOffset(), buffer.position());
+            if (registry != null) {
+                try { registry.put(device); }
+                catch (RuntimeException e) { /* failing registry listener, the search goes on */ }
+            }
+            if (!seen.add(deduplicationKey(device))) { continue; }
+            devices.add(device);
+            if (listener != null) {
+                try { listener.onDeviceDiscovered(device); }
+                catch (RuntimeException e) { /* failing listener, the device is still found */ }
+            }
+            if (condition != null && condition.isSatisfied(device, Collections.unmodifiableList(devices))) {
+                satisfied = true;
+            }
+        }
+    }
+
+    private String deduplicationKey(Device device) {
+        if (deduplicateByUUID && device.getUUID() != null) { return device.getUUID(); }
+        if (device.getUSN() != null) { return device.getUSN(); }
+        return device.getIPAddress() + " " + device.getServiceType();
+    }
+
+    private boolean isOver() {
+        return cancelled || satisfied || (expectedCount > 0 && devices.size() >= expectedCount);
+    }
+
+    private long jitter(long interval) {
+        int bound = (int) (interval / 4);
+        return bound > 0 ? random.nextInt(bound) : 0;
+    }
+
+    private static List<NetworkInterface> findMulticastInterfaces() throws IOException {
+        ArrayList<NetworkInterface> result = new ArrayList<NetworkInterface>();
+        Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+        if (interfaces == null) { return result; }
+        while (interfaces.hasMoreElements()) {
+            NetworkInterface networkInterface = interfaces.nextElement();
+            if (networkInterface.isUp() && !networkInterface.isLoopback() && networkInterface.supportsMulticast()
+                    && findIPv4Address(networkInterface) != null) {
+                result.add(networkInterface);
+            }
+        }
+        return result;
+    }
+
+    private static InetAddress findIPv4Address(NetworkInterface networkInterface) {
+        Enumeration<InetAddress> addresses = networkInterface.getInetAddresses();
+        while (addresses.hasMoreElements()) {
+            InetAddress address = addresses.nextElement();
+            if (address instanceof Inet4Address) { return address; }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,16 @@
+package com.vmichalak.protocol.ssdp;
+
+import java.util.List;
+
+/**
+ * Condition ending a {@link SSDPSearch} early, e.g. "found the device with this UUID" or "found N devices".
+ * It is evaluated on the search thread after each new device.
+ */
+public interface SearchCondition {
+    /**
+     * @param device device just discovered
+     * @param devices all the devices discovered so far, including the new one
+     * @return true to stop the search
+     */
+    boolean isSatisfied(Device device, List<Device> devices);
+}
@@ -0,0 +1,78 @@
+package com.vmichalak.protocol.ssdp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DeviceDescriptionFetcherTest {
+    // accepts connections but never answers
+    private ServerSocket silentServer;
+    private final List<Socket> accepted = new ArrayList<Socket>();
+
+    @Before
+    public void setUp() throws IOException {
+        this.silentServer = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) { accepted.add(silentServer.accept()); }
+                }
+                catch (IOException e) {
+                    // closed by tearDown()
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        this.silentServer.close();
+        for (Socket socket : this.accepted) { socket.close(); }
+    }
+
+    @Test(timeout = 5000)
+    public void fetchAfterShutdownIsCancelled() throws InterruptedException {
+        DeviceDescriptionFetcher fetcher = new DeviceDescriptionFetcher(1, 1000);
+        fetcher.shutdown();
+        Device device = this.device("uuid:A");
+        Future<DeviceDescription> future = fetcher.fetch(device);
+        assertTrue(future.isCancelled());
+        assertNull(fetcher.getCached(device));
+        assertTrue(fetcher.fetchAll(Arrays.asList(device)).isEmpty());
+    }
+
+    @Test(timeout = 5000)
+    public void shutdownCancelsQueuedFetches() throws InterruptedException {
+        DeviceDescriptionFetcher fetcher = new DeviceDescriptionFetcher(1, 3000);
+        Future<DeviceDescription> running = fetcher.fetch(this.device("uuid:A"));
+        Device queuedDevice = this.device("uuid:B");
+        Future<DeviceDescription> queued = fetcher.fetch(queuedDevice);
+        fetcher.shutdown();
+        assertTrue(queued.isCancelled());
+        assertFalse(running.isCancelled());
+        assertNull(fetcher.getCached(queuedDevice));
+        // not served from the cache: a new fetch is cancelled as well instead of waiting forever
+        assertTrue(fetcher.fetch(queuedDevice).isCancelled());
+    }
+
+    private Device device(String usn) {
+        String location = "http://127.0.0.1:" + this.silentServer.getLocalPort() + "/xml/device_description.xml";
+        return new Device("127.0.0.1", location, "Linux UPnP/1.0 Sonos/45.1", "upnp:rootdevice", usn);
+    }
+}
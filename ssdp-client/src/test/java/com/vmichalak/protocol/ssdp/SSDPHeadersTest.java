@@ -0,0 +1,169 @@
+package com.vmichalak.protocol.ssdp;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SSDPHeadersTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String SEARCH_RESPONSE = "HTTP/1.1 200 OK\r\n"
+            + "CACHE-CONTROL: max-age = 1800\r\n"
+            + "EXT:\r\n"
+            + "LOCATION: http://192.168.1.42:1400/xml/device_description.xml\r\n"
+            + "SERVER: Linux UPnP/1.0 Sonos/45.1-56150 (ZPS9)\r\n"
+            + "ST: urn:schemas-upnp-org:device:ZonePlayer:1\r\n"
+            + "USN: uuid:RINCON_000E58A0123401400::urn:schemas-upnp-org:device:ZonePlayer:1\r\n"
+            + "X-RINCON-HOUSEHOLD: Sonos_abc\r\n"
+            + "X-RINCON-BOOTSEQ: 42\r\n"
+            + "\r\n";
+
+    @Test
+    public void scanSearchResponse() {
+        SSDPHeaders headers = scan(SEARCH_RESPONSE);
+        assertEquals("http://192.168.1.42:1400/xml/device_description.xml", headers.location);
+        assertEquals("Linux UPnP/1.0 Sonos/45.1-56150 (ZPS9)", headers.server);
+        assertEquals("urn:schemas-upnp-org:device:ZonePlayer:1", headers.st);
+        assertEquals("uuid:RINCON_000E58A0123401400::urn:schemas-upnp-org:device:ZonePlayer:1", headers.usn);
+        assertEquals(1800, headers.maxAge);
+        assertEquals("42", headers.bootId);
+        assertNull(headers.nt);
+        assertNull(headers.nts);
+        assertNull(headers.configId);
+    }
+
+    @Test
+    public void scanNotify() {
+        SSDPHeaders headers = scan("NOTIFY * HTTP/1.1\r\n"
+                + "HOST: 239.255.255.250:1900\r\n"
+                + "NT: upnp:rootdevice\r\n"
+                + "NTS: ssdp:byebye\r\n"
+                + "USN: uuid:RINCON_000E58A0123401400::upnp:rootdevice\r\n"
+                + "BOOTID.UPNP.ORG: 7\r\n"
+                + "X-RINCON-BOOTSEQ: 42\r\n"
+                + "CONFIGID.UPNP.ORG: 3\r\n"
+                + "\r\n");
+        assertEquals("upnp:rootdevice", headers.nt);
+        assertEquals("ssdp:byebye", headers.nts);
+        assertEquals("uuid:RINCON_000E58A0123401400::upnp:rootdevice", headers.usn);
+        assertEquals("7", headers.bootId);
+        assertEquals("3", headers.configId);
+        assertEquals(Device.UNKNOWN_MAX_AGE, headers.maxAge);
+    }
+
+    @Test
+    public void namesAreCaseInsensitive() {
+        SSDPHeaders headers = scan("HTTP/1.1 200 OK\r\nlocation: http://a/\r\nUsn: uuid:b\r\nst:c\r\n\r\n");
+        assertEquals("http://a/", headers.location);
+        assertEquals("uuid:b", headers.usn);
+        assertEquals("c", headers.st);
+    }
+
+    @Test
+    public void trimNamesAndValues() {
+        SSDPHeaders headers = scan("HTTP/1.1 200 OK\r\nLOCATION \t:  http://a/ \t\r\n\r\n");
+        assertEquals("http://a/", headers.location);
+    }
+
+    @Test
+    public void valueMayContainColons() {
+        SSDPHeaders headers = scan("HTTP/1.1 200 OK\r\nLOCATION:http://192.168.1.42:1400/x.xml\r\n\r\n");
+        assertEquals("http://192.168.1.42:1400/x.xml", headers.location);
+    }
+
+    @Test
+    public void bareLineFeeds() {
+        SSDPHeaders headers = scan("HTTP/1.1 200 OK\nLOCATION: http://a/\nST: b\n\n");
+        assertEquals("http://a/", headers.location);
+        assertEquals("b", headers.st);
+    }
+
+    @Test
+    public void stopAtEmptyLine() {
+        SSDPHeaders headers = scan("HTTP/1.1 200 OK\r\nST: a\r\n\r\nLOCATION: http://body/\r\n");
+        assertEquals("a", headers.st);
+        assertNull(headers.location);
+    }
+
+    @Test
+    public void withoutFinalEmptyLine() {
+        assertEquals("a", scan("HTTP/1.1 200 OK\r\nST: a").st);
+    }
+
+    @Test
+    public void ignoreLinesWithoutColon() {
+        SSDPHeaders headers = scan("HTTP/1.1 200 OK\r\ngarbage\r\nST: a\r\n\r\n");
+        assertEquals("a", headers.st);
+    }
+
+    @Test
+    public void emptyValue() {
+        assertEquals("", scan("HTTP/1.1 200 OK\r\nSERVER:\r\n\r\n").server);
+    }
+
+    @Test
+    public void prefixOfAKnownNameIsIgnored() {
+        SSDPHeaders headers = scan("HTTP/1.1 200 OK\r\nSTX: a\r\nN: b\r\n\r\n");
+        assertNull(headers.st);
+        assertNull(headers.nt);
+    }
+
+    @Test
+    public void standardBootIdWins() {
+        assertEquals("7", scan("NOTIFY * HTTP/1.1\r\nX-RINCON-BOOTSEQ: 42\r\nBOOTID.UPNP.ORG: 7\r\n\r\n").bootId);
+    }
+
+    @Test
+    public void maxAgeAmongOtherDirectives() {
+        assertEquals(60, scan("HTTP/1.1 200 OK\r\nCACHE-CONTROL: no-cache=\"Ext\", MAX-AGE=60\r\n\r\n").maxAge);
+    }
+
+    @Test
+    public void invalidMaxAge() {
+        assertEquals(Device.UNKNOWN_MAX_AGE, scan("HTTP/1.1 200 OK\r\nCACHE-CONTROL: max-age\r\n\r\n").maxAge);
+        assertEquals(Device.UNKNOWN_MAX_AGE, scan("HTTP/1.1 200 OK\r\nCACHE-CONTROL: max-age=x\r\n\r\n").maxAge);
+        assertEquals(Device.UNKNOWN_MAX_AGE, scan("HTTP/1.1 200 OK\r\nCACHE-CONTROL: no-cache\r\n\r\n").maxAge);
+    }
+
+    @Test
+    public void hugeMaxAgeDoesNotOverflow() {
+        assertEquals(Integer.MAX_VALUE, scan("HTTP/1.1 200 OK\r\nCACHE-CONTROL: max-age=99999999999\r\n\r\n").maxAge);
+    }
+
+    @Test
+    public void scanWithinLargerBuffer() {
+        byte[] message = SEARCH_RESPONSE.getBytes(UTF_8);
+        byte[] buffer = new byte[message.length + 20];
+        Arrays.fill(buffer, (byte) 'X');
+        System.arraycopy(message, 0, buffer, 10, message.length);
+        // without the final empty line, the scan must still stop at the end of the message
+        SSDPHeaders headers = SSDPHeaders.scan(buffer, 10, message.length - 2);
+        assertEquals("http://192.168.1.42:1400/xml/device_description.xml", headers.location);
+        assertEquals("42", headers.bootId);
+    }
+
+    @Test
+    public void utf8Value() {
+        assertEquals("Küche", scan("HTTP/1.1 200 OK\r\nSERVER: Küche\r\n\r\n").server);
+    }
+
+    @Test
+    public void startsWith() {
+        byte[] data = "xxNOTIFY * HTTP/1.1\r\n".getBytes(UTF_8);
+        assertTrue(SSDPHeaders.startsWith(data, 2, data.length - 2, "NOTIFY"));
+        assertFalse(SSDPHeaders.startsWith(data, 0, data.length, "NOTIFY"));
+        assertFalse(SSDPHeaders.startsWith(data, 2, 3, "NOTIFY"));
+        assertFalse(SSDPHeaders.startsWith(data, 2, data.length - 2, "M-SEARCH"));
+    }
+
+    private static SSDPHeaders scan(String message) {
+        byte[] data = message.getBytes(UTF_8);
+        return SSDPHeaders.scan(data, 0, data.length);
+    }
+}